@@ -1,5 +1,6 @@
 package com.example.Search.Engine;
 
+import com.example.Search.Engine.Data.ContentStore;
 import com.example.Search.Engine.QP.QueryIndex;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
@@ -9,6 +10,7 @@ import com.example.Search.Engine.QP.QP;
 import com.example.Search.Engine.Ranker.Ranker;
 import com.example.Search.Engine.Ranker.PageRank;
 import org.springframework.beans.factory.annotation.Autowired;
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -18,6 +20,7 @@ import java.util.regex.Pattern;
 public class BackendManager {
     private static final String DB_URL = "jdbc:sqlite:./data/search_index.db";
     private Connection connection;
+    private final ContentStore contentStore = new ContentStore();
     private Tokenizer tokenizer;
     private final QP queryProcessor;
     private final Ranker ranker;
@@ -121,12 +124,12 @@ public class BackendManager {
     private String generateSnippet(String title, String url, Map<String, List<Double>> wordInfo, Set<String> queryWords) {
         try {
             // Get the HTML content from the database
-            String getContentSql = "SELECT html FROM DocumentMetaData WHERE url = ?";
+            String getContentSql = "SELECT html, content_segment, content_offset, content_length FROM DocumentMetaData WHERE url = ?";
             try (PreparedStatement pstmt = connection.prepareStatement(getContentSql)) {
                 pstmt.setString(1, url);
                 try (ResultSet rs = pstmt.executeQuery()) {
                     if (rs.next()) {
-                        String html = rs.getString("html");
+                        String html = contentStore.readHtml(rs);
                         if (html != null && !html.isEmpty()) {
                             // Clean HTML and extract text content
                             String text = html
@@ -268,7 +271,7 @@ public class BackendManager {
                     }
                 }
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.err.println("Error generating snippet: " + e.getMessage());
         }
         // Fallback to title-based snippet if content retrieval fails
@@ -446,6 +449,7 @@ public class BackendManager {
     }
 
     public void close() {
+        contentStore.close();
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -0,0 +1,32 @@
+package com.example.Search.Engine.Crawler;
+
+// Frontier priorities for a best-first crawl, after OPIC (Abiteboul et al., "Adaptive On-Line Page
+// Importance Computation"): every seed starts with SEED_CASH, and a crawled page passes its cash on,
+// split evenly across its out-links. A URL's priority is the cash it has collected from every page
+// that linked to it so far, so it is an online estimate of its in-link PageRank.
+// Cash is damped on every hop, so pages far from the seeds need more in-links to compete, and links
+// within a site or into a host that already has many pages count for less, which spreads the crawl
+// across hosts.
+public final class CrawlPriority {
+    public static final double SEED_CASH = 1.0;
+    // Share of a page's cash passed on to its out-links
+    static final double DAMPING = 0.85;
+    static final double SAME_HOST_WEIGHT = 0.5;
+    // Cash a page is credited with when its own cash is unknown (e.g. a URL from before priorities existed)
+    static final double MIN_CASH = 1e-6;
+
+    private CrawlPriority() {
+    }
+
+    // Priority given to each of outLinks links found on a page that had cash when it was crawled
+    public static double linkShare(double cash, int outLinks) {
+        return outLinks == 0 ? 0 : DAMPING * Math.max(cash, MIN_CASH) / outLinks;
+    }
+
+    // Scales a link share by how much the crawl already covers the target host;
+    // hostPages is the number of pages crawled from it so far, maxHostPages the per-host limit
+    public static double hostWeight(boolean sameHost, int hostPages, int maxHostPages) {
+        double weight = sameHost ? SAME_HOST_WEIGHT : 1.0;
+        return weight / (1.0 + (double) hostPages / maxHostPages);
+    }
+}
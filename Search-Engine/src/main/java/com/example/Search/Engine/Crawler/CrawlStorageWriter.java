@@ -0,0 +1,378 @@
+package com.example.Search.Engine.Crawler;
+
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.ParsedPage;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single-writer pipeline stage for crawled pages.
+// Fetch threads hand finished pages to a bounded queue and go straight back to the network. One
+// thread owns a long-lived WAL-mode connection and drains the queue in large transactions, committing
+// when a batch is full or when the oldest page in it has waited maxDelayMs (group commit).
+public class CrawlStorageWriter implements AutoCloseable {
+    // Resolves a link to the stored document it points at, if any, into a link graph edge
+    private static final String INSERT_OUTGOING_EDGES =
+            "INSERT OR IGNORE INTO link_edges (from_id, to_id) SELECT ?, id FROM DocumentMetaData WHERE url = ?";
+    // How often a submit blocked on a full queue checks that the writer is still running
+    private static final long SUBMIT_CHECK_INTERVAL_MS = 1000;
+    private final BlockingQueue<CrawledPage> queue;
+    private final Connection connection;
+    private final ContentStore contentStore;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final Listener listener;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    public static class CrawledPage {
+        // 0 for a page that is not in DocumentMetaData yet
+        private final long docId;
+        private final String url;
+        private final String host;
+        // html and parsed are null when a revisit found the stored copy still current
+        private final String html;
+        private final ParsedPage parsed;
+        private final long simhash;
+        private final String crawledAt;
+        private final RevisitSchedule schedule;
+
+        private CrawledPage(long docId, String url, String host, String html, ParsedPage parsed, long simhash, String crawledAt,
+                            RevisitSchedule schedule) {
+            this.docId = docId;
+            this.url = url;
+            this.host = host;
+            this.html = html;
+            this.parsed = parsed;
+            this.simhash = simhash;
+            this.crawledAt = crawledAt;
+            this.schedule = schedule;
+        }
+
+        // The title and the links to store are taken from the parsed page
+        public CrawledPage(String url, String host, String html, ParsedPage parsed, long simhash, String crawledAt,
+                           RevisitSchedule schedule) {
+            this(0, url, host, html, parsed, simhash, crawledAt, schedule);
+        }
+
+        // A recrawled document whose content changed: the row is rewritten in place and marked for reindexing
+        public static CrawledPage changed(long docId, String url, String html, ParsedPage parsed, long simhash, String crawledAt,
+                                          RevisitSchedule schedule) {
+            return new CrawledPage(docId, url, null, html, parsed, simhash, crawledAt, schedule);
+        }
+
+        // A recrawled document that has not changed: only its crawl date and schedule are updated
+        public static CrawledPage unchanged(long docId, String url, String crawledAt, RevisitSchedule schedule) {
+            return new CrawledPage(docId, url, null, null, null, 0, crawledAt, schedule);
+        }
+
+        // A revisit that got no answer: only the schedule moves, the stored copy keeps its crawl date
+        public static CrawledPage failedRevisit(long docId, String url, RevisitSchedule schedule) {
+            return new CrawledPage(docId, url, null, null, null, 0, null, schedule);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        // 0 for an unchanged revisit or a page without visible text
+        public long getSimhash() {
+            return simhash;
+        }
+
+        // True for a page crawled for the first time, false for a revisit of a stored document
+        public boolean isNew() {
+            return docId == 0;
+        }
+    }
+
+    // Called on the writer thread after every batch
+    public interface Listener {
+        void committed(List<CrawledPage> pages);
+
+        // commitNanos is the time the batch took to write, flush and commit
+        default void committed(List<CrawledPage> pages, long commitNanos) {
+            committed(pages);
+        }
+
+        void failed(List<CrawledPage> pages, Exception e);
+    }
+
+    public CrawlStorageWriter(String dbUrl, ContentStore contentStore, int queueCapacity, int batchSize,
+                              long maxDelayMs, Listener listener) throws SQLException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.contentStore = contentStore;
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.listener = listener;
+        this.connection = DriverManager.getConnection(dbUrl);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+        }
+        connection.setAutoCommit(false);
+        this.writerThread = new Thread(this::run, "crawl-storage-writer");
+        this.writerThread.start();
+    }
+
+    // Blocks only when the writer has fallen a full queue behind; fails instead of waiting on a writer that died
+    public void submit(CrawledPage page) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Storage writer is closed");
+        }
+        while (!queue.offer(page, SUBMIT_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            if (!writerThread.isAlive()) {
+                throw new IllegalStateException("Storage writer has stopped");
+            }
+        }
+    }
+
+    public int backlog() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<CrawledPage> batch = new ArrayList<>(batchSize);
+        long batchStartedAt = 0;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                long waitMs = batch.isEmpty() ? maxDelayMs : Math.max(1, batchStartedAt + maxDelayMs - System.currentTimeMillis());
+                CrawledPage page = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (page != null) {
+                    if (batch.isEmpty()) {
+                        batchStartedAt = System.currentTimeMillis();
+                    }
+                    batch.add(page);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                if (batch.size() >= batchSize || (!batch.isEmpty() && System.currentTimeMillis() - batchStartedAt >= maxDelayMs)) {
+                    commit(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+        }
+    }
+
+    private void commit(List<CrawledPage> batch) {
+        long startedAt = System.nanoTime();
+        try {
+            insertPages(batch);
+            // Page content must be on disk before the pointers to it are committed
+            contentStore.flush();
+            connection.commit();
+            System.out.println("Storage writer - Committed " + batch.size() + " pages (" + queue.size() + " waiting)");
+        } catch (SQLException | IOException | RuntimeException e) {
+            // A bad page fails its batch, not the writer thread every crawl thread depends on
+            System.err.println("Storage writer - Exception committing " + batch.size() + " pages: " + e);
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackEx) {
+                System.err.println("Storage writer - SQLException in rollback: " + rollbackEx.getMessage());
+            }
+            notifyListener(() -> listener.failed(batch, e));
+            return;
+        }
+        long commitNanos = System.nanoTime() - startedAt;
+        notifyListener(() -> listener.committed(batch, commitNanos));
+    }
+
+    private static void notifyListener(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            System.err.println("Storage writer - Listener failed: " + e);
+        }
+    }
+
+    private void insertPages(List<CrawledPage> batch) throws SQLException, IOException {
+        List<CrawledPage> newPages = new ArrayList<>(batch.size());
+        List<CrawledPage> revisitedPages = new ArrayList<>();
+        for (CrawledPage page : batch) {
+            (page.docId == 0 ? newPages : revisitedPages).add(page);
+        }
+        if (!newPages.isEmpty()) {
+            insertNewPages(newPages);
+        }
+        if (!revisitedPages.isEmpty()) {
+            updateRevisitedPages(revisitedPages);
+        }
+    }
+
+    private void insertNewPages(List<CrawledPage> batch) throws SQLException, IOException {
+        long[] ids = new long[batch.size()];
+        List<List<String>> links = new ArrayList<>(batch.size());
+        for (CrawledPage page : batch) {
+            links.add(canonicalLinks(page.parsed.getLinks()));
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO DocumentMetaData (url, host, title, simhash, last_crawled_date, content_segment, content_offset, content_length, " +
+                        "parsed_segment, parsed_offset, parsed_length, etag, last_modified, revisit_interval, next_crawl_date) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id")) {
+            for (int i = 0; i < batch.size(); i++) {
+                CrawledPage page = batch.get(i);
+                stmt.setString(1, page.url);
+                stmt.setString(2, page.host);
+                stmt.setString(3, page.parsed.getTitle());
+                stmt.setLong(4, page.simhash);
+                stmt.setString(5, page.crawledAt);
+                setContent(stmt, 6, page);
+                setSchedule(stmt, 12, page.schedule);
+                // Each row reports its own id, so links never depend on the ids of a batch being consecutive
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("No id returned for DocumentMetaData insertion of " + page.url);
+                    }
+                    ids[i] = rs.getLong(1);
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO extracted_links (doc_id, extracted_link) VALUES (?, ?)")) {
+            for (int i = 0; i < batch.size(); i++) {
+                for (String link : links.get(i)) {
+                    stmt.setLong(1, ids[i]);
+                    stmt.setString(2, link);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+
+        // Links between pages of this batch resolve here too, since all of its rows exist by now
+        try (PreparedStatement outgoing = connection.prepareStatement(INSERT_OUTGOING_EDGES);
+             PreparedStatement incoming = connection.prepareStatement(
+                     "INSERT OR IGNORE INTO link_edges (from_id, to_id) SELECT doc_id, ? FROM extracted_links WHERE extracted_link = ?")) {
+            for (int i = 0; i < batch.size(); i++) {
+                addOutgoingEdges(outgoing, ids[i], links.get(i));
+                // Pages stored earlier that link to this URL
+                incoming.setLong(1, ids[i]);
+                incoming.setString(2, batch.get(i).url);
+                incoming.addBatch();
+            }
+            outgoing.executeBatch();
+            incoming.executeBatch();
+        }
+    }
+
+    // Links in the canonical form pages are stored under, so they match DocumentMetaData.url; malformed ones are dropped
+    static List<String> canonicalLinks(List<String> links) {
+        Set<String> canonical = new LinkedHashSet<>();
+        for (String link : links) {
+            UrlCanonicalizer.CanonicalUrl url = UrlCanonicalizer.canonicalize(link);
+            if (url != null) {
+                canonical.add(url.url());
+            }
+        }
+        return new ArrayList<>(canonical);
+    }
+
+    // Links to URLs that are not stored yet get their edge when the target is stored
+    private static void addOutgoingEdges(PreparedStatement outgoing, long docId, List<String> links) throws SQLException {
+        for (String link : links) {
+            outgoing.setLong(1, docId);
+            outgoing.setString(2, link);
+            outgoing.addBatch();
+        }
+    }
+
+    private void updateRevisitedPages(List<CrawledPage> batch) throws SQLException, IOException {
+        try (PreparedStatement changed = connection.prepareStatement(
+                "UPDATE DocumentMetaData SET title = ?, simhash = ?, last_crawled_date = ?, html = NULL, " +
+                        "content_segment = ?, content_offset = ?, content_length = ?, parsed_segment = ?, parsed_offset = ?, parsed_length = ?, " +
+                        "etag = ?, last_modified = ?, revisit_interval = ?, next_crawl_date = ?, needs_reindex = 1 WHERE id = ?");
+             PreparedStatement unchanged = connection.prepareStatement(
+                     "UPDATE DocumentMetaData SET last_crawled_date = COALESCE(?, last_crawled_date), " +
+                             "etag = ?, last_modified = ?, revisit_interval = ?, next_crawl_date = ? WHERE id = ?");
+             PreparedStatement deleteLinks = connection.prepareStatement("DELETE FROM extracted_links WHERE doc_id = ?");
+             PreparedStatement deleteEdges = connection.prepareStatement("DELETE FROM link_edges WHERE from_id = ?");
+             PreparedStatement outgoing = connection.prepareStatement(INSERT_OUTGOING_EDGES);
+             PreparedStatement insertLink = connection.prepareStatement(
+                     "INSERT INTO extracted_links (doc_id, extracted_link) VALUES (?, ?)")) {
+            for (CrawledPage page : batch) {
+                if (page.html == null) {
+                    unchanged.setString(1, page.crawledAt);
+                    setSchedule(unchanged, 2, page.schedule);
+                    unchanged.setLong(6, page.docId);
+                    unchanged.addBatch();
+                    continue;
+                }
+                // The old content stays in its segment as garbage; the row simply points at the new copy
+                changed.setString(1, page.parsed.getTitle());
+                changed.setLong(2, page.simhash);
+                changed.setString(3, page.crawledAt);
+                setContent(changed, 4, page);
+                setSchedule(changed, 10, page.schedule);
+                changed.setLong(14, page.docId);
+                changed.addBatch();
+                deleteLinks.setLong(1, page.docId);
+                deleteLinks.addBatch();
+                deleteEdges.setLong(1, page.docId);
+                deleteEdges.addBatch();
+                List<String> links = canonicalLinks(page.parsed.getLinks());
+                addOutgoingEdges(outgoing, page.docId, links);
+                for (String link : links) {
+                    insertLink.setLong(1, page.docId);
+                    insertLink.setString(2, link);
+                    insertLink.addBatch();
+                }
+            }
+            unchanged.executeBatch();
+            changed.executeBatch();
+            deleteLinks.executeBatch();
+            insertLink.executeBatch();
+            deleteEdges.executeBatch();
+            outgoing.executeBatch();
+        }
+    }
+
+    // Appends the page's HTML and parsed record to the content store and binds the six pointer columns starting at index
+    private void setContent(PreparedStatement stmt, int index, CrawledPage page) throws SQLException, IOException {
+        ContentStore.Pointer content = contentStore.append(page.html);
+        ContentStore.Pointer parsed = contentStore.append(page.parsed.toBytes());
+        stmt.setInt(index, content.getSegment());
+        stmt.setLong(index + 1, content.getOffset());
+        stmt.setInt(index + 2, content.getLength());
+        stmt.setInt(index + 3, parsed.getSegment());
+        stmt.setLong(index + 4, parsed.getOffset());
+        stmt.setInt(index + 5, parsed.getLength());
+    }
+
+    // Binds etag, last_modified, revisit_interval and next_crawl_date starting at index
+    private static void setSchedule(PreparedStatement stmt, int index, RevisitSchedule schedule) throws SQLException {
+        stmt.setString(index, schedule.getEtag());
+        stmt.setString(index + 1, schedule.getLastModified());
+        stmt.setLong(index + 2, schedule.getIntervalSeconds());
+        stmt.setString(index + 3, schedule.getNextCrawlDate());
+    }
+
+    // Drains everything still queued, commits it and closes the connection
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Storage writer - Failed to close connection: " + e.getMessage());
+        }
+    }
+}
@@ -1,57 +1,87 @@
 package com.example.Search.Engine.Crawler;
 
-import crawlercommons.robots.BaseRobotRules;
-import crawlercommons.robots.SimpleRobotRulesParser;
-import org.jsoup.Connection;
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.DataBaseManager;
+import com.example.Search.Engine.Data.ParsedPage;
+import com.example.Search.Engine.Ranker.PageRank;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class Crawler {
     private static final int MAX_PAGES = 2000;
-    private static final int CHECKPOINT_INTERVAL = 10;
+    private static final int WRITER_BATCH_SIZE = 200;
+    private static final long WRITER_MAX_DELAY_MS = 2000;
+    private static final int WRITER_QUEUE_CAPACITY = 1000;
     private static final int MAX_PAGES_PER_DOMAIN = 20;
-    private static final int MAX_DEPTH_PER_DOMAIN = 10;
+    // Links kept per page, for the link graph and the frontier; each gets a share of the page's priority
+    private static final int MAX_LINKS_PER_PAGE = 200;
+    // URLs held in the in-memory frontier; the rest wait in the frontier store
     private static final int MAX_QUEUE_SIZE = 10000;
-    private static final String[] USER_AGENTS = {
-            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/128.0.0.0 Safari/537.36",
-            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/128.0.0.0 Safari/537.36",
-            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:130.0) Gecko/20100101 Firefox/130.0"
-    };
+    private static final int FRONTIER_CHUNK_SIZE = 1000;
+    private static final long DEFAULT_CRAWL_DELAY_MS = 1000;
+    private static final long MAX_CRAWL_DELAY_MS = 10000;
+    private static final int MAX_BODY_BYTES = 2 * 1024 * 1024;
+    private static final int FETCH_TIMEOUT_MS = 5000;
+    // Seed URLs, read only when the frontier store is still empty
     private static final String URLS_FILE_NAME = "src/main/resources/urls.txt";
-    private final Map<String, BaseRobotRules> robotsCache = new HashMap<>();
+    private static final Path DATA_ROOT = Paths.get("data");
+    private static final long EXCHANGE_POLL_INTERVAL_MS = 1000;
+    private static final long EXPECTED_SEEN_URLS = 100_000;
+    private static final long METRICS_LOG_INTERVAL_MS = 30_000;
+    // Hosts listed individually in the host_queue_depth metric
+    private static final int METRICS_TOP_HOSTS = 20;
+    private static final long RANK_REFRESH_INTERVAL_MS = 60_000;
+    // Returned by fetchPage, compared by identity, for a URL robots.txt disallows: no request was sent
+    private static final FetchResult ROBOTS_DISALLOWED = new FetchResult("", 0, null, new byte[0], false);
+    private final RobotsCache robotsCache;
     private final ConcurrentHashMap<String, AtomicInteger> domainPageCounts = new ConcurrentHashMap<>();
 
-    private final Queue<String> urlQueue = new ConcurrentLinkedQueue<>();
-    private final Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
-    private final Set<String> contentHashes = ConcurrentHashMap.newKeySet();
-    private final Set<String> queuedUrls = ConcurrentHashMap.newKeySet();
+    private final FrontierScheduler frontier = new FrontierScheduler(DEFAULT_CRAWL_DELAY_MS, MAX_CRAWL_DELAY_MS);
+    private final SeenSet visitedUrls;
+    private final NearDuplicateIndex nearDuplicates = new NearDuplicateIndex();
+    // URLs handed to the frontier store or to another shard, so seeds and cross-shard links are not sent twice
+    private final SeenSet queuedUrls;
+    private final FrontierStore frontierStore;
+    // Depth and priority of the URLs currently in the in-memory frontier
+    private final ConcurrentHashMap<String, FrontierStore.Entry> queuedEntries = new ConcurrentHashMap<>();
+    private final Object refillLock = new Object();
     private final AtomicInteger totalCrawledPages = new AtomicInteger(0);
     private final AtomicInteger pendingPages = new AtomicInteger(0);
+    private final AtomicInteger revisitedPages = new AtomicInteger(0);
     private final AtomicInteger activeThreads = new AtomicInteger(0);
-    private static final String DB_URL = "jdbc:sqlite:data/search_index.db";
-    private static final ReentrantLock dbLock = new ReentrantLock();
-    private static final ReentrantLock fileLock = new ReentrantLock();
+    private volatile ExecutorService parsePool;
+    private final PageFetcher fetcher;
+    private final CrawlStorageWriter storageWriter;
+    private final ContentStore contentStore;
+    private final ShardAssignment shard;
+    private final String dbUrl;
+    private final int maxPages;
+    private final Path dataDirectory;
+    private final CrawlerMetrics metrics = new CrawlerMetrics();
+    // null unless the crawl is sharded
+    private final UrlExchange exchange;
+    private volatile long lastExchangeImport = 0;
+    // Set when a checkpoint stored pages since the last PageRank refresh
+    private final AtomicBoolean ranksStale = new AtomicBoolean(false);
+    private ScheduledExecutorService rankRefresher;
 
     public static void main(String[] args) {
         if (args.length < 1) {
             System.err.println("Number of threads not provided");
+            System.err.println("Usage: Crawler <threads> [--virtual] [--jsoup] [--recrawl] [--shard=<index>/<count>] [--metrics-port=<port>] [--rank]");
             System.exit(1);
         }
         int numThreads = 1;
@@ -66,285 +96,798 @@ public class Crawler {
             System.exit(1);
         }
 
-        Crawler myCrawler = new Crawler();
+        boolean virtualMode = false;
+        boolean jsoupFetcher = false;
+        boolean recrawlMode = false;
+        boolean refreshRanks = false;
+        ShardAssignment shard = ShardAssignment.SINGLE;
+        int metricsPort = -1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--metrics-port=")) {
+                try {
+                    metricsPort = Integer.parseInt(args[i].substring("--metrics-port=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid metrics port: " + args[i]);
+                    System.exit(1);
+                }
+                continue;
+            }
+            if (args[i].startsWith("--shard=")) {
+                try {
+                    shard = ShardAssignment.parse(args[i].substring("--shard=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+                continue;
+            }
+            switch (args[i]) {
+                case "--virtual" -> virtualMode = true;
+                case "--jsoup" -> jsoupFetcher = true;
+                case "--recrawl" -> recrawlMode = true;
+                case "--rank" -> refreshRanks = true;
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        PageFetcher fetcher = jsoupFetcher
+                ? new JsoupPageFetcher(MAX_BODY_BYTES, FETCH_TIMEOUT_MS)
+                : new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofMillis(FETCH_TIMEOUT_MS));
+        Crawler myCrawler = new Crawler(fetcher, shard);
+        myCrawler.startMetrics(metricsPort);
+        if (refreshRanks) {
+            myCrawler.startRankRefresh(RANK_REFRESH_INTERVAL_MS);
+        }
+        int pagesBefore = myCrawler.totalCrawledPages.get();
 
         long startTime = System.currentTimeMillis();
 
-        Thread[] threads = new Thread[numThreads];
-        for (int i = 0; i < numThreads; i++) {
-            threads[i] = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    myCrawler.crawl();
+        if (recrawlMode) {
+            // Refreshes documents that are due instead of discovering new ones
+            myCrawler.recrawl(numThreads);
+        } else if (virtualMode) {
+            // The thread count becomes the limit on concurrent in-flight fetches
+            myCrawler.crawlConcurrent(numThreads);
+        } else {
+            Thread[] threads = new Thread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        myCrawler.crawl();
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    System.err.println("Thread interrupted: " + e.getMessage());
+                    Thread.currentThread().interrupt();
                 }
-            });
-            threads[i].start();
-        }
-        for (Thread thread : threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                System.err.println("Thread interrupted: " + e.getMessage());
-                Thread.currentThread().interrupt();
             }
         }
+        // Waits for the storage writer to commit everything still queued
+        myCrawler.close();
         long endTime = System.currentTimeMillis();
         long duration = (endTime - startTime);
+        int pagesCrawled = myCrawler.totalCrawledPages.get() - pagesBefore + myCrawler.revisitedPages.get();
         System.out.println("Execution time: " + duration + " ms");
+        System.out.printf("Crawled %d pages (%.2f pages/sec)%n", pagesCrawled, pagesCrawled * 1000.0 / Math.max(1, duration));
+        System.out.print(myCrawler.metrics.summary());
     }
 
     public Crawler() {
+        this(new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofMillis(FETCH_TIMEOUT_MS)));
+    }
+
+    public Crawler(PageFetcher fetcher) {
+        this(fetcher, ShardAssignment.SINGLE);
+    }
+
+    // A sharded crawler keeps all of its state under data/shard-<index> and only crawls the hosts it owns
+    public Crawler(PageFetcher fetcher, ShardAssignment shard) {
+        this.fetcher = fetcher;
+        this.shard = shard;
+        this.dataDirectory = shard.dataDirectory(DATA_ROOT);
+        this.dbUrl = "jdbc:sqlite:" + dataDirectory.resolve("search_index.db");
+        this.maxPages = (MAX_PAGES + shard.getCount() - 1) / shard.getCount();
+        this.contentStore = new ContentStore(dataDirectory.resolve("content"));
+        String crawlStateUrl = "jdbc:sqlite:" + dataDirectory.resolve("crawl_state.db");
+        try {
+            Files.createDirectories(dataDirectory);
+            exchange = shard.isSharded() ? new UrlExchange(Paths.get(UrlExchange.DEFAULT_DIRECTORY), shard) : null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create " + dataDirectory, e);
+        }
         initializeDatabase();
         totalCrawledPages.set(getRowCount());
-        initializeVisitedUrlsAndHashes();
+        try {
+            frontierStore = new FrontierStore(crawlStateUrl);
+            robotsCache = new RobotsCache(fetcher, crawlStateUrl, RobotsCache.DEFAULT_MAX_ENTRIES);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open crawl state", e);
+        }
+        try {
+            visitedUrls = new SeenSet(dataDirectory, "visited_urls", EXPECTED_SEEN_URLS);
+            // A fresh frontier store means a fresh crawl, so stale queued fingerprints must not block the seeds
+            queuedUrls = new SeenSet(dataDirectory, "queued_urls", EXPECTED_SEEN_URLS, frontierStore.isEmpty());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open seen sets", e);
+        }
+        initializeDomainPageCounts();
+        if (visitedUrls.needsRebuild()) {
+            initializeVisitedUrls();
+        }
+        if (queuedUrls.needsRebuild()) {
+            frontierStore.forEachUrl(queuedUrls::add);
+        }
+        initializeNearDuplicateIndex();
         initializeUrlQueue();
+        try {
+            storageWriter = new CrawlStorageWriter(dbUrl, contentStore, WRITER_QUEUE_CAPACITY, WRITER_BATCH_SIZE, WRITER_MAX_DELAY_MS,
+                    new CrawlStorageWriter.Listener() {
+                        @Override
+                        public void committed(List<CrawlStorageWriter.CrawledPage> pages, long commitNanos) {
+                            metrics.record(CrawlerMetrics.Stage.CHECKPOINT, commitNanos);
+                            committed(pages);
+                        }
+
+                        @Override
+                        public void committed(List<CrawlStorageWriter.CrawledPage> pages) {
+                            ranksStale.set(true);
+                            for (CrawlStorageWriter.CrawledPage page : pages) {
+                                if (page.isNew()) {
+                                    metrics.increment("pages_stored");
+                                    totalCrawledPages.incrementAndGet();
+                                    pendingPages.decrementAndGet();
+                                    // Marked done only once the page is durable, so a crash before this refetches it
+                                    frontierStore.markDone(page.getUrl());
+                                } else {
+                                    metrics.increment("pages_revisited");
+                                    revisitedPages.incrementAndGet();
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void failed(List<CrawlStorageWriter.CrawledPage> pages, Exception e) {
+                            metrics.add("pages_store_failed", pages.size());
+                            for (CrawlStorageWriter.CrawledPage page : pages) {
+                                if (page.getSimhash() != 0) {
+                                    // The stored copy is unchanged, so a retry must not match this fingerprint
+                                    nearDuplicates.remove(page.getSimhash());
+                                }
+                                if (page.isNew()) {
+                                    pendingPages.decrementAndGet();
+                                    // Not stored, so it must not count as visited when the URL comes up again
+                                    visitedUrls.remove(page.getUrl());
+                                    frontierStore.markFailed(page.getUrl());
+                                }
+                            }
+                        }
+                    });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open crawl storage", e);
+        }
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        metrics.gauge("frontier_size", frontier::size);
+        metrics.gauge("frontier_hosts", frontier::hostCount);
+        metrics.gauge("active_threads", activeThreads::get);
+        metrics.gauge("pending_pages", pendingPages::get);
+        metrics.gauge("crawled_pages", totalCrawledPages::get);
+        metrics.gauge("writer_backlog", storageWriter::backlog);
+        metrics.gauge("robots_cache_entries", robotsCache::size);
+        metrics.labelledGauge("host_queue_depth", "host", () -> frontier.largestHostQueues(METRICS_TOP_HOSTS));
+    }
+
+    // Appends a metrics summary to crawler-metrics.log in the data directory every METRICS_LOG_INTERVAL_MS and,
+    // with a port of 0 or more, serves the metrics on http://127.0.0.1:<port>/metrics
+    public void startMetrics(int port) {
+        metrics.startLogging(dataDirectory.resolve("crawler-metrics.log"), METRICS_LOG_INTERVAL_MS);
+        if (port < 0) {
+            return;
+        }
+        try {
+            System.out.println("Metrics on http://127.0.0.1:" + metrics.startServer(port) + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Failed to start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    public CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Refreshes the stored PageRank incrementally every intervalMs while checkpoints keep storing pages, and once
+    // more on close, so ranks follow the crawl without a full recompute after it
+    public synchronized void startRankRefresh(long intervalMs) {
+        rankRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rank-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rankRefresher.scheduleWithFixedDelay(this::refreshRanks, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshRanks() {
+        if (!ranksStale.getAndSet(false)) {
+            return;
+        }
+        try (Connection conn = DriverManager.getConnection(dbUrl)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout=5000");
+            }
+            // One thread, so the refresh does not compete with the crawl for cores
+            PageRank.refreshPageRank(conn, 1);
+            metrics.increment("rank_refreshes");
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("PageRank refresh failed: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        if (exchange != null) {
+            exchange.close();
+        }
+        storageWriter.close();
+        contentStore.close();
+        if (rankRefresher != null) {
+            rankRefresher.shutdown();
+            try {
+                rankRefresher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            refreshRanks();
+        }
+        // Closed after the writer so the persisted sets match what was committed
+        visitedUrls.close();
+        queuedUrls.close();
+        frontierStore.close();
+        robotsCache.close();
+        fetcher.close();
+        metrics.close();
     }
 
 
     public void crawl() {
         activeThreads.incrementAndGet();
-        Queue<String> tempQueuedUrls = new LinkedList<>();
-        List<String> tempCrawledUrlsBuffer = new ArrayList<>();
-        List<String> tempHtmlDocsBuffer = new ArrayList<>();
-        HashSet<String> tempContentHashes = new HashSet<>();
-        List<String> tempHtmlTitlesBuffer = new ArrayList<>();
-        List<String> tempTimeStampsBuffer = new ArrayList<>();
-        List<HashSet<String>> tempListOfExtractedHyperLinksBuffer = new ArrayList<>();
         try {
-            while (!urlQueue.isEmpty()) {
-                if (pendingPages.incrementAndGet() + totalCrawledPages.get() > MAX_PAGES) {
+            while (true) {
+                if (pendingPages.incrementAndGet() + totalCrawledPages.get() > maxPages) {
                     pendingPages.decrementAndGet();
+                    frontier.close();
                     break;
                 }
-                String normalizedUrlStr = urlQueue.poll();
+                // Blocks until the next host is past its crawl delay; null means the frontier is drained
+                long waitStart = System.nanoTime();
+                String normalizedUrlStr = nextUrl();
+                metrics.recordSince(CrawlerMetrics.Stage.FRONTIER_WAIT, waitStart);
                 if (normalizedUrlStr == null) {
-                    if (urlQueue.isEmpty() && activeThreads.get() <= 1) {
-                        break;
-                    }
                     pendingPages.decrementAndGet();
-                    Thread.sleep(10);
-                    continue;
-                }
-
-                if (!visitedUrls.add(normalizedUrlStr)) {
-//                    System.err.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Already visited");
-                    pendingPages.decrementAndGet();
-                    continue;
+                    break;
                 }
-
-
-                // Check domain limit after marking as visited
                 String domain = getDomain(normalizedUrlStr);
-                AtomicInteger domainCount = domainPageCounts.computeIfAbsent(domain, k -> new AtomicInteger(0));
-                boolean canCrawl = false;
-                int currentCount;
-                do {
-                    currentCount = domainCount.get();
-                    if (currentCount >= MAX_PAGES_PER_DOMAIN) {
-//                        System.err.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Domain " + domain + " reached limit of " + MAX_PAGES_PER_DOMAIN + " pages");
-                        pendingPages.decrementAndGet();
-                        break;
-                    }
-                    canCrawl = domainCount.compareAndSet(currentCount, currentCount + 1);
-                } while (!canCrawl);
-
-                if (!canCrawl) {
-                    continue;
+                boolean fetched = false;
+                try {
+                    fetched = crawlUrl(normalizedUrlStr, domain);
+                } finally {
+                    // Only a real request to the host counts against its politeness delay
+                    frontier.release(domain, fetched ? getCrawlDelay(normalizedUrlStr) : 0);
                 }
+            }
+        } catch (Exception e) {
+            System.err.println(Thread.currentThread().getName() + " - Exception: " + e.getMessage());
+        } finally {
+            activeThreads.decrementAndGet();
+        }
+    }
 
-                Document doc = fetchHtmlDocument(normalizedUrlStr);
-                if (doc == null) {
-                    visitedUrls.remove(normalizedUrlStr);
-                    domainCount.decrementAndGet(); // Undo reservation
+    // Crawl mode with one lightweight thread per in-flight fetch.
+    // A global semaphore bounds the number of fetches in flight, the frontier already limits every host to
+    // one fetch at a time, and jsoup parsing is handed to a small bounded pool sized to the CPU count so
+    // thousands of slow downloads can overlap without thousands of OS threads competing for the cores.
+    public void crawlConcurrent(int maxInFlight) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService fetchExecutor = newFetchExecutor();
+        int cores = Runtime.getRuntime().availableProcessors();
+        parsePool = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cores * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            while (true) {
+                inFlight.acquire();
+                if (pendingPages.incrementAndGet() + totalCrawledPages.get() > maxPages) {
                     pendingPages.decrementAndGet();
-                    continue;
+                    inFlight.release();
+                    frontier.close();
+                    break;
                 }
-
-                String hashedHtml = hashHtmlContent(doc.html());
-                if (!contentHashes.add(hashedHtml)) {
-                    System.out.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Duplicate content");
-                    domainCount.decrementAndGet(); // Undo reservation
+                long waitStart = System.nanoTime();
+                String normalizedUrlStr = nextUrl();
+                metrics.recordSince(CrawlerMetrics.Stage.FRONTIER_WAIT, waitStart);
+                if (normalizedUrlStr == null) {
                     pendingPages.decrementAndGet();
-                    continue;
+                    inFlight.release();
+                    break;
                 }
-
-                // Increment domain page count
-                queuedUrls.remove(normalizedUrlStr);
-                System.out.println(Thread.currentThread().getName() + " - Successfully downloaded " + normalizedUrlStr);
-                // int totalCrawled = totalCrawledPages.get() + pendingPages.get();
-//                 System.out.println("Pending pages: " + pendingPages.get());
-
-                tempCrawledUrlsBuffer.add(normalizedUrlStr);
-                tempHtmlDocsBuffer.add(doc.html());
-                tempContentHashes.add(hashedHtml);
-                tempHtmlTitlesBuffer.add(doc.title());
-                tempTimeStampsBuffer.add(LocalDateTime.now().toString());
-                HashSet<String> hyperLinks = extractLinks(doc);
-                tempListOfExtractedHyperLinksBuffer.add(hyperLinks);
-
-                for (String hyperLink : hyperLinks) {
-                    String normalizedHyperLink = normalizeURL(hyperLink);
-                    if (normalizedHyperLink == null) {
-                        continue;
-                    }
-                    String domainLink = getDomain(normalizedHyperLink);
-                    AtomicInteger domainLinkCount = domainPageCounts.computeIfAbsent(domainLink, k -> new AtomicInteger(0));
-                    if (domainLinkCount.get() >= MAX_PAGES_PER_DOMAIN) {
-//                        System.err.println(Thread.currentThread().getName() + " - Skipping extractedlink: " + normalizedHyperLink + ": Domain limit reached");
-                        continue;
-                    }
-                    if (visitedUrls.contains(normalizedHyperLink) || queuedUrls.contains(normalizedHyperLink)) {
-                        continue;
-                    }
-                    if (urlQueue.size() < MAX_QUEUE_SIZE) {
-                        urlQueue.offer(normalizedHyperLink);
-                        queuedUrls.add(normalizedHyperLink);
-                        tempQueuedUrls.offer(normalizedHyperLink);
+                String domain = getDomain(normalizedUrlStr);
+                fetchExecutor.execute(() -> {
+                    activeThreads.incrementAndGet();
+                    boolean fetched = false;
+                    try {
+                        fetched = crawlUrl(normalizedUrlStr, domain);
+                    } catch (Exception e) {
+                        System.err.println(Thread.currentThread().getName() + " - Exception crawling " + normalizedUrlStr + ": " + e.getMessage());
+                    } finally {
+                        frontier.release(domain, fetched ? getCrawlDelay(normalizedUrlStr) : 0);
+                        activeThreads.decrementAndGet();
+                        inFlight.release();
                     }
+                });
+            }
+            // Wait for the remaining fetches to finish
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            System.err.println("Crawl interrupted: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            fetchExecutor.shutdown();
+            parsePool.shutdown();
+            try {
+                if (!fetchExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    fetchExecutor.shutdownNow();
                 }
+            } catch (InterruptedException e) {
+                fetchExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            parsePool = null;
+        }
+    }
 
-                if (tempHtmlDocsBuffer.size() >= CHECKPOINT_INTERVAL || totalCrawledPages.get() + pendingPages.get() >= MAX_PAGES) {
-//                    System.out.println(Thread.currentThread().getName() + " - Checkpoint: " + tempHtmlDocsBuffer.size() + " documents to save");
-                    saveDataAtCheckpoint(tempQueuedUrls, tempCrawledUrlsBuffer, tempHtmlDocsBuffer, tempContentHashes, tempHtmlTitlesBuffer, tempTimeStampsBuffer, tempListOfExtractedHyperLinksBuffer);
-                }
+    // Virtual threads need Java 21; on older runtimes fall back to a cached pool, which stays bounded by the in-flight semaphore
+    private static ExecutorService newFetchExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available on this JVM, using a cached thread pool instead");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Next URL from the in-memory frontier, topped up from the frontier store whenever it runs low
+    private String nextUrl() throws InterruptedException {
+        while (true) {
+            if (frontier.size() < FRONTIER_CHUNK_SIZE) {
+                refillFrontier();
             }
-        } catch (Exception e) {
-            System.err.println(Thread.currentThread().getName() + " - Exception: " + e.getMessage());
-        } finally {
-            activeThreads.decrementAndGet();
-            if (!tempCrawledUrlsBuffer.isEmpty()) {
-                System.out.println(Thread.currentThread().getName() + " - Final save: " + tempCrawledUrlsBuffer.size() + " documents to save");
-                saveDataAtCheckpoint(tempQueuedUrls, tempCrawledUrlsBuffer, tempHtmlDocsBuffer, tempContentHashes, tempHtmlTitlesBuffer, tempTimeStampsBuffer, tempListOfExtractedHyperLinksBuffer);
+            String url = frontier.poll();
+            if (url != null) {
+                return url;
+            }
+            // The in-memory frontier is drained; the crawl is only over if the store has nothing queued either
+            if (frontier.isClosed()) {
+                return null;
+            }
+            if (refillFrontier() == 0 && !awaitShardWork()) {
+                return null;
             }
         }
     }
 
-    private void writeUrlsToFile(Queue<String> tempUrls) {
-        fileLock.lock();
-        try (BufferedWriter urlsWriter = new BufferedWriter(new FileWriter(URLS_FILE_NAME, true))) {
-            while (!tempUrls.isEmpty()) {
-                String tempUrl = tempUrls.poll();
-                urlsWriter.write(tempUrl);
-                urlsWriter.newLine();
+    // Called with nothing left to crawl locally. Other shards may still be sending URLs, so a sharded crawler
+    // publishes itself idle and keeps polling its inbox until the exchange finds every shard idle with nothing
+    // in flight. Returns false when the crawl is over.
+    private boolean awaitShardWork() throws InterruptedException {
+        if (exchange == null) {
+            return false;
+        }
+        // Under the refill lock nothing else can move URLs into the frontier while this decides
+        synchronized (refillLock) {
+            // A URL still being crawled may queue or send more, and a refill picks up what finished crawls queued
+            if (!frontier.isIdle() || refillFrontier() > 0 || importExchange(true) > 0) {
+                return true;
+            }
+            // markIdle also sends our own buffered URLs, which may be exactly what the other shards are waiting for
+            if (exchange.markIdle() && exchange.isCrawlOver()) {
+                return false;
             }
-        } catch (IOException e) {
-            System.err.println(Thread.currentThread().getName() + " - Error writing to file: " + e.getMessage());
-        } finally {
-            fileLock.unlock();
         }
+        Thread.sleep(EXCHANGE_POLL_INTERVAL_MS);
+        return true;
     }
 
-    private int insertIntoDB(List<String> tempCrawledUrlsBuffer, List<String> tempHtmlDocsBuffer, HashSet<String> tempContentHashes, List<String> tempHtmlTitlesBuffer,
-                             List<String> tempTimeStampsBuffer, List<HashSet<String>> tempListOfExtractedHyperLinksBuffer) {
-        dbLock.lock();
-        java.sql.Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(DB_URL);
-            conn.setAutoCommit(false);
-            List<Long> docIds = new ArrayList<>();
-            List<String> contentHashesList = tempContentHashes.stream().toList();
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO DocumentMetaData (url, title, html, hash, last_crawled_date) VALUES (?, ?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                for (int i = 0; i < tempHtmlDocsBuffer.size(); i++) {
-                    stmt.setString(1, tempCrawledUrlsBuffer.get(i));
-                    stmt.setString(2, tempHtmlTitlesBuffer.get(i));
-                    stmt.setString(3, tempHtmlDocsBuffer.get(i));
-                    stmt.setString(4, contentHashesList.get(i));
-                    stmt.setString(5, tempTimeStampsBuffer.get(i));
-                    stmt.executeUpdate();
-                    ResultSet rs = stmt.getGeneratedKeys();
-                    if (rs.next()) {
-                        docIds.add(rs.getLong(1));
-                    } else {
-                        throw new SQLException("No generated key returned for crawled_pages insertion at index " + i);
-                    }
-                    rs.close();
+    // Moves URLs other shards found for our hosts into the frontier store, at most once per poll interval
+    // unless forced. Returns the number of URLs received.
+    private int importExchange(boolean force) {
+        long now = System.currentTimeMillis();
+        if (exchange == null || (!force && now - lastExchangeImport < EXCHANGE_POLL_INTERVAL_MS)) {
+            return 0;
+        }
+        lastExchangeImport = now;
+        return exchange.receive(entries -> {
+            for (UrlExchange.Entry entry : entries) {
+                if (!visitedUrls.contains(entry.getUrl())) {
+                    queuedUrls.add(entry.getUrl());
+                    frontierStore.enqueue(entry.getUrl(), entry.getHost(), entry.getDepth(), entry.getPriority(), false);
                 }
             }
-            if (docIds.size() != tempHtmlDocsBuffer.size()) {
-                System.err.println(Thread.currentThread().getName() +
-                        " - Error inserting into crawled_pages: expected " + tempHtmlDocsBuffer.size() +
-                        ", got " + docIds.size());
-                throw new SQLException("Inserted " + docIds.size() + " rows into crawled_pages, expected " +
-                        tempHtmlDocsBuffer.size());
-            }
-            System.out.println("Thread " + Thread.currentThread().getName() +
-                    " - Inserted " + docIds.size() + " rows into crawled_pages");
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO extracted_links (doc_id, extracted_link) VALUES (?, ?)")) {
-                for (int i = 0; i < docIds.size(); i++) {
-                    long docId = docIds.get(i);
-                    HashSet<String> links = tempListOfExtractedHyperLinksBuffer.get(i);
-                    for (String link : links) {
-                        stmt.setLong(1, docId);
-                        stmt.setString(2, link);
-                        stmt.addBatch();
-                    }
+            // The batch file is deleted as soon as this returns
+            frontierStore.sync();
+        });
+    }
+
+    // Loads the next chunk of queued URLs from the store. Returns the number of rows taken from the store.
+    private int refillFrontier() {
+        synchronized (refillLock) {
+            int room = MAX_QUEUE_SIZE - frontier.size();
+            if (frontier.isClosed() || frontier.size() >= FRONTIER_CHUNK_SIZE || room <= 0) {
+                return 0;
+            }
+            importExchange(false);
+            List<FrontierStore.Entry> entries = frontierStore.loadQueued(Math.min(room, FRONTIER_CHUNK_SIZE));
+            for (FrontierStore.Entry entry : entries) {
+                AtomicInteger domainCount = domainPageCounts.get(entry.getHost());
+                if (visitedUrls.contains(entry.getUrl())
+                        || (domainCount != null && domainCount.get() >= MAX_PAGES_PER_DOMAIN)) {
+                    frontierStore.markDone(entry.getUrl());
+                    continue;
                 }
-                stmt.executeBatch();
+                queuedEntries.put(entry.getUrl(), entry);
+                frontier.offer(entry.getHost(), entry.getUrl());
             }
-            conn.commit();
-            return docIds.size();
-        } catch (SQLException e) {
-            System.err.println(Thread.currentThread().getName() +
-                    " - SQLException in checkpoint: " + e.getMessage());
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException rollbackEx) {
-                    System.err.println(Thread.currentThread().getName() +
-                            " - SQLException in rollback: " + rollbackEx.getMessage());
+            return entries.size();
+        }
+    }
+
+    // Crawls a single URL handed out by the frontier. Returns true if a request was sent to the host.
+    private boolean crawlUrl(String normalizedUrlStr, String domain) throws InterruptedException {
+        FrontierStore.Entry queued = queuedEntries.remove(normalizedUrlStr);
+        int depth = queued != null ? queued.getDepth() : 0;
+        double cash = queued != null ? queued.getPriority() : CrawlPriority.SEED_CASH;
+        if (!visitedUrls.add(normalizedUrlStr)) {
+//            System.err.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Already visited");
+            frontierStore.markDone(normalizedUrlStr);
+            pendingPages.decrementAndGet();
+            return false;
+        }
+
+
+        // Check domain limit after marking as visited
+        AtomicInteger domainCount = domainPageCounts.computeIfAbsent(domain, k -> new AtomicInteger(0));
+        boolean canCrawl = false;
+        int currentCount;
+        do {
+            currentCount = domainCount.get();
+            if (currentCount >= MAX_PAGES_PER_DOMAIN) {
+//                System.err.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Domain " + domain + " reached limit of " + MAX_PAGES_PER_DOMAIN + " pages");
+                // Never fetched: a later run with room on this domain may still crawl it
+                visitedUrls.remove(normalizedUrlStr);
+                frontierStore.markDone(normalizedUrlStr);
+                pendingPages.decrementAndGet();
+                break;
+            }
+            canCrawl = domainCount.compareAndSet(currentCount, currentCount + 1);
+        } while (!canCrawl);
+
+        if (!canCrawl) {
+            return false;
+        }
+
+        FetchResult response = fetchPage(normalizedUrlStr, Map.of());
+        if (response == ROBOTS_DISALLOWED) {
+            // Nothing was fetched, so the host owes no delay and the URL is settled rather than failed
+            visitedUrls.remove(normalizedUrlStr);
+            frontierStore.markDone(normalizedUrlStr);
+            domainCount.decrementAndGet(); // Undo reservation
+            pendingPages.decrementAndGet();
+            return false;
+        }
+        FetchedPage page = response != null && isHtml(response) ? parsePage(response) : null;
+        if (page == null) {
+            metrics.increment("pages_failed");
+            visitedUrls.remove(normalizedUrlStr);
+            frontierStore.markFailed(normalizedUrlStr);
+            domainCount.decrementAndGet(); // Undo reservation
+            pendingPages.decrementAndGet();
+            return true;
+        }
+
+        // Pages without any visible text (script-only shells) have no meaningful fingerprint to compare
+        long hashStart = System.nanoTime();
+        long simhash = SimHash.fingerprint(page.parsed.getVisibleText());
+        boolean duplicate = simhash != 0 && !nearDuplicates.addIfUnique(simhash);
+        long linksStart = metrics.recordSince(CrawlerMetrics.Stage.HASH, hashStart);
+        if (duplicate) {
+            metrics.increment("near_duplicates");
+            System.out.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr + ": Near-duplicate content");
+            frontierStore.markDone(normalizedUrlStr);
+            domainCount.decrementAndGet(); // Undo reservation
+            pendingPages.decrementAndGet();
+            return true;
+        }
+
+        System.out.println(Thread.currentThread().getName() + " - Successfully downloaded " + normalizedUrlStr);
+        // int totalCrawled = totalCrawledPages.get() + pendingPages.get();
+//         System.out.println("Pending pages: " + pendingPages.get());
+
+        // Every link gets a share of this page's priority; links already queued add it to what they have.
+        // New links wait in the store, so the next refill picks the best of everything found so far.
+        double linkShare = CrawlPriority.linkShare(cash, page.parsed.getLinks().size());
+        for (String hyperLink : page.parsed.getLinks()) {
+            UrlCanonicalizer.CanonicalUrl canonicalLink = UrlCanonicalizer.canonicalize(hyperLink);
+            if (canonicalLink == null) {
+                continue;
+            }
+            String normalizedHyperLink = canonicalLink.url();
+            String domainLink = canonicalLink.host();
+            if (visitedUrls.contains(normalizedHyperLink)) {
+                continue;
+            }
+            if (!shard.owns(domainLink)) {
+                // Another shard crawls this host and counts its pages; queuedUrls keeps us from sending a URL twice
+                if (queuedUrls.add(normalizedHyperLink)) {
+                    exchange.send(normalizedHyperLink, domainLink, depth + 1, linkShare);
                 }
+                continue;
             }
-            throw new RuntimeException("Failed to insert into database", e);
-        } finally {
-            if (conn != null) {
+            AtomicInteger domainLinkCount = domainPageCounts.computeIfAbsent(domainLink, k -> new AtomicInteger(0));
+            if (domainLinkCount.get() >= MAX_PAGES_PER_DOMAIN) {
+//                System.err.println(Thread.currentThread().getName() + " - Skipping extractedlink: " + normalizedHyperLink + ": Domain limit reached");
+                continue;
+            }
+            queuedUrls.add(normalizedHyperLink);
+            double priority = linkShare * CrawlPriority.hostWeight(domainLink.equals(domain), domainLinkCount.get(), MAX_PAGES_PER_DOMAIN);
+            frontierStore.enqueue(normalizedHyperLink, domainLink, depth + 1, priority, false);
+        }
+        metrics.recordSince(CrawlerMetrics.Stage.LINKS, linksStart);
+        metrics.add("links_found", page.parsed.getLinks().size());
+
+        // Hand the page to the storage writer; this only blocks if the writer is a full queue behind
+        LocalDateTime crawledAt = LocalDateTime.now();
+        RevisitSchedule schedule = RevisitSchedule.initial(response.getEtag(), response.getLastModified(), crawledAt);
+        storageWriter.submit(new CrawlStorageWriter.CrawledPage(normalizedUrlStr, domain, page.html, page.parsed, simhash,
+                RevisitSchedule.format(crawledAt), schedule));
+        return true;
+    }
+
+    // A stored document picked for a revisit
+    private static class RecrawlTarget {
+        private final long id;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final long revisitInterval;
+        // null for documents crawled before SimHash fingerprints were stored
+        private final Long simhash;
+
+        RecrawlTarget(long id, String url, String etag, String lastModified, long revisitInterval, Long simhash) {
+            this.id = id;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.revisitInterval = revisitInterval;
+            this.simhash = simhash;
+        }
+    }
+
+    // Recrawl mode: revisits up to MAX_PAGES documents whose next_crawl_date has passed, most overdue first.
+    // Each revisit is a conditional request, so an unchanged page normally costs a 304 with no body, and only
+    // documents whose content really changed are rewritten and flagged with needs_reindex.
+    public void recrawl(int numThreads) {
+        Map<String, RecrawlTarget> targets = loadDueDocuments(maxPages);
+        System.out.println("Recrawling " + targets.size() + " due documents");
+        for (RecrawlTarget target : targets.values()) {
+            frontier.offer(getDomain(target.url), target.url);
+        }
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(() -> {
                 try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println(Thread.currentThread().getName() +
-                            " - Failed to restore auto-commit or close connection: " + e.getMessage());
+                    String url;
+                    while ((url = frontier.poll()) != null) {
+                        boolean fetched = false;
+                        try {
+                            fetched = recrawlUrl(targets.get(url));
+                        } finally {
+                            frontier.release(getDomain(url), fetched ? getCrawlDelay(url) : 0);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                System.err.println("Thread interrupted: " + e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Returns true if a request was sent to the host
+    private boolean recrawlUrl(RecrawlTarget target) throws InterruptedException {
+        Map<String, String> headers = new HashMap<>();
+        if (target.etag != null) {
+            headers.put("If-None-Match", target.etag);
+        }
+        if (target.lastModified != null) {
+            headers.put("If-Modified-Since", target.lastModified);
+        }
+        FetchResult response = fetchPage(target.url, headers);
+        LocalDateTime crawledAt = LocalDateTime.now();
+        if (response == null || response == ROBOTS_DISALLOWED) {
+            // Disallowed, timed out or unreachable: back the URL off like an error status, or it stays the most
+            // overdue row and is picked first by every recrawl
+            storageWriter.submit(CrawlStorageWriter.CrawledPage.failedRevisit(target.id, target.url,
+                    RevisitSchedule.afterVisit(target.revisitInterval, false, target.etag, target.lastModified, crawledAt)));
+            // A failed request still counts against the host's crawl delay; only a disallowed URL sent none
+            return response != ROBOTS_DISALLOWED;
+        }
+        String etag = response.getEtag() != null ? response.getEtag() : target.etag;
+        String lastModified = response.getLastModified() != null ? response.getLastModified() : target.lastModified;
+
+        FetchedPage page = isHtml(response) ? parsePage(response) : null;
+        long simhash = page != null ? SimHash.fingerprint(page.parsed.getVisibleText()) : 0;
+        // A near-duplicate of the stored copy (new timestamp, rotated ad) is not worth rewriting and reindexing
+        boolean changed = page != null && (target.simhash == null
+                || SimHash.hammingDistance(simhash, target.simhash) > NearDuplicateIndex.MAX_DISTANCE);
+        if (!response.isNotModified() && page == null) {
+            // Errors and non-HTML answers keep the stored copy; the growing interval backs off the URL
+            System.out.println(Thread.currentThread().getName() + " - Recrawl of " + target.url + " returned status " + response.getStatusCode());
+        }
+
+        RevisitSchedule schedule = RevisitSchedule.afterVisit(target.revisitInterval, changed, etag, lastModified, crawledAt);
+        if (changed) {
+            System.out.println(Thread.currentThread().getName() + " - Content changed: " + target.url);
+            // Keep near-duplicate detection in step with the content that is about to be stored
+            if (target.simhash != null) {
+                nearDuplicates.remove(target.simhash);
+            }
+            if (simhash != 0) {
+                nearDuplicates.add(simhash);
             }
-            dbLock.unlock();
+            storageWriter.submit(CrawlStorageWriter.CrawledPage.changed(target.id, target.url, page.html, page.parsed, simhash,
+                    RevisitSchedule.format(crawledAt), schedule));
+        } else {
+            storageWriter.submit(CrawlStorageWriter.CrawledPage.unchanged(target.id, target.url,
+                    RevisitSchedule.format(crawledAt), schedule));
         }
+        return true;
     }
 
-    void saveDataAtCheckpoint(Queue<String> tempUrls, List<String> tempCrawledUrlsBuffer,
-                              List<String> tempHtmlDocsBuffer, HashSet<String> tempContentHashes, List<String> tempHtmlTitles, List<String> tempTimeStampsBuffer, List<HashSet<String>> tempListOfExtractedHyperLinksBuffer) {
-        if (!tempUrls.isEmpty()) {
-            writeUrlsToFile(tempUrls);
+    private Map<String, RecrawlTarget> loadDueDocuments(int limit) {
+        Map<String, RecrawlTarget> targets = new LinkedHashMap<>();
+        // Rows from before revisit scheduling have no next_crawl_date and sort first
+        String sql = "SELECT id, url, etag, last_modified, revisit_interval, simhash FROM DocumentMetaData " +
+                "WHERE next_crawl_date IS NULL OR next_crawl_date <= ? ORDER BY next_crawl_date LIMIT ?";
+        try (java.sql.Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, RevisitSchedule.format(LocalDateTime.now()));
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long simhash = rs.getLong("simhash");
+                    Long storedSimhash = rs.wasNull() || simhash == 0 ? null : simhash;
+                    RecrawlTarget target = new RecrawlTarget(rs.getLong("id"), rs.getString("url"), rs.getString("etag"),
+                            rs.getString("last_modified"), rs.getLong("revisit_interval"), storedSimhash);
+                    targets.putIfAbsent(target.url, target);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to load documents due for recrawl: " + e.getMessage());
         }
-        if (!tempCrawledUrlsBuffer.isEmpty()) {
-            int rowsInserted = insertIntoDB(tempCrawledUrlsBuffer, tempHtmlDocsBuffer, tempContentHashes, tempHtmlTitles, tempTimeStampsBuffer, tempListOfExtractedHyperLinksBuffer);
-            totalCrawledPages.addAndGet(rowsInserted);
-            pendingPages.addAndGet(-rowsInserted);
+        return targets;
+    }
+
+    // Only needed the first time, or after a run that did not shut down cleanly
+    private void initializeVisitedUrls() {
+        System.out.println("Rebuilding visited URL set from DocumentMetaData");
+        addVisitedUrls(dbUrl);
+        Path mergedDb = DATA_ROOT.resolve("search_index.db");
+        if (shard.isSharded() && Files.exists(mergedDb)) {
+            // A shard database starts empty after every merge; pages merged by earlier crawls are not fetched again
+            addVisitedUrls("jdbc:sqlite:" + mergedDb);
         }
-        tempCrawledUrlsBuffer.clear();
-        tempHtmlDocsBuffer.clear();
-        tempTimeStampsBuffer.clear();
-        tempListOfExtractedHyperLinksBuffer.clear();
-        tempContentHashes.clear();
     }
 
-    private void initializeVisitedUrlsAndHashes() {
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
+    private void addVisitedUrls(String sourceDbUrl) {
+        try (java.sql.Connection conn = DriverManager.getConnection(sourceDbUrl);
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT url, hash FROM DocumentMetaData")) {
+             ResultSet rs = stmt.executeQuery("SELECT url FROM DocumentMetaData")) {
             while (rs.next()) {
-                visitedUrls.add(rs.getString("url"));
-                String domain = getDomain(rs.getString("url"));
-                domainPageCounts.computeIfAbsent(domain, k -> new AtomicInteger(0)).incrementAndGet();
-                contentHashes.add(rs.getString("hash"));
+                String url = rs.getString("url");
+                String host = getDomain(url);
+                if (host != null && shard.owns(host)) {
+                    visitedUrls.add(url);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Failed to read urls: " + e.getMessage());
         }
     }
 
+    // Rows crawled before SimHash was introduced have no fingerprint and are not deduplicated against
+    private void initializeNearDuplicateIndex() {
+        try (java.sql.Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT simhash FROM DocumentMetaData WHERE simhash IS NOT NULL AND simhash != 0")) {
+            while (rs.next()) {
+                nearDuplicates.add(rs.getLong("simhash"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to read content fingerprints: " + e.getMessage());
+        }
+    }
+
+    private void initializeDomainPageCounts() {
+        try (java.sql.Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT host, COUNT(*) AS count FROM DocumentMetaData GROUP BY host")) {
+            while (rs.next()) {
+                String host = rs.getString("host");
+                if (host != null) {
+                    domainPageCounts.put(host, new AtomicInteger(rs.getInt("count")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to read domain page counts: " + e.getMessage());
+        }
+    }
+
+    // Fills the host column for rows crawled before it existed
+    private static void backfillHosts(java.sql.Connection conn) throws SQLException {
+        Map<Integer, String> hosts = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, url FROM DocumentMetaData WHERE host IS NULL")) {
+            while (rs.next()) {
+                String host = getDomain(rs.getString("url"));
+                if (host != null) {
+                    hosts.put(rs.getInt("id"), host);
+                }
+            }
+        }
+        if (hosts.isEmpty()) {
+            return;
+        }
+        conn.setAutoCommit(false);
+        try (PreparedStatement update = conn.prepareStatement("UPDATE DocumentMetaData SET host = ? WHERE id = ?")) {
+            for (Map.Entry<Integer, String> entry : hosts.entrySet()) {
+                update.setString(1, entry.getValue());
+                update.setInt(2, entry.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        System.out.println("Backfilled host for " + hosts.size() + " documents");
+    }
+
+    // Seeds the frontier store from urls.txt on the first run; later runs resume from the store
     private void initializeUrlQueue() {
+        if (frontierStore.isEmpty()) {
+            seedFrontierStore();
+        }
+        long[] counts = frontierStore.countByState();
+        System.out.println("Frontier - " + counts[FrontierStore.QUEUED] + " queued, " + counts[FrontierStore.DONE] + " done, "
+                + counts[FrontierStore.FAILED] + " failed");
+    }
+
+    private void seedFrontierStore() {
         try (BufferedReader urlsReader = new BufferedReader(new FileReader(URLS_FILE_NAME))) {
             String urlStr;
             while ((urlStr = urlsReader.readLine()) != null) {
@@ -356,16 +899,19 @@ public class Crawler {
                     continue;
                 }
                 String domain = getDomain(normalizedUrlStr);
+                if (!shard.owns(domain)) {
+                    // Every shard reads the same seed file and keeps only its own hosts
+                    continue;
+                }
                 AtomicInteger domainCount = domainPageCounts.computeIfAbsent(domain, k -> new AtomicInteger(0));
                 if (domainCount.get() >= MAX_PAGES_PER_DOMAIN) {
 //                    System.err.println(Thread.currentThread().getName() + " - Skipping " + normalizedUrlStr +  "from URL seed " + ": Domain limit reached");
                     continue;
                 }
-                if (visitedUrls.contains(normalizedUrlStr) || queuedUrls.contains(normalizedUrlStr)) {
+                if (visitedUrls.contains(normalizedUrlStr) || !queuedUrls.add(normalizedUrlStr)) {
                     continue;
                 }
-                urlQueue.offer(normalizedUrlStr);
-                queuedUrls.add(normalizedUrlStr);
+                frontierStore.enqueue(normalizedUrlStr, domain, 0, CrawlPriority.SEED_CASH, false);
             }
         } catch (IOException e) {
             System.err.println("Error opening file: " + URLS_FILE_NAME + " " + e.getMessage());
@@ -373,7 +919,7 @@ public class Crawler {
     }
 
     int getRowCount() {
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
+        try (java.sql.Connection conn = DriverManager.getConnection(dbUrl);
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS count FROM DocumentMetaData")) {
             if (rs.next()) {
@@ -388,169 +934,168 @@ public class Crawler {
     }
 
     private void initializeDatabase() {
-        try (java.sql.Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
+        try (java.sql.Connection conn = DriverManager.getConnection(dbUrl)) {
+            initializeSchema(conn);
+        } catch (SQLException e) {
+            System.err.println("Failed to initialize database: " + e.getMessage());
+        }
+    }
+
+    // Creates or upgrades the crawler's tables; ShardMerger uses it for the merged database
+    static void initializeSchema(java.sql.Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS DocumentMetaData (
                         id INTEGER PRIMARY KEY AUTOINCREMENT,
                         url TEXT NOT NULL,
+                        host TEXT,
                         title TEXT,
                         html TEXT,
                         hash TEXT,
+                        simhash INTEGER,
+                        etag TEXT,
+                        last_modified TEXT,
+                        revisit_interval INTEGER,
+                        next_crawl_date TEXT,
+                        needs_reindex INTEGER DEFAULT 0,
                         last_crawled_date TEXT DEFAULT CURRENT_TIMESTAMP,
-                        page_rank REAL DEFAULT 0.0
+                        page_rank REAL DEFAULT 0.0,
+                        content_segment INTEGER,
+                        content_offset INTEGER,
+                        content_length INTEGER,
+                        parsed_segment INTEGER,
+                        parsed_offset INTEGER,
+                        parsed_length INTEGER
                     )
                     """);
+            ContentStore.ensureSchema(conn);
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "host", "TEXT");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "simhash", "INTEGER");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "etag", "TEXT");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "last_modified", "TEXT");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "revisit_interval", "INTEGER");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "next_crawl_date", "TEXT");
+            DataBaseManager.ensureColumn(conn, "DocumentMetaData", "needs_reindex", "INTEGER DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_next_crawl_date ON DocumentMetaData(next_crawl_date)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_host ON DocumentMetaData(host)");
+            backfillHosts(conn);
             stmt.execute("CREATE TABLE IF NOT EXISTS extracted_links (" +
                     "doc_id INTEGER NOT NULL, " +
                     "extracted_link TEXT NOT NULL, " +
                     "FOREIGN KEY (doc_id) REFERENCES DocumentMetaData(doc_id) ON DELETE CASCADE)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_doc_id ON extracted_links(doc_id)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_url ON DocumentMetaData(url)");
-        } catch (SQLException e) {
-            System.err.println("Failed to initialize database: " + e.getMessage());
+            DataBaseManager.ensureLinkGraph(conn);
         }
     }
 
-    private Document fetchHtmlDocument(String url) {
-        if (!isAllowedByRobots(url)) {
+    // Returns ROBOTS_DISALLOWED without sending a request if robots.txt disallows url, and null if the request failed
+    private FetchResult fetchPage(String url, Map<String, String> requestHeaders) {
+        long robotsStart = System.nanoTime();
+        boolean allowed = isAllowedByRobots(url);
+        long fetchStart = metrics.recordSince(CrawlerMetrics.Stage.ROBOTS, robotsStart);
+        if (!allowed) {
 //            System.err.println(LocalDateTime.now() + ": Thread " + Thread.currentThread().getName() +
 //                    " - Skipping " + url + ": Disallowed by robots.txt");
-            return null;
+            metrics.increment("robots_disallowed");
+            return ROBOTS_DISALLOWED;
         }
-
         try {
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent(USER_AGENTS[new Random().nextInt(USER_AGENTS.length)])
-                    .timeout(5000)
-                    .execute();
-
-            int statusCode = response.statusCode();
-            if (statusCode != 200) {
-//                System.err.println(Thread.currentThread().getName() + " - Failed to fetch " + url + ": Status " + statusCode);
-                return null;
+            FetchResult response = fetcher.fetch(url, "text/html", requestHeaders);
+            long fetchNanos = System.nanoTime() - fetchStart;
+            long headersNanos = response.getHeadersNanos();
+            // A fetcher that does not report when the headers arrived counts entirely as download time
+            if (headersNanos >= 0 && headersNanos <= fetchNanos) {
+                metrics.record(CrawlerMetrics.Stage.CONNECT, headersNanos);
+                metrics.record(CrawlerMetrics.Stage.DOWNLOAD, fetchNanos - headersNanos);
+            } else {
+                metrics.record(CrawlerMetrics.Stage.DOWNLOAD, fetchNanos);
             }
-
-            String contentType = response.contentType();
-            if (contentType == null || !contentType.toLowerCase().startsWith("text/html")) {
-//                System.err.println(Thread.currentThread().getName() + " - Skipping " + url + ": Not HTML (" + contentType + ")");
-                return null;
-            }
-
-            return response.parse();
+            metrics.increment("fetches");
+            metrics.add("bytes_downloaded", response.getBody().length);
+            return response;
         } catch (IOException e) {
 //            System.err.println(Thread.currentThread().getName() + " - Failed to fetch " + url + ": " + e.getMessage());
+            metrics.increment("fetch_errors");
             return null;
         }
     }
 
-    private boolean isAllowedByRobots(String urlStr) {
-        try {
-            URL url = new URL(urlStr);
-            String host = url.getProtocol() + "://" + url.getHost();
-
-            if (robotsCache.containsKey(host)) {
-                BaseRobotRules rules = robotsCache.get(host);
-                return rules.isAllowed(urlStr);
-            }
-
-            URL robotsTxtUrl = new URL(host + "/robots.txt");
-            URLConnection connection = robotsTxtUrl.openConnection();
-            connection.setRequestProperty("User-Agent", USER_AGENTS[new Random().nextInt(USER_AGENTS.length)]);
-            connection.setConnectTimeout(3000);
-            connection.setReadTimeout(3000);
-
-            try (InputStream inputStream = connection.getInputStream()) {
-                byte[] robotsTxtContent = inputStream.readAllBytes();
-                SimpleRobotRulesParser parser = new SimpleRobotRulesParser();
-                BaseRobotRules rules = parser.parseContent(robotsTxtUrl.toString(), robotsTxtContent, "text/plain", USER_AGENTS[new Random().nextInt(USER_AGENTS.length)]);
-                robotsCache.put(host, rules);
-                return rules.isAllowed(urlStr);
-            }
-        } catch (IOException e) {
-            return true;
+    private static boolean isHtml(FetchResult response) {
+        if (response.getStatusCode() != 200) {
+//            System.err.println(Thread.currentThread().getName() + " - Failed to fetch " + response.getUrl() + ": Status " + response.getStatusCode());
+            return false;
         }
+        String contentType = response.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("text/html");
     }
 
-    public HashSet<String> extractLinks(Document doc) {
-        HashSet<String> links = new HashSet<>();
-        Elements anchorTags = doc.select("a[href]");
-        for (Element anchor : anchorTags) {
-            String href = anchor.absUrl("href");
-            if (href.startsWith("http")) {
-                links.add(href);
-                if (links.size() > MAX_DEPTH_PER_DOMAIN) {
-//                    System.err.println(Thread.currentThread().getName() + " - Skipping " + href + ": Depth limit reached");
-                    break;
-                }
-            }
+    // Raw HTML as served, decoded with the charset jsoup settled on, and the page extracted from it
+    private static class FetchedPage {
+        private final String html;
+        private final ParsedPage parsed;
+
+        FetchedPage(String html, ParsedPage parsed) {
+            this.html = html;
+            this.parsed = parsed;
         }
-        return links;
     }
 
-    public String normalizeURL(String urlString) {
+    private FetchedPage parsePage(FetchResult response) {
         try {
-            URI uri = new URI(urlString).normalize();
-            String host = uri.getHost();
-            if (host == null) {
-                return null;
+            ExecutorService pool = parsePool;
+            if (pool == null) {
+                return parseHtml(response);
             }
-            host = host.toLowerCase();
-            String scheme = uri.getScheme().toLowerCase();
-            int port = uri.getPort();
-            String path = uri.getPath().replaceAll("/+$", "");
-            if (path.isEmpty()) path = "/";
-            if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
-                port = -1;
-            }
-            String query = uri.getQuery();
-            if (query != null) {
-                query = filterIrrelevantParams(query);
-                if (query.isEmpty()) query = null;
-            }
-            return new URI(scheme, null, host, port, path, query, null).toString();
-        } catch (URISyntaxException | NullPointerException e) {
-//            System.err.println(Thread.currentThread().getName() + " - Error normalizing URL: " + urlString + " - " + e.getMessage());
+            // Parse on the bounded CPU pool so fetch threads only ever wait on the network
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return parseHtml(response);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, pool).join();
+        } catch (IOException | CompletionException e) {
+//            System.err.println(Thread.currentThread().getName() + " - Failed to parse " + response.getUrl() + ": " + e.getMessage());
             return null;
         }
     }
 
-    private String filterIrrelevantParams(String query) {
-        String[] params = query.split("&");
-        Set<String> validParams = new LinkedHashSet<>();
-        for (String param : params) {
-            String[] keyValue = param.split("=", 2);
-            String key = keyValue[0].toLowerCase();
-            if (key.matches("^(q|search|id|page|sort|category)$")) {
-                validParams.add(param);
-            }
-        }
-        return String.join("&", validParams);
+    // The DOM is walked once and dropped; the raw bytes are stored instead of re-serializing it with doc.html()
+    private FetchedPage parseHtml(FetchResult response) throws IOException {
+        long parseStart = System.nanoTime();
+        Document doc = Jsoup.parse(new ByteArrayInputStream(response.getBody()), response.getCharset(), response.getUrl());
+        String html = new String(response.getBody(), doc.charset());
+        FetchedPage page = new FetchedPage(html, ParsedPage.fromDocument(doc, MAX_LINKS_PER_PAGE));
+        metrics.recordSince(CrawlerMetrics.Stage.PARSE, parseStart);
+        return page;
     }
 
-    private String getDomain(String url) {
+    private boolean isAllowedByRobots(String urlStr) {
         try {
-            URI uri = new URI(url);
-            String host = uri.getHost();
-            return host != null ? host.toLowerCase() : "";
-        } catch (URISyntaxException e) {
-//            System.err.println(Thread.currentThread().getName() + " - Error extracting domain from URL: " + url);
-            return "";
+            URL url = new URL(urlStr);
+            return robotsCache.isAllowed(url.getProtocol() + "://" + url.getHost(), urlStr);
+        } catch (IOException e) {
+            return true;
         }
     }
 
-    private static String hashHtmlContent(String html) {
+    // Crawl-delay from the host's robots.txt in milliseconds, or -1 to use the scheduler's default
+    private long getCrawlDelay(String urlStr) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-            byte[] hashed = digest.digest(html.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashed) {
-                hexString.append(String.format("%02x", b));
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("Error hashing HTML content: " + e.getMessage());
-            return null;
+            URL url = new URL(urlStr);
+            return robotsCache.getCrawlDelay(url.getProtocol() + "://" + url.getHost());
+        } catch (IOException e) {
+            return -1;
         }
     }
-}
\ No newline at end of file
+
+    public String normalizeURL(String urlString) {
+        UrlCanonicalizer.CanonicalUrl canonical = UrlCanonicalizer.canonicalize(urlString);
+        return canonical != null ? canonical.url() : null;
+    }
+
+    private static String getDomain(String url) {
+        return UrlCanonicalizer.host(url);
+    }
+}
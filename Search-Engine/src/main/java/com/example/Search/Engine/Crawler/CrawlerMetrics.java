@@ -0,0 +1,270 @@
+package com.example.Search.Engine.Crawler;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Counters, gauges and per-stage latency histograms for the crawler.
+// Recording is lock-free (LongAdder / atomic bucket counts) so the crawl threads can time every stage of
+// every page. The numbers are served in Prometheus text format on http://127.0.0.1:<port>/metrics and a
+// short summary is appended to a log file at a fixed interval.
+public class CrawlerMetrics implements AutoCloseable {
+    public enum Stage {
+        // Waiting for the frontier to hand out a URL whose host is past its crawl delay
+        FRONTIER_WAIT,
+        ROBOTS,
+        // Request sent until response headers: DNS, connect, TLS and server think time
+        CONNECT,
+        // Response headers until the body is complete
+        DOWNLOAD,
+        PARSE,
+        HASH,
+        LINKS,
+        // One storage writer batch: rows, content store flush and commit
+        CHECKPOINT
+    }
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentSkipListMap<>();
+    // Gauges with one value per label, e.g. queue depth per host
+    private final Map<String, LabelledGauge> labelledGauges = new ConcurrentSkipListMap<>();
+    private final Map<Stage, Histogram> histograms = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ScheduledExecutorService logger;
+    private Path logFile;
+
+    private record LabelledGauge(String label, Supplier<Map<String, ? extends Number>> values) {
+    }
+
+    public CrawlerMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new Histogram());
+        }
+    }
+
+    // Latency histogram with power-of-two buckets from 64 us to about 67 s
+    public static class Histogram {
+        private static final int FIRST_BUCKET_SHIFT = 16; // 2^16 ns = 65.5 us
+        private static final int BUCKETS = 21;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            counts.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private static int bucketOf(long nanos) {
+            int bits = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos - 1));
+            return Math.min(BUCKETS, Math.max(0, bits - FIRST_BUCKET_SHIFT));
+        }
+
+        // Upper bound of bucket i in nanoseconds; the last bucket is unbounded
+        static long upperBound(int bucket) {
+            return bucket >= BUCKETS ? Long.MAX_VALUE : 1L << (bucket + FIRST_BUCKET_SHIFT);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Upper bound of the bucket holding the given quantile, so within a factor of two of the real value
+        public long quantileNanos(double quantile) {
+            long total = 0;
+            long[] snapshot = new long[counts.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long amount) {
+        counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+    }
+
+    public long counter(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    // values returns label value -> gauge value, e.g. host -> queue depth
+    public void labelledGauge(String name, String label, Supplier<Map<String, ? extends Number>> values) {
+        labelledGauges.put(name, new LabelledGauge(label, values));
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    // Records the time since startNanos (from System.nanoTime()) and returns the current time
+    public long recordSince(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        record(stage, now - startNanos);
+        return now;
+    }
+
+    public Histogram histogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    // Prometheus text exposition format
+    public String render() {
+        StringBuilder out = new StringBuilder();
+        counters.forEach((name, value) -> {
+            out.append("# TYPE crawler_").append(name).append(" counter\n");
+            out.append("crawler_").append(name).append(' ').append(value.sum()).append('\n');
+        });
+        gauges.forEach((name, value) -> {
+            out.append("# TYPE crawler_").append(name).append(" gauge\n");
+            out.append("crawler_").append(name).append(' ').append(readGauge(value)).append('\n');
+        });
+        labelledGauges.forEach((name, gauge) -> {
+            out.append("# TYPE crawler_").append(name).append(" gauge\n");
+            gauge.values().get().forEach((label, value) -> out.append("crawler_").append(name).append('{').append(gauge.label())
+                    .append("=\"").append(label.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"} ").append(value).append('\n'));
+        });
+        out.append("# TYPE crawler_stage_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = histograms.get(stage);
+            String label = stage.name().toLowerCase();
+            long cumulative = 0;
+            for (int i = 0; i <= Histogram.BUCKETS; i++) {
+                cumulative += histogram.counts.get(i);
+                String bound = i == Histogram.BUCKETS ? "+Inf" : Double.toString(Histogram.upperBound(i) / 1e9);
+                out.append("crawler_stage_seconds_bucket{stage=\"").append(label).append("\",le=\"").append(bound)
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append("crawler_stage_seconds_sum{stage=\"").append(label).append("\"} ")
+                    .append(histogram.getSumNanos() / 1e9).append('\n');
+            out.append("crawler_stage_seconds_count{stage=\"").append(label).append("\"} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // One line of counters and gauges and one line per stage that has seen any samples
+    public String summary() {
+        StringBuilder out = new StringBuilder(LocalDateTime.now().toString());
+        counters.forEach((name, value) -> out.append(' ').append(name).append('=').append(value.sum()));
+        gauges.forEach((name, value) -> out.append(' ').append(name).append('=').append(readGauge(value)));
+        out.append('\n');
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = histograms.get(stage);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format("  %-13s n=%-8d mean=%8.2fms p50<=%8.2fms p99<=%8.2fms max=%8.2fms total=%8.1fs%n",
+                    stage.name().toLowerCase(), count, histogram.getSumNanos() / 1e6 / count,
+                    histogram.quantileNanos(0.5) / 1e6, histogram.quantileNanos(0.99) / 1e6,
+                    histogram.getMaxNanos() / 1e6, histogram.getSumNanos() / 1e9));
+        }
+        return out.toString();
+    }
+
+    private static Object readGauge(Supplier<Number> value) {
+        try {
+            return value.get();
+        } catch (RuntimeException e) {
+            return "NaN";
+        }
+    }
+
+    // Serves render() on http://127.0.0.1:port/metrics; port 0 picks a free port. Returns the port.
+    public synchronized int startServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    // Appends summary() to file every intervalMs, and once more on close
+    public synchronized void startLogging(Path file, long intervalMs) {
+        logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawler-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(() -> writeSummary(file), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logFile = file;
+    }
+
+    private void writeSummary(Path file) {
+        try {
+            Files.writeString(file, summary(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Metrics - Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (logger != null) {
+            logger.shutdownNow();
+            writeSummary(logFile);
+            logger = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.Search.Engine.Crawler;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+public class FetchResult {
+    private final String url;
+    private final int statusCode;
+    private final String contentType;
+    private final byte[] body;
+    private final boolean truncated;
+    private final String etag;
+    private final String lastModified;
+    private final long headersNanos;
+
+    public FetchResult(String url, int statusCode, String contentType, byte[] body, boolean truncated) {
+        this(url, statusCode, contentType, body, truncated, null, null);
+    }
+
+    public FetchResult(String url, int statusCode, String contentType, byte[] body, boolean truncated,
+                       String etag, String lastModified) {
+        this(url, statusCode, contentType, body, truncated, etag, lastModified, -1);
+    }
+
+    public FetchResult(String url, int statusCode, String contentType, byte[] body, boolean truncated,
+                       String etag, String lastModified, long headersNanos) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.truncated = truncated;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.headersNanos = headersNanos;
+    }
+
+    // Final URL after redirects
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // Empty when the response was not successful or its content type was not accepted
+    public byte[] getBody() {
+        return body;
+    }
+
+    // True when the body was cut off at the fetcher's size limit
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public boolean isSuccess() {
+        return statusCode == 200;
+    }
+
+    // 304 answer to a conditional request: the copy we already have is still current
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    // ETag and Last-Modified response headers, or null; sent back as If-None-Match/If-Modified-Since on recrawl
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    // Time from sending the request to receiving the response headers, or -1 if the fetcher does not measure it
+    public long getHeadersNanos() {
+        return headersNanos;
+    }
+
+    // Charset declared in the Content-Type header, or null to let the parser detect it
+    public String getCharset() {
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            String param = part.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                String name = param.substring(8).replace("\"", "").trim();
+                try {
+                    return Charset.isSupported(name) ? name : null;
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
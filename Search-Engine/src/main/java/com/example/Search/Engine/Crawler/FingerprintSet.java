@@ -0,0 +1,227 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+// Open-addressing hash set of 64-bit fingerprints kept in a memory-mapped file.
+// The table lives outside the Java heap, so it costs 8 bytes per slot instead of a String plus a map node
+// per entry, and it survives restarts without rebuilding. Slots are probed linearly; removal uses backward
+// shifting so no tombstones are left behind. 0 marks an empty slot, so a fingerprint of 0 is stored as 1.
+// Not thread-safe: callers guard it (see SeenSet).
+public class FingerprintSet implements AutoCloseable {
+    private static final long MAGIC = 0x5345454e46505331L; // "SEENFPS1"
+    private static final int HEADER_BYTES = 64;
+    private static final int CLEAN_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final long MIN_CAPACITY = 1024;
+    // A single mapping is limited to 2 GB, which caps the table at 2^27 slots (about 94M fingerprints at MAX_LOAD)
+    private static final long MAX_CAPACITY = 1L << 27;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private long capacity;
+    private long mask;
+    private long size;
+    private final boolean cleanlyClosed;
+
+    // Opens the set stored at path, or creates an empty one sized for expectedEntries
+    public FingerprintSet(Path path, long expectedEntries) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER_BYTES;
+        if (exists) {
+            map(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), -1);
+            if (table.getLong(0) != MAGIC) {
+                channel.close();
+                throw new IOException("Not a fingerprint set: " + path);
+            }
+            cleanlyClosed = table.getInt(CLEAN_OFFSET) == 1;
+        } else {
+            create(path, capacityFor(expectedEntries));
+            cleanlyClosed = true;
+        }
+        // Marked dirty until close(), so a crash is detected on the next open
+        table.putInt(CLEAN_OFFSET, 0);
+    }
+
+    private static long capacityFor(long entries) {
+        long needed = (long) Math.ceil(Math.max(entries, 1) / MAX_LOAD);
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(needed - 1) << 1);
+        return Math.min(capacity, MAX_CAPACITY);
+    }
+
+    private void create(Path file, long newCapacity) throws IOException {
+        FileChannel newChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(newChannel, newCapacity);
+        table.putLong(0, MAGIC);
+        table.putLong(CAPACITY_OFFSET, newCapacity);
+        table.putLong(SIZE_OFFSET, 0);
+    }
+
+    // Maps the whole file; a negative capacity means read it from the existing header
+    private void map(FileChannel newChannel, long newCapacity) throws IOException {
+        if (newCapacity < 0) {
+            MappedByteBuffer header = newChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            newCapacity = header.getLong(CAPACITY_OFFSET);
+        }
+        channel = newChannel;
+        table = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + newCapacity * Long.BYTES);
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        size = table.getLong(SIZE_OFFSET);
+    }
+
+    // False if the previous owner did not close the set, in which case it may not match the database
+    public boolean wasCleanlyClosed() {
+        return cleanlyClosed;
+    }
+
+    private static long slotValue(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private int offset(long slot) {
+        return (int) (HEADER_BYTES + slot * Long.BYTES);
+    }
+
+    // Returns the slot holding the fingerprint, or the empty slot where it would go
+    private long find(long value) {
+        long slot = value & mask;
+        while (true) {
+            long current = table.getLong(offset(slot));
+            if (current == 0 || current == value) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        long value = slotValue(fingerprint);
+        return table.getLong(offset(find(value))) == value;
+    }
+
+    // Returns true if the fingerprint was not already in the set
+    public boolean add(long fingerprint) throws IOException {
+        long value = slotValue(fingerprint);
+        long slot = find(value);
+        if (table.getLong(offset(slot)) == value) {
+            return false;
+        }
+        if (size + 1 > capacity * MAX_LOAD) {
+            grow();
+            slot = find(value);
+        }
+        table.putLong(offset(slot), value);
+        table.putLong(SIZE_OFFSET, ++size);
+        return true;
+    }
+
+    public boolean remove(long fingerprint) {
+        long value = slotValue(fingerprint);
+        long hole = find(value);
+        if (table.getLong(offset(hole)) != value) {
+            return false;
+        }
+        // Backward-shift deletion: pull later entries of the probe run into the hole
+        long slot = (hole + 1) & mask;
+        while (true) {
+            long current = table.getLong(offset(slot));
+            if (current == 0) {
+                break;
+            }
+            long home = current & mask;
+            // Move the entry only if its home slot is not between the hole and its current slot
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table.putLong(offset(hole), current);
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table.putLong(offset(hole), 0);
+        table.putLong(SIZE_OFFSET, --size);
+        return true;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    // Bytes held off-heap by the mapping
+    public long mappedBytes() {
+        return HEADER_BYTES + capacity * Long.BYTES;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        for (long slot = 0; slot < capacity; slot++) {
+            long value = table.getLong(offset(slot));
+            if (value != 0) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    public void clear() {
+        for (long slot = 0; slot < capacity; slot++) {
+            table.putLong(offset(slot), 0);
+        }
+        size = 0;
+        table.putLong(SIZE_OFFSET, 0);
+    }
+
+    // Rehashes into a table twice the size, built in a side file and moved over the old one
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Fingerprint set is full: " + path);
+        }
+        Path resized = path.resolveSibling(path.getFileName() + ".resize");
+        MappedByteBuffer oldTable = table;
+        FileChannel oldChannel = channel;
+        long oldCapacity = capacity;
+
+        create(resized, capacity * 2);
+        table.putInt(CLEAN_OFFSET, 0);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            long value = oldTable.getLong((int) (HEADER_BYTES + slot * Long.BYTES));
+            if (value != 0) {
+                table.putLong(offset(find(value)), value);
+                size++;
+            }
+        }
+        table.putLong(SIZE_OFFSET, size);
+        table.force();
+        oldChannel.close();
+        Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void force() {
+        table.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        table.putInt(CLEAN_OFFSET, 1);
+        table.force();
+        channel.close();
+        channel = null;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.Search.Engine.Crawler;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Politeness-aware crawl frontier.
+// Keeps one FIFO queue per host and a heap of hosts ordered by the earliest time each host may be
+// fetched again. A host is checked out while one of its URLs is being fetched and only goes back
+// on the heap once the worker releases it, so no two workers ever hit the same host at once.
+public class FrontierScheduler {
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final PriorityQueue<HostQueue> readyHeap = new PriorityQueue<>(Comparator.comparingLong(h -> h.readyAt));
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final long defaultDelayMs;
+    private final long maxDelayMs;
+    private int queuedUrls = 0;
+    private int checkedOutHosts = 0;
+    private boolean closed = false;
+
+    private static class HostQueue {
+        private final String host;
+        private final ArrayDeque<String> urls = new ArrayDeque<>();
+        private long readyAt = 0;
+        private boolean checkedOut = false;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    public FrontierScheduler(long defaultDelayMs, long maxDelayMs) {
+        this.defaultDelayMs = defaultDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public void offer(String host, String url) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            HostQueue queue = hosts.computeIfAbsent(host, HostQueue::new);
+            boolean wasIdle = queue.urls.isEmpty() && !queue.checkedOut;
+            queue.urls.addLast(url);
+            queuedUrls++;
+            if (wasIdle) {
+                readyHeap.offer(queue);
+                changed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until some host is allowed to be fetched and hands out the head of its queue.
+    // The caller owns that host until it calls release(). Returns null once the frontier is
+    // exhausted (no queued URLs and no host checked out that could still add more) or closed.
+    public String poll() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (closed) {
+                    return null;
+                }
+                HostQueue head = readyHeap.peek();
+                if (head == null) {
+                    if (checkedOutHosts == 0) {
+                        return null;
+                    }
+                    changed.await();
+                    continue;
+                }
+                long waitMs = head.readyAt - System.currentTimeMillis();
+                if (waitMs > 0) {
+                    changed.await(waitMs, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                readyHeap.poll();
+                head.checkedOut = true;
+                checkedOutHosts++;
+                queuedUrls--;
+                return head.urls.pollFirst();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns a checked-out host to the scheduler. crawlDelayMs is the delay requested by the
+    // host's robots.txt, or a negative value to fall back to the default politeness delay.
+    public void release(String host, long crawlDelayMs) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.get(host);
+            if (queue == null || !queue.checkedOut) {
+                return;
+            }
+            long delay = crawlDelayMs < 0 ? defaultDelayMs : Math.min(crawlDelayMs, maxDelayMs);
+            queue.checkedOut = false;
+            queue.readyAt = System.currentTimeMillis() + delay;
+            checkedOutHosts--;
+            if (!queue.urls.isEmpty()) {
+                readyHeap.offer(queue);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Wakes every waiting worker and makes subsequent polls return null.
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // No URL queued and no host checked out, so no worker holds a URL whose crawl could add more
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return queuedUrls == 0 && checkedOutHosts == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queuedUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queue depth of the limit hosts with the most URLs waiting, largest first
+    public Map<String, Integer> largestHostQueues(int limit) {
+        lock.lock();
+        try {
+            PriorityQueue<HostQueue> largest = new PriorityQueue<>(Comparator.comparingInt(h -> h.urls.size()));
+            for (HostQueue queue : hosts.values()) {
+                if (queue.urls.isEmpty()) {
+                    continue;
+                }
+                largest.offer(queue);
+                if (largest.size() > limit) {
+                    largest.poll();
+                }
+            }
+            LinkedHashMap<String, Integer> depths = new LinkedHashMap<>();
+            largest.stream().sorted(Comparator.comparingInt((HostQueue h) -> h.urls.size()).reversed())
+                    .forEach(queue -> depths.put(queue.host, queue.urls.size()));
+            return depths;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int hostCount() {
+        lock.lock();
+        try {
+            return hosts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.Search.Engine.Crawler;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Durable crawl frontier kept in its own SQLite database (data/crawl_state.db).
+// Every URL the crawler has ever queued has one row with its state, link depth and priority (see CrawlPriority).
+// Only a window of it lives in memory: the crawler pulls QUEUED rows in priority order, chunk by chunk, and the rows it
+// pulls are marked IN_FLIGHT. On startup IN_FLIGHT rows go back to QUEUED, so a stopped crawl resumes
+// exactly where it was without re-reading or re-normalizing anything.
+// Writes are buffered and applied in one transaction per FLUSH_BATCH operations or FLUSH_INTERVAL_MS.
+public class FrontierStore implements AutoCloseable {
+    public static final String DEFAULT_DB_URL = "jdbc:sqlite:data/crawl_state.db";
+    public static final int QUEUED = 0;
+    public static final int IN_FLIGHT = 1;
+    public static final int DONE = 2;
+    public static final int FAILED = 3;
+    private static final int FLUSH_BATCH = 500;
+    private static final long FLUSH_INTERVAL_MS = 2000;
+
+    private final Connection connection;
+    private final List<Entry> pendingInserts = new ArrayList<>();
+    private final List<StateUpdate> pendingStates = new ArrayList<>();
+    private long lastFlush = System.currentTimeMillis();
+
+    public static class Entry {
+        private final String url;
+        private final String host;
+        private final int depth;
+        private final double priority;
+        private final int state;
+
+        public Entry(String url, String host, int depth, double priority, int state) {
+            this.url = url;
+            this.host = host;
+            this.depth = depth;
+            this.priority = priority;
+            this.state = state;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public double getPriority() {
+            return priority;
+        }
+    }
+
+    private record StateUpdate(String url, int state) {
+    }
+
+    public FrontierStore(String dbUrl) throws SQLException {
+        connection = DriverManager.getConnection(dbUrl);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS crawl_frontier (
+                        url TEXT PRIMARY KEY,
+                        host TEXT NOT NULL,
+                        state INTEGER NOT NULL,
+                        depth INTEGER NOT NULL,
+                        priority REAL NOT NULL
+                    ) WITHOUT ROWID
+                    """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_frontier_state_priority ON crawl_frontier(state, priority DESC)");
+            // Whatever was in memory when the last run stopped goes back in the queue
+            int resumed = stmt.executeUpdate("UPDATE crawl_frontier SET state = " + QUEUED + " WHERE state = " + IN_FLIGHT);
+            if (resumed > 0) {
+                System.out.println("Frontier - Requeued " + resumed + " URLs that were in flight when the last crawl stopped");
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    // Adds a URL. A URL that is still QUEUED gets priority added to what it has, so every in-link found before
+    // it is crawled raises it; its depth becomes the shortest seen. Known URLs in any other state are left alone.
+    // loaded means the caller has already put it in the in-memory frontier.
+    public synchronized void enqueue(String url, String host, int depth, double priority, boolean loaded) {
+        pendingInserts.add(new Entry(url, host, depth, priority, loaded ? IN_FLIGHT : QUEUED));
+        flushIfDue();
+    }
+
+    public synchronized void markDone(String url) {
+        setState(url, DONE);
+    }
+
+    public synchronized void markFailed(String url) {
+        setState(url, FAILED);
+    }
+
+    private void setState(String url, int state) {
+        pendingStates.add(new StateUpdate(url, state));
+        flushIfDue();
+    }
+
+    // Takes up to limit QUEUED URLs, highest priority first, and marks them IN_FLIGHT
+    public synchronized List<Entry> loadQueued(int limit) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            flush();
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT url, host, depth, priority FROM crawl_frontier WHERE state = " + QUEUED + " ORDER BY priority DESC LIMIT ?")) {
+                select.setInt(1, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new Entry(rs.getString("url"), rs.getString("host"), rs.getInt("depth"),
+                                rs.getDouble("priority"), IN_FLIGHT));
+                    }
+                }
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE crawl_frontier SET state = " + IN_FLIGHT + " WHERE url = ?")) {
+                for (Entry entry : entries) {
+                    update.setString(1, entry.url);
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to load queued URLs: " + e.getMessage());
+            rollback();
+            entries.clear();
+        }
+        return entries;
+    }
+
+    // Writes all buffered operations now
+    public synchronized void sync() {
+        flushQuietly();
+    }
+
+    public synchronized boolean isEmpty() {
+        flushQuietly();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM crawl_frontier LIMIT 1")) {
+            return !rs.next();
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to query frontier: " + e.getMessage());
+            return true;
+        }
+    }
+
+    // Number of URLs in each state, indexed by state
+    public synchronized long[] countByState() {
+        flushQuietly();
+        long[] counts = new long[4];
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT state, COUNT(*) AS count FROM crawl_frontier GROUP BY state")) {
+            while (rs.next()) {
+                int state = rs.getInt("state");
+                if (state >= 0 && state < counts.length) {
+                    counts[state] = rs.getLong("count");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to count frontier: " + e.getMessage());
+        }
+        return counts;
+    }
+
+    public synchronized void forEachUrl(Consumer<String> consumer) {
+        flushQuietly();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT url FROM crawl_frontier")) {
+            while (rs.next()) {
+                consumer.accept(rs.getString("url"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to read frontier: " + e.getMessage());
+        }
+    }
+
+    private void flushIfDue() {
+        if (pendingInserts.size() + pendingStates.size() >= FLUSH_BATCH
+                || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flushQuietly();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to write " + (pendingInserts.size() + pendingStates.size()) + " updates: " + e.getMessage());
+            rollback();
+        }
+    }
+
+    private void flush() throws SQLException {
+        lastFlush = System.currentTimeMillis();
+        if (pendingInserts.isEmpty() && pendingStates.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO crawl_frontier (url, host, state, depth, priority) VALUES (?, ?, ?, ?, ?) " +
+                        "ON CONFLICT(url) DO UPDATE SET priority = priority + excluded.priority, " +
+                        "depth = MIN(depth, excluded.depth) WHERE state = " + QUEUED);
+             PreparedStatement update = connection.prepareStatement("UPDATE crawl_frontier SET state = ? WHERE url = ?")) {
+            for (Entry entry : pendingInserts) {
+                insert.setString(1, entry.url);
+                insert.setString(2, entry.host);
+                insert.setInt(3, entry.state);
+                insert.setInt(4, entry.depth);
+                insert.setDouble(5, entry.priority);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            for (StateUpdate state : pendingStates) {
+                update.setInt(1, state.state);
+                update.setString(2, state.url);
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        connection.commit();
+        pendingInserts.clear();
+        pendingStates.clear();
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Frontier - SQLException in rollback: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flushQuietly();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Frontier - Failed to close connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+// Fetcher built on java.net.http.HttpClient.
+// One client is shared by all crawl threads, so connections are pooled and kept alive per host and
+// HTTP/2 servers get multiplexed streams. Responses are requested gzip-compressed and bodies are
+// streamed into memory only up to maxBodyBytes; anything past the limit is never downloaded.
+public class HttpClientPageFetcher implements PageFetcher {
+    private final HttpClient client;
+    private final int maxBodyBytes;
+    private final Duration timeout;
+
+    public HttpClientPageFetcher(int maxBodyBytes, Duration timeout) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public FetchResult fetch(String url, String acceptedContentType, Map<String, String> requestHeaders) throws IOException {
+        try {
+            return fetchAsync(url, acceptedContentType, requestHeaders).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to fetch " + url, e.getCause());
+        }
+    }
+
+    public CompletableFuture<FetchResult> fetchAsync(String url, String acceptedContentType) {
+        return fetchAsync(url, acceptedContentType, Map.of());
+    }
+
+    public CompletableFuture<FetchResult> fetchAsync(String url, String acceptedContentType, Map<String, String> requestHeaders) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .header("User-Agent", PageFetcher.randomUserAgent())
+                    .header("Accept-Encoding", "gzip");
+            requestHeaders.forEach(builder::header);
+            request = builder.GET().build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Invalid URL " + url, e));
+        }
+
+        long sentAt = System.nanoTime();
+        AtomicLong headersAt = new AtomicLong(-1);
+        return client.sendAsync(request, responseInfo -> {
+            headersAt.set(System.nanoTime());
+            String contentType = responseInfo.headers().firstValue("Content-Type").orElse(null);
+            if (responseInfo.statusCode() != 200 || !PageFetcher.isAccepted(contentType, acceptedContentType)) {
+                return HttpResponse.BodySubscribers.replacing(new LimitedBody(new byte[0], false));
+            }
+            return new LimitedBodySubscriber(maxBodyBytes);
+        }).thenApply(response -> toResult(response, headersAt.get() < 0 ? -1 : headersAt.get() - sentAt));
+    }
+
+    private FetchResult toResult(HttpResponse<LimitedBody> response, long headersNanos) {
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        LimitedBody body = response.body();
+        byte[] bytes = body.bytes;
+        boolean truncated = body.truncated;
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (gzipped && bytes.length > 0) {
+            try {
+                LimitedBody decoded = gunzip(bytes);
+                bytes = decoded.bytes;
+                truncated |= decoded.truncated;
+            } catch (IOException e) {
+                // A body cut off at the limit ends mid-stream; keep whatever decompressed before that
+                if (!truncated) {
+                    throw new CompletionException(e);
+                }
+            }
+        }
+        return new FetchResult(response.uri().toString(), response.statusCode(), contentType, bytes, truncated,
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null), headersNanos);
+    }
+
+    // Decompresses up to maxBodyBytes, which also guards against compression bombs
+    private LimitedBody gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBodyBytes, compressed.length * 4));
+        byte[] chunk = new byte[8192];
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                int allowed = Math.min(read, maxBodyBytes - out.size());
+                out.write(chunk, 0, allowed);
+                if (allowed < read) {
+                    return new LimitedBody(out.toByteArray(), true);
+                }
+            }
+        } catch (IOException e) {
+            if (out.size() == 0) {
+                throw e;
+            }
+            return new LimitedBody(out.toByteArray(), true);
+        }
+        return new LimitedBody(out.toByteArray(), false);
+    }
+
+    private record LimitedBody(byte[] bytes, boolean truncated) {
+    }
+
+    // Collects the body until it completes or reaches the limit, then cancels the rest of the download
+    private static class LimitedBodySubscriber implements HttpResponse.BodySubscriber<LimitedBody> {
+        private final CompletableFuture<LimitedBody> result = new CompletableFuture<>();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int limit;
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<LimitedBody> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                int allowed = Math.min(buffer.remaining(), limit - out.size());
+                byte[] bytes = new byte[allowed];
+                buffer.get(bytes);
+                out.write(bytes, 0, allowed);
+                if (buffer.hasRemaining()) {
+                    subscription.cancel();
+                    result.complete(new LimitedBody(out.toByteArray(), true));
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new LimitedBody(out.toByteArray(), false));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.Search.Engine.Crawler;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+import java.util.Map;
+
+// The crawler's original fetch path: one blocking jsoup connection per request.
+public class JsoupPageFetcher implements PageFetcher {
+    private final int maxBodyBytes;
+    private final int timeoutMs;
+
+    public JsoupPageFetcher(int maxBodyBytes, int timeoutMs) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public FetchResult fetch(String url, String acceptedContentType, Map<String, String> requestHeaders) throws IOException {
+        Connection.Response response = Jsoup.connect(url)
+                .userAgent(PageFetcher.randomUserAgent())
+                .headers(requestHeaders)
+                .timeout(timeoutMs)
+                .maxBodySize(maxBodyBytes)
+                .ignoreHttpErrors(true)
+                .ignoreContentType(true)
+                .execute();
+
+        String contentType = response.contentType();
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (response.statusCode() != 200 || !PageFetcher.isAccepted(contentType, acceptedContentType)) {
+            return new FetchResult(response.url().toString(), response.statusCode(), contentType, new byte[0], false, etag, lastModified);
+        }
+        byte[] body = response.bodyAsBytes();
+        return new FetchResult(response.url().toString(), response.statusCode(), contentType, body, body.length >= maxBodyBytes,
+                etag, lastModified);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.Search.Engine.Crawler;
+
+import java.util.Arrays;
+
+// Finds stored SimHash fingerprints within MAX_DISTANCE bits of a new one.
+// The 64 bits are split into BANDS bands of 16 bits. Two fingerprints at most MAX_DISTANCE (< BANDS) bits
+// apart must agree exactly on at least one band, so only fingerprints sharing a band value are compared.
+// Each band keeps one bucket per 16-bit value, so a lookup is four array indexes plus a short scan.
+public class NearDuplicateIndex {
+    public static final int MAX_DISTANCE = 3;
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final int BAND_MASK = (1 << BAND_BITS) - 1;
+
+    private final long[][][] buckets = new long[BANDS][1 << BAND_BITS][];
+    private final int[][] bucketSizes = new int[BANDS][1 << BAND_BITS];
+    private int size = 0;
+
+    private static int bandValue(long fingerprint, int band) {
+        return (int) (fingerprint >>> (band * BAND_BITS)) & BAND_MASK;
+    }
+
+    // Returns true and records the fingerprint if no stored fingerprint is within MAX_DISTANCE of it
+    public synchronized boolean addIfUnique(long fingerprint) {
+        if (findNearDuplicate(fingerprint)) {
+            return false;
+        }
+        insert(fingerprint);
+        return true;
+    }
+
+    public synchronized void add(long fingerprint) {
+        insert(fingerprint);
+    }
+
+    // Forgets one earlier add of the fingerprint, e.g. for a page whose store failed or whose content changed
+    public synchronized void remove(long fingerprint) {
+        boolean found = false;
+        for (int band = 0; band < BANDS; band++) {
+            int value = bandValue(fingerprint, band);
+            long[] bucket = buckets[band][value];
+            int count = bucketSizes[band][value];
+            for (int i = 0; i < count; i++) {
+                if (bucket[i] == fingerprint) {
+                    bucket[i] = bucket[count - 1];
+                    bucketSizes[band][value] = count - 1;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        if (found) {
+            size--;
+        }
+    }
+
+    public synchronized boolean containsNearDuplicate(long fingerprint) {
+        return findNearDuplicate(fingerprint);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean findNearDuplicate(long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            int value = bandValue(fingerprint, band);
+            long[] bucket = buckets[band][value];
+            int count = bucketSizes[band][value];
+            for (int i = 0; i < count; i++) {
+                if (SimHash.hammingDistance(bucket[i], fingerprint) <= MAX_DISTANCE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void insert(long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            int value = bandValue(fingerprint, band);
+            long[] bucket = buckets[band][value];
+            int count = bucketSizes[band][value];
+            if (bucket == null) {
+                bucket = new long[2];
+            } else if (count == bucket.length) {
+                bucket = Arrays.copyOf(bucket, count * 2);
+            }
+            bucket[count] = fingerprint;
+            buckets[band][value] = bucket;
+            bucketSizes[band][value] = count + 1;
+        }
+        size++;
+    }
+}
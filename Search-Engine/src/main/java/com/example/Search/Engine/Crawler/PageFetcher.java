@@ -0,0 +1,37 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Downloads a single URL for the crawler.
+// Implementations only read the body of successful responses whose content type matches the one
+// the caller asked for, and never read more than their configured size limit.
+public interface PageFetcher extends AutoCloseable {
+    String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/128.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/128.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:130.0) Gecko/20100101 Firefox/130.0"
+    };
+
+    // acceptedContentType is a prefix such as "text/html", or null to accept any content type
+    default FetchResult fetch(String url, String acceptedContentType) throws IOException {
+        return fetch(url, acceptedContentType, Map.of());
+    }
+
+    // requestHeaders are added to the request, e.g. If-None-Match for a conditional recrawl
+    FetchResult fetch(String url, String acceptedContentType, Map<String, String> requestHeaders) throws IOException;
+
+    @Override
+    default void close() {
+    }
+
+    static String randomUserAgent() {
+        return USER_AGENTS[ThreadLocalRandom.current().nextInt(USER_AGENTS.length)];
+    }
+
+    static boolean isAccepted(String contentType, String acceptedContentType) {
+        return acceptedContentType == null
+                || (contentType != null && contentType.toLowerCase().startsWith(acceptedContentType));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.Search.Engine.Crawler;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+// When a document should be fetched again, plus the validators for the conditional request.
+// Intervals adapt per document: a visit that finds new content halves the interval, a visit that finds
+// none stretches it by half, within [MIN, MAX]. Pages that change daily converge on daily visits and
+// static pages drift out to a month, so a recrawl spends its requests where content actually moves.
+public class RevisitSchedule {
+    public static final long DEFAULT_INTERVAL_SECONDS = 24 * 60 * 60;
+    public static final long MIN_INTERVAL_SECONDS = 60 * 60;
+    public static final long MAX_INTERVAL_SECONDS = 30 * 24 * 60 * 60;
+    private static final double CHANGED_FACTOR = 0.5;
+    private static final double UNCHANGED_FACTOR = 1.5;
+    // Fixed width so dates compare correctly as text in SQL
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final String etag;
+    private final String lastModified;
+    private final long intervalSeconds;
+    private final String nextCrawlDate;
+
+    public RevisitSchedule(String etag, String lastModified, long intervalSeconds, String nextCrawlDate) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.intervalSeconds = intervalSeconds;
+        this.nextCrawlDate = nextCrawlDate;
+    }
+
+    // Schedule for a page seen for the first time
+    public static RevisitSchedule initial(String etag, String lastModified, LocalDateTime crawledAt) {
+        return new RevisitSchedule(etag, lastModified, DEFAULT_INTERVAL_SECONDS,
+                format(crawledAt.plusSeconds(DEFAULT_INTERVAL_SECONDS)));
+    }
+
+    // Schedule after a revisit; previousIntervalSeconds <= 0 means the document had none yet
+    public static RevisitSchedule afterVisit(long previousIntervalSeconds, boolean changed, String etag, String lastModified,
+                                             LocalDateTime crawledAt) {
+        long previous = previousIntervalSeconds > 0 ? previousIntervalSeconds : DEFAULT_INTERVAL_SECONDS;
+        long interval = Math.round(previous * (changed ? CHANGED_FACTOR : UNCHANGED_FACTOR));
+        interval = Math.max(MIN_INTERVAL_SECONDS, Math.min(MAX_INTERVAL_SECONDS, interval));
+        return new RevisitSchedule(etag, lastModified, interval, format(crawledAt.plusSeconds(interval)));
+    }
+
+    public static String format(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(ChronoUnit.SECONDS).format(DATE_FORMAT);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public String getNextCrawlDate() {
+        return nextCrawlDate;
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.Search.Engine.Crawler;
+
+import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Thread-safe robots.txt cache shared by all crawl threads, keyed by "protocol://host".
+// Loading is single-flight: the first thread to miss a host installs a future and fetches robots.txt,
+// every other thread asking for that host waits on the same future instead of sending its own request.
+// Entries expire after a TTL (a short one for failed fetches, so a host that is down is not retried on
+// every URL), the map is bounded by evicting the least recently used entries, and every fetched robots.txt
+// is written to the robots_cache table of crawl_state.db so the next run does not fetch it again.
+public class RobotsCache implements AutoCloseable {
+    public static final long TTL_MS = 24 * 60 * 60 * 1000L;
+    public static final long FAILURE_TTL_MS = 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    // Status stored for fetches that failed without a response
+    private static final int NO_RESPONSE = 0;
+    private static final ThreadLocal<SimpleRobotRulesParser> PARSER = ThreadLocal.withInitial(SimpleRobotRulesParser::new);
+
+    private final PageFetcher fetcher;
+    private final int maxEntries;
+    private final Connection connection;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+
+    private static class Entry {
+        private final BaseRobotRules rules;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        private Entry(BaseRobotRules rules, long expiresAt, long now) {
+            this.rules = rules;
+            this.expiresAt = expiresAt;
+            this.lastAccess = now;
+        }
+    }
+
+    // dbUrl may be null to keep the cache in memory only
+    public RobotsCache(PageFetcher fetcher, String dbUrl, int maxEntries) throws SQLException {
+        this.fetcher = fetcher;
+        this.maxEntries = maxEntries;
+        if (dbUrl == null) {
+            connection = null;
+            return;
+        }
+        connection = DriverManager.getConnection(dbUrl);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS robots_cache (
+                        host TEXT PRIMARY KEY,
+                        status INTEGER NOT NULL,
+                        body BLOB,
+                        expires_at INTEGER NOT NULL
+                    ) WITHOUT ROWID
+                    """);
+            stmt.executeUpdate("DELETE FROM robots_cache WHERE expires_at <= " + System.currentTimeMillis());
+        }
+    }
+
+    public boolean isAllowed(String host, String url) {
+        return getRules(host).isAllowed(url);
+    }
+
+    // Crawl-delay in milliseconds from an already loaded robots.txt, or -1 if it is unset or not loaded
+    public long getCrawlDelay(String host) {
+        CompletableFuture<Entry> future = entries.get(host);
+        Entry entry = future == null ? null : future.getNow(null);
+        if (entry == null || entry.rules.getCrawlDelay() == BaseRobotRules.UNSET_CRAWL_DELAY) {
+            return -1;
+        }
+        return entry.rules.getCrawlDelay();
+    }
+
+    public BaseRobotRules getRules(String host) {
+        long now = System.currentTimeMillis();
+        CompletableFuture<Entry> future = entries.get(host);
+        if (future != null && !isStale(future, now)) {
+            Entry entry = await(future);
+            if (entry != null) {
+                entry.lastAccess = now;
+                return entry.rules;
+            }
+        }
+        CompletableFuture<Entry> loading = new CompletableFuture<>();
+        CompletableFuture<Entry> current = entries.compute(host, (key, existing) ->
+                existing == null || isStale(existing, now) ? loading : existing);
+        if (current != loading) {
+            // Another thread is already loading this host
+            Entry entry = await(current);
+            return entry != null ? entry.rules : allowAll();
+        }
+        Entry entry;
+        try {
+            entry = load(host, now);
+        } catch (RuntimeException e) {
+            entries.remove(host, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        loading.complete(entry);
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+        return entry.rules;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static boolean isStale(CompletableFuture<Entry> future, long now) {
+        if (!future.isDone()) {
+            return false;
+        }
+        Entry entry = await(future);
+        return entry == null || entry.expiresAt <= now;
+    }
+
+    // Null if the load failed
+    private static Entry await(CompletableFuture<Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    private Entry load(String host, long now) {
+        Entry persisted = loadPersisted(host, now);
+        if (persisted != null) {
+            return persisted;
+        }
+        String robotsTxtUrl = host + "/robots.txt";
+        int status;
+        byte[] body;
+        try {
+            FetchResult response = fetcher.fetch(robotsTxtUrl, null);
+            status = response.getStatusCode();
+            body = response.isSuccess() ? response.getBody() : null;
+        } catch (IOException e) {
+            status = NO_RESPONSE;
+            body = null;
+        }
+        long expiresAt = now + (status == NO_RESPONSE || status >= 500 ? FAILURE_TTL_MS : TTL_MS);
+        persist(host, status, body, expiresAt);
+        return new Entry(parse(robotsTxtUrl, status, body), expiresAt, now);
+    }
+
+    private static BaseRobotRules parse(String robotsTxtUrl, int status, byte[] body) {
+        if (status >= 200 && status < 300 && body != null) {
+            return PARSER.get().parseContent(robotsTxtUrl, body, "text/plain", PageFetcher.randomUserAgent());
+        }
+        // No robots.txt, an error page or no response at all means nothing is disallowed
+        return allowAll();
+    }
+
+    private static BaseRobotRules allowAll() {
+        return new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL);
+    }
+
+    private Entry loadPersisted(String host, long now) {
+        if (connection == null) {
+            return null;
+        }
+        synchronized (connection) {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT status, body, expires_at FROM robots_cache WHERE host = ? AND expires_at > ?")) {
+                stmt.setString(1, host);
+                stmt.setLong(2, now);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return new Entry(parse(host + "/robots.txt", rs.getInt("status"), rs.getBytes("body")),
+                            rs.getLong("expires_at"), now);
+                }
+            } catch (SQLException e) {
+                System.err.println("Robots - Failed to read cached robots.txt for " + host + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private void persist(String host, int status, byte[] body, long expiresAt) {
+        if (connection == null) {
+            return;
+        }
+        synchronized (connection) {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO robots_cache (host, status, body, expires_at) VALUES (?, ?, ?, ?)")) {
+                stmt.setString(1, host);
+                stmt.setInt(2, status);
+                stmt.setBytes(3, body);
+                stmt.setLong(4, expiresAt);
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                System.err.println("Robots - Failed to store robots.txt for " + host + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Drops the least recently used tenth of the loaded entries; their rows stay in the database
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() <= maxEntries) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> loaded = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<Entry>> e : entries.entrySet()) {
+                Entry entry = e.getValue().getNow(null);
+                if (entry != null) {
+                    loaded.add(Map.entry(e.getKey(), entry));
+                }
+            }
+            loaded.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            int toRemove = Math.min(loaded.size(), entries.size() - maxEntries + maxEntries / 10);
+            for (int i = 0; i < toRemove; i++) {
+                Map.Entry<String, Entry> victim = loaded.get(i);
+                // Leave the host alone if it was reloaded meanwhile
+                entries.computeIfPresent(victim.getKey(),
+                        (key, future) -> future.getNow(null) == victim.getValue() ? null : future);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (connection == null) {
+            return;
+        }
+        synchronized (connection) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Robots - Failed to close connection: " + e.getMessage());
+            }
+        }
+    }
+}
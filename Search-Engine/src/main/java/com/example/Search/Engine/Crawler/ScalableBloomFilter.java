@@ -0,0 +1,164 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bloom filter over 64-bit fingerprints that grows as entries are added.
+// When the current stage reaches its capacity a new stage twice as large is added with half the false
+// positive rate, so the combined rate stays under the configured bound however many entries arrive.
+// Probe positions come from double hashing of the fingerprint. Not thread-safe: callers guard it.
+public class ScalableBloomFilter {
+    private static final int MAGIC = 0x53424631; // "SBF1"
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double falsePositiveRate;
+    private final List<Stage> stages = new ArrayList<>();
+
+    private static class Stage {
+        private final long capacity;
+        private final int hashes;
+        private final long bits;
+        private final long[] words;
+        private long count;
+
+        Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            double ln2 = Math.log(2);
+            this.bits = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+            this.hashes = Math.max(1, (int) Math.round(bits / (double) capacity * ln2));
+            this.words = new long[(int) ((bits + 63) >>> 6)];
+        }
+
+        Stage(long capacity, int hashes, long bits, long count, long[] words) {
+            this.capacity = capacity;
+            this.hashes = hashes;
+            this.bits = bits;
+            this.count = count;
+            this.words = words;
+        }
+
+        void add(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = secondHash(fingerprint);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = secondHash(fingerprint);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+        stages.add(new Stage(Math.max(1, initialCapacity), falsePositiveRate * (1 - TIGHTENING_RATIO)));
+    }
+
+    private ScalableBloomFilter(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    private static long secondHash(long fingerprint) {
+        long h = fingerprint * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        return h | 1;
+    }
+
+    public void add(long fingerprint) {
+        Stage current = stages.get(stages.size() - 1);
+        if (current.count >= current.capacity) {
+            double stageRate = falsePositiveRate * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, stages.size());
+            current = new Stage(current.capacity * GROWTH_FACTOR, stageRate);
+            stages.add(current);
+        }
+        current.add(fingerprint);
+    }
+
+    public boolean mightContain(long fingerprint) {
+        // The newest stage holds the most entries, so check it first
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            if (stages.get(i).mightContain(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long count() {
+        long count = 0;
+        for (Stage stage : stages) {
+            count += stage.count;
+        }
+        return count;
+    }
+
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += (long) stage.words.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    public int stageCount() {
+        return stages.size();
+    }
+
+    // Writes to a side file first so a crash never leaves a half-written filter behind
+    public void save(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeDouble(falsePositiveRate);
+            out.writeInt(stages.size());
+            for (Stage stage : stages) {
+                out.writeLong(stage.capacity);
+                out.writeInt(stage.hashes);
+                out.writeLong(stage.bits);
+                out.writeLong(stage.count);
+                for (long word : stage.words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ScalableBloomFilter load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a bloom filter: " + path);
+            }
+            ScalableBloomFilter filter = new ScalableBloomFilter(in.readDouble());
+            int stageCount = in.readInt();
+            for (int s = 0; s < stageCount; s++) {
+                long capacity = in.readLong();
+                int hashes = in.readInt();
+                long bits = in.readLong();
+                long count = in.readLong();
+                long[] words = new long[(int) ((bits + 63) >>> 6)];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                filter.stages.add(new Stage(capacity, hashes, bits, count, words));
+            }
+            return filter;
+        }
+    }
+}
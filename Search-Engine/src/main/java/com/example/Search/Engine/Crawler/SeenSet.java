@@ -0,0 +1,141 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Persistent set of strings (URLs or content hashes) for the crawler's seen checks.
+// Each string is reduced to a 64-bit fingerprint and kept in an off-heap FingerprintSet under data/,
+// with a scalable Bloom filter in front of it so most lookups for unseen strings never touch the table.
+// The table is authoritative; the filter only short-circuits misses, so removals just leave stale bits.
+// Both survive restarts, so the crawler does not rebuild them from DocumentMetaData on every start.
+public class SeenSet implements AutoCloseable {
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    private final FingerprintSet fingerprints;
+    private final ScalableBloomFilter bloom;
+    private final Path bloomPath;
+    private final boolean needsRebuild;
+
+    // Opens the set saved under directory/name, creating it if missing.
+    // A set that was not closed cleanly is cleared, and needsRebuild() tells the caller to refill it.
+    public SeenSet(Path directory, String name, long expectedEntries) throws IOException {
+        this(directory, name, expectedEntries, false);
+    }
+
+    // With reset the set always starts empty, for state that is not meant to outlive the run
+    public SeenSet(Path directory, String name, long expectedEntries, boolean reset) throws IOException {
+        Path tablePath = directory.resolve(name + ".fp");
+        bloomPath = directory.resolve(name + ".bloom");
+        if (reset) {
+            Files.deleteIfExists(tablePath);
+            Files.deleteIfExists(bloomPath);
+        }
+        boolean existed = Files.exists(tablePath);
+        fingerprints = new FingerprintSet(tablePath, expectedEntries);
+
+        if (!fingerprints.wasCleanlyClosed()) {
+            System.out.println("Seen set " + name + " was not closed cleanly, it will be rebuilt");
+            fingerprints.clear();
+            Files.deleteIfExists(bloomPath);
+        }
+        needsRebuild = !reset && (!existed || !fingerprints.wasCleanlyClosed());
+
+        ScalableBloomFilter loaded = null;
+        if (Files.exists(bloomPath)) {
+            try {
+                loaded = ScalableBloomFilter.load(bloomPath);
+            } catch (IOException e) {
+                System.err.println("Failed to load bloom filter " + bloomPath + ": " + e.getMessage());
+            }
+        }
+        if (loaded == null) {
+            loaded = new ScalableBloomFilter(Math.max(expectedEntries, fingerprints.size()), BLOOM_FALSE_POSITIVE_RATE);
+            fingerprints.forEach(loaded::add);
+        }
+        bloom = loaded;
+    }
+
+    // MurmurHash3-style 64-bit hash over the UTF-16 chars, four at a time
+    public static long fingerprint(CharSequence value) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        int length = value.length();
+        long h = 0x9747b28c3a5f1e0dL ^ (length * c1);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = value.charAt(i)
+                    | (long) value.charAt(i + 1) << 16
+                    | (long) value.charAt(i + 2) << 32
+                    | (long) value.charAt(i + 3) << 48;
+            k *= c1;
+            k = Long.rotateLeft(k, 31);
+            k *= c2;
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long k = 0;
+        for (int shift = 0; i < length; i++, shift += 16) {
+            k |= (long) value.charAt(i) << shift;
+        }
+        k *= c1;
+        k = Long.rotateLeft(k, 31);
+        k *= c2;
+        h ^= k;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // True if the set was newly created or found dirty and should be refilled from the database
+    public boolean needsRebuild() {
+        return needsRebuild;
+    }
+
+    // Returns true if the value was not already in the set
+    public synchronized boolean add(String value) {
+        long fingerprint = fingerprint(value);
+        if (bloom.mightContain(fingerprint) && fingerprints.contains(fingerprint)) {
+            return false;
+        }
+        try {
+            fingerprints.add(fingerprint);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow seen set", e);
+        }
+        bloom.add(fingerprint);
+        return true;
+    }
+
+    public synchronized boolean contains(String value) {
+        long fingerprint = fingerprint(value);
+        return bloom.mightContain(fingerprint) && fingerprints.contains(fingerprint);
+    }
+
+    public synchronized boolean remove(String value) {
+        return fingerprints.remove(fingerprint(value));
+    }
+
+    public synchronized long size() {
+        return fingerprints.size();
+    }
+
+    // Off-heap bytes mapped by the table plus on-heap bytes held by the filter
+    public synchronized long memoryBytes() {
+        return fingerprints.mappedBytes() + bloom.memoryBytes();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            bloom.save(bloomPath);
+            fingerprints.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close seen set " + bloomPath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.Search.Engine.Crawler;
+
+import java.nio.file.Path;
+
+// Which hosts a crawler process owns when the crawl is split across processes (--shard=index/count).
+// A host belongs to exactly one shard, chosen by a stable 64-bit hash of its name, so every process agrees
+// on the owner without talking to the others, and per-host politeness and page limits stay local to it.
+public class ShardAssignment {
+    public static final ShardAssignment SINGLE = new ShardAssignment(0, 1);
+
+    private final int index;
+    private final int count;
+
+    public ShardAssignment(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    // Parses "index/count", e.g. "0/4"
+    public static ShardAssignment parse(String spec) {
+        int slash = spec.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Shard must be given as index/count: " + spec);
+        }
+        try {
+            return new ShardAssignment(Integer.parseInt(spec.substring(0, slash)), Integer.parseInt(spec.substring(slash + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be given as index/count: " + spec);
+        }
+    }
+
+    public static int shardOf(String host, int count) {
+        return (int) Math.floorMod(SeenSet.fingerprint(host), (long) count);
+    }
+
+    public int shardOf(String host) {
+        return shardOf(host, count);
+    }
+
+    public boolean owns(String host) {
+        return count == 1 || shardOf(host) == index;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Where this process keeps its database, content store, frontier and seen sets
+    public Path dataDirectory(Path root) {
+        return isSharded() ? shardDirectory(root, index) : root;
+    }
+
+    public static Path shardDirectory(Path root, int index) {
+        return root.resolve("shard-" + index);
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Runs a sharded crawl on one machine: starts one Crawler process per shard with --shard=i/n, waits for all
+// of them and merges their output with ShardMerger. On several machines, start the Crawler processes by hand
+// with a shared data/exchange directory, cleared of the shard-<i>.state files of any earlier crawl, and run
+// ShardMerger once they have finished.
+public class ShardLauncher {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ShardLauncher <shards> <threads per shard> [crawler options]");
+            System.exit(1);
+        }
+        int shards;
+        try {
+            shards = Integer.parseInt(args[0]);
+            if (shards < 1) {
+                System.err.println("Number of shards must be at least 1");
+                System.exit(1);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number of shards: " + args[0]);
+            System.exit(1);
+            return;
+        }
+
+        Path root = Paths.get("data");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Path exchange = Paths.get(UrlExchange.DEFAULT_DIRECTORY);
+        UrlExchange.clearStates(exchange, shards);
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            Path shardDirectory = ShardAssignment.shardDirectory(root, i);
+            Files.createDirectories(shardDirectory);
+            List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                    Crawler.class.getName(), args[1], "--shard=" + i + "/" + shards));
+            command.addAll(Arrays.asList(args).subList(2, args.length));
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(shardDirectory.resolve("crawl.log").toFile())
+                    .start();
+            processes.add(process);
+            int shard = i;
+            process.onExit().thenAccept(exited -> {
+                if (exited.exitValue() != 0) {
+                    // Otherwise the other shards would wait for it forever
+                    try {
+                        UrlExchange.markStopped(exchange, shard);
+                    } catch (IOException e) {
+                        System.err.println("Shard " + shard + " - Failed to mark stopped: " + e.getMessage());
+                    }
+                }
+            });
+            System.out.println("Shard " + i + " - Started, logging to " + shardDirectory.resolve("crawl.log"));
+        }
+
+        boolean allSucceeded = true;
+        for (int i = 0; i < shards; i++) {
+            int exitCode = processes.get(i).waitFor();
+            System.out.println("Shard " + i + " - Exited with " + exitCode);
+            allSucceeded &= exitCode == 0;
+        }
+        if (!allSucceeded) {
+            System.err.println("Not merging, a shard failed; rerun it and then ShardMerger " + shards);
+            System.exit(1);
+        }
+        try {
+            System.out.println("Merged " + ShardMerger.merge(root, shards) + " documents");
+        } catch (Exception e) {
+            System.err.println("Merge failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.Search.Engine.Crawler;
+
+import com.example.Search.Engine.Data.ContentStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Folds the databases and content stores of a sharded crawl (data/shard-<i>) into data/search_index.db and
+// data/content, so the indexer and PageRank see one crawl. Document ids are shifted past the ids already in
+// the target and content pointers past the last segment its rows use. A shard is recorded in merged_shards
+// in the same transaction as its rows, so a merge that fails or crashes at any point can simply be run
+// again: a recorded shard is not copied twice, and content copied for a shard that was not recorded is
+// overwritten. A merged shard directory is then renamed to shard-<i>.merged, or shard-<i>.merged-<shard id>
+// if an earlier crawl's merged directory is still there.
+// Shards own disjoint hosts, so no URL appears in two shards of one crawl. A URL already merged by an earlier
+// crawl keeps its stored row and the shard's copy is skipped; near-duplicates across shards are kept.
+public class ShardMerger {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ShardMerger <shards>");
+            System.exit(1);
+        }
+        try {
+            merge(Paths.get("data"), Integer.parseInt(args[0]));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number of shards: " + args[0]);
+            System.exit(1);
+        } catch (SQLException | IOException e) {
+            System.err.println("Merge failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Returns the number of documents merged
+    public static int merge(Path root, int shards) throws SQLException, IOException {
+        Files.createDirectories(root);
+        int merged = 0;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + root.resolve("search_index.db"));
+             ContentStore contentStore = new ContentStore(root.resolve("content"))) {
+            Crawler.initializeSchema(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS merged_shards (shard_id TEXT PRIMARY KEY, documents INTEGER)");
+            }
+            for (int i = 0; i < shards; i++) {
+                Path shardDirectory = ShardAssignment.shardDirectory(root, i);
+                Path shardDb = shardDirectory.resolve("search_index.db");
+                if (!Files.exists(shardDb)) {
+                    System.out.println("Shard " + i + " - Nothing to merge");
+                    continue;
+                }
+                String shardId = shardId(shardDb);
+                if (isMerged(conn, shardId)) {
+                    // Merged by a run that stopped before the rename
+                    System.out.println("Shard " + i + " - Already merged");
+                } else {
+                    int segmentOffset = lastContentSegment(conn);
+                    contentStore.importSegments(shardDirectory.resolve("content"), segmentOffset);
+                    int documents = mergeDatabase(conn, shardDb, shardId, segmentOffset);
+                    System.out.println("Shard " + i + " - Merged " + documents + " documents");
+                    merged += documents;
+                }
+                Path mergedDirectory = root.resolve(shardDirectory.getFileName() + ".merged");
+                if (Files.exists(mergedDirectory)) {
+                    mergedDirectory = root.resolve(shardDirectory.getFileName() + ".merged-" + shardId);
+                }
+                Files.move(shardDirectory, mergedDirectory);
+            }
+        }
+        // The visited set no longer matches the table; the next crawl rebuilds it from DocumentMetaData
+        Files.deleteIfExists(root.resolve("visited_urls.fp"));
+        Files.deleteIfExists(root.resolve("visited_urls.bloom"));
+        return merged;
+    }
+
+    // Identifies one shard's crawl, so the merge recognizes it when run again; a new crawl in the same shard
+    // directory starts a new database and so gets a new id
+    private static String shardId(Path shardDb) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + shardDb);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS shard_identity (id TEXT NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM shard_identity")) {
+                if (rs.next()) {
+                    return rs.getString(1);
+                }
+            }
+            String id = UUID.randomUUID().toString();
+            stmt.executeUpdate("INSERT INTO shard_identity (id) VALUES ('" + id + "')");
+            return id;
+        }
+    }
+
+    private static boolean isMerged(Connection conn, String shardId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM merged_shards WHERE shard_id = ?")) {
+            stmt.setString(1, shardId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Last content segment a committed row points into; segments after it hold nothing in use
+    private static int lastContentSegment(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(COALESCE(MAX(content_segment), 0), COALESCE(MAX(parsed_segment), 0)) " +
+                     "FROM DocumentMetaData")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static int mergeDatabase(Connection conn, Path shardDb, String shardId, int segmentOffset) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ATTACH DATABASE '" + shardDb.toString().replace("'", "''") + "' AS shard");
+        }
+        try {
+            conn.setAutoCommit(false);
+            long idOffset;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM main.DocumentMetaData")) {
+                idOffset = rs.next() ? rs.getLong(1) : 0;
+            }
+
+            List<String> columns = commonColumns(conn);
+            List<String> values = new ArrayList<>();
+            for (String column : columns) {
+                values.add(switch (column) {
+                    case "id" -> "id + " + idOffset;
+                    case "content_segment", "parsed_segment" -> column + " + " + segmentOffset;
+                    default -> column;
+                });
+            }
+            int documents;
+            try (Statement stmt = conn.createStatement()) {
+                documents = stmt.executeUpdate("INSERT INTO main.DocumentMetaData (" + String.join(", ", columns) + ") " +
+                        "SELECT " + String.join(", ", values) + " FROM shard.DocumentMetaData sd " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM main.DocumentMetaData dm WHERE dm.url = sd.url)");
+                // Only the links of the rows just inserted, not of the skipped ones
+                stmt.executeUpdate("INSERT INTO main.extracted_links (doc_id, extracted_link) " +
+                        "SELECT doc_id + " + idOffset + ", extracted_link FROM shard.extracted_links " +
+                        "WHERE doc_id + " + idOffset + " IN (SELECT id FROM main.DocumentMetaData WHERE id > " + idOffset + ")");
+                // Edges out of and into the merged documents; links into other shards only resolve here
+                stmt.executeUpdate("INSERT OR IGNORE INTO main.link_edges (from_id, to_id) " +
+                        "SELECT el.doc_id, dm.id FROM main.extracted_links el JOIN main.DocumentMetaData dm " +
+                        "ON el.extracted_link = dm.url WHERE el.doc_id > " + idOffset);
+                stmt.executeUpdate("INSERT OR IGNORE INTO main.link_edges (from_id, to_id) " +
+                        "SELECT el.doc_id, dm.id FROM main.DocumentMetaData dm JOIN main.extracted_links el " +
+                        "ON el.extracted_link = dm.url WHERE dm.id > " + idOffset);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO merged_shards (shard_id, documents) VALUES (?, ?)")) {
+                stmt.setString(1, shardId);
+                stmt.setInt(2, documents);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            return documents;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DETACH DATABASE shard");
+            }
+        }
+    }
+
+    // Shards may have been created by an older crawler with fewer columns
+    private static List<String> commonColumns(Connection conn) throws SQLException {
+        Set<String> target = tableColumns(conn, "main");
+        Set<String> source = tableColumns(conn, "shard");
+        List<String> columns = new ArrayList<>();
+        for (String column : target) {
+            if (source.contains(column)) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    private static Set<String> tableColumns(Connection conn, String schema) throws SQLException {
+        Set<String> columns = new LinkedHashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + schema + ".table_info(DocumentMetaData)")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.Search.Engine.Crawler;
+
+// 64-bit SimHash (Charikar) of a page's visible text.
+// Every token is hashed to 64 bits and votes +1/-1 on each bit position; the fingerprint keeps the sign
+// of every column. Pages that share most of their tokens end up a few bits apart, so a changed ad,
+// timestamp or session id moves the fingerprint by at most a bit or two instead of changing it entirely.
+public final class SimHash {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    // Tokens are maximal runs of letters and digits, lower-cased. Purely numeric tokens are skipped since
+    // they are mostly dates, times, counters and prices that change between otherwise identical pages.
+    // Returns 0 for text without tokens.
+    public static long fingerprint(CharSequence text) {
+        int[] votes = new int[64];
+        int tokens = 0;
+        long hash = FNV_OFFSET;
+        boolean inToken = false;
+        boolean hasLetter = false;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                // FNV-1a, hashed while scanning so no token strings are allocated
+                hash ^= Character.toLowerCase(c);
+                hash *= FNV_PRIME;
+                inToken = true;
+                hasLetter |= Character.isLetter(c);
+            } else if (inToken) {
+                if (hasLetter) {
+                    vote(votes, mix(hash));
+                    tokens++;
+                }
+                hash = FNV_OFFSET;
+                inToken = false;
+                hasLetter = false;
+            }
+        }
+        if (tokens == 0) {
+            return 0;
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void vote(int[] votes, long tokenHash) {
+        for (int bit = 0; bit < 64; bit++) {
+            votes[bit] += ((tokenHash >>> bit) & 1) == 1 ? 1 : -1;
+        }
+    }
+
+    // FNV alone leaves the high bits of short tokens poorly mixed
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
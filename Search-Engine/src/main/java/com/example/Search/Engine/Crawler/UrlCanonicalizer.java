@@ -0,0 +1,332 @@
+package com.example.Search.Engine.Crawler;
+
+import crawlercommons.domains.EffectiveTldFinder;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Canonical form of the URLs the crawler queues and stores.
+// The rules are those of the original URI-based normalizer: lower-cased scheme and host, default port
+// dropped, dot segments resolved, trailing slashes stripped ("/" for an empty path), only the q, search,
+// id, page, sort and category query parameters kept, fragment dropped.
+// canonicalize() applies them in a single scan of the string with one StringBuilder. URLs the scan does not
+// handle exactly like java.net.URI (percent escapes, dot segments, "//", user info, IP literals, non-ASCII,
+// other schemes, ...) go through the URI-based legacy code, so both paths always agree.
+public final class UrlCanonicalizer {
+    private static final String[] RELEVANT_PARAMS = {"q", "search", "id", "page", "sort", "category"};
+    // Characters java.net.URI accepts in a path (without '%'), and in a query or fragment
+    private static final boolean[] PATH_CHARS = asciiSet("-_.!~*'():@&=+$,;/");
+    private static final boolean[] QUERY_CHARS = asciiSet("-_.!~*'();/?:@&=+$,[]");
+
+    private UrlCanonicalizer() {
+    }
+
+    public record CanonicalUrl(String url, String host) {
+        // eTLD+1 from the public suffix list, e.g. "bbc.co.uk" for "news.bbc.co.uk"; the host itself if it has none
+        public String registrableDomain() {
+            String domain = EffectiveTldFinder.getAssignedDomain(host, true, false);
+            return domain != null ? domain : host;
+        }
+    }
+
+    private static boolean[] asciiSet(String punctuation) {
+        boolean[] set = new boolean[128];
+        for (char c = 'a'; c <= 'z'; c++) {
+            set[c] = true;
+            set[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            set[c] = true;
+        }
+        for (int i = 0; i < punctuation.length(); i++) {
+            set[punctuation.charAt(i)] = true;
+        }
+        return set;
+    }
+
+    private static boolean isIn(boolean[] set, char c) {
+        return c < 128 && set[c];
+    }
+
+    // Canonical URL and host, or null if the URL is malformed or has no host
+    public static CanonicalUrl canonicalize(String url) {
+        CanonicalUrl fast = canonicalizeFast(url);
+        if (fast != null) {
+            return fast;
+        }
+        String normalized = legacyNormalize(url);
+        return normalized == null ? null : new CanonicalUrl(normalized, legacyHost(normalized));
+    }
+
+    // Lower-cased host of a URL, or "" if it has none
+    public static String host(String url) {
+        int hostStart = authorityStart(url);
+        if (hostStart > 0) {
+            int hostEnd = hostStart;
+            while (hostEnd < url.length() && "/?#:".indexOf(url.charAt(hostEnd)) < 0) {
+                hostEnd++;
+            }
+            if (isPlainHostname(url, hostStart, hostEnd)) {
+                return toLowerAscii(url, hostStart, hostEnd);
+            }
+        }
+        return legacyHost(url);
+    }
+
+    // Index just past "http://" or "https://" (any case), or -1
+    private static int authorityStart(String url) {
+        if (url.regionMatches(true, 0, "https://", 0, 8)) {
+            return 8;
+        }
+        if (url.regionMatches(true, 0, "http://", 0, 7)) {
+            return 7;
+        }
+        return -1;
+    }
+
+    // Returns null whenever the URL needs the legacy path, not only when it is invalid
+    private static CanonicalUrl canonicalizeFast(String url) {
+        int hostStart = authorityStart(url);
+        if (hostStart < 0) {
+            return null;
+        }
+        boolean https = hostStart == 8;
+        int length = url.length();
+
+        // Authority: host[:port]
+        int i = hostStart;
+        while (i < length && "/?#:@[".indexOf(url.charAt(i)) < 0) {
+            i++;
+        }
+        int hostEnd = i;
+        if (!isPlainHostname(url, hostStart, hostEnd)) {
+            return null;
+        }
+        int port = -1;
+        if (i < length && url.charAt(i) == ':') {
+            int portStart = ++i;
+            port = 0;
+            while (i < length && url.charAt(i) >= '0' && url.charAt(i) <= '9') {
+                port = port * 10 + (url.charAt(i) - '0');
+                i++;
+            }
+            if (i == portStart || i - portStart > 9) {
+                return null;
+            }
+        }
+        if (i < length && "/?#".indexOf(url.charAt(i)) < 0) {
+            return null; // user info or IP literal
+        }
+
+        // Path: validated as it is scanned; trailing slashes are stripped afterwards
+        int pathStart = i;
+        while (i < length && url.charAt(i) != '?' && url.charAt(i) != '#') {
+            char c = url.charAt(i);
+            if (!isIn(PATH_CHARS, c)) {
+                return null;
+            }
+            if (c == '/' && i > pathStart && url.charAt(i - 1) == '/') {
+                return null;
+            }
+            if (c == '.' && url.charAt(i - 1) == '/' && isDotSegment(url, i)) {
+                return null;
+            }
+            i++;
+        }
+        int pathEnd = i;
+        while (pathEnd > pathStart && url.charAt(pathEnd - 1) == '/') {
+            pathEnd--;
+        }
+
+        int queryStart = -1;
+        int queryEnd = -1;
+        if (i < length && url.charAt(i) == '?') {
+            queryStart = ++i;
+            while (i < length && url.charAt(i) != '#') {
+                if (!isIn(QUERY_CHARS, url.charAt(i))) {
+                    return null;
+                }
+                i++;
+            }
+            queryEnd = i;
+        }
+        if (i < length) {
+            // Fragment is dropped but must still be valid
+            for (i++; i < length; i++) {
+                if (!isIn(QUERY_CHARS, url.charAt(i))) {
+                    return null;
+                }
+            }
+        }
+
+        String host = toLowerAscii(url, hostStart, hostEnd);
+        StringBuilder canonical = new StringBuilder(length);
+        canonical.append(https ? "https://" : "http://").append(host);
+        if (port >= 0 && !(port == (https ? 443 : 80))) {
+            canonical.append(':').append(port);
+        }
+        if (pathEnd > pathStart) {
+            canonical.append(url, pathStart, pathEnd);
+        } else {
+            canonical.append('/');
+        }
+        if (queryStart >= 0) {
+            appendRelevantParams(canonical, url, queryStart, queryEnd);
+        }
+        return new CanonicalUrl(canonical.toString(), host);
+    }
+
+    // "." or ".." segment starting at i
+    private static boolean isDotSegment(String url, int i) {
+        int end = i + 1;
+        if (end < url.length() && url.charAt(end) == '.') {
+            end++;
+        }
+        return end == url.length() || "/?#".indexOf(url.charAt(end)) >= 0;
+    }
+
+    // Labels of letters, digits and inner hyphens with a last label starting with a letter; this is exactly
+    // what java.net.URI takes as a server-based host apart from IP addresses and a trailing dot
+    private static boolean isPlainHostname(String url, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        int labelStart = start;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? url.charAt(i) : '.';
+            if (c == '.') {
+                if (i == labelStart || url.charAt(labelStart) == '-' || url.charAt(i - 1) == '-') {
+                    return false;
+                }
+                if (i == end && !Character.isLetter(url.charAt(labelStart))) {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (!(c < 128 && (Character.isLetterOrDigit(c) || c == '-'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toLowerAscii(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                char[] chars = new char[end - start];
+                s.getChars(start, end, chars, 0);
+                for (int j = i - start; j < chars.length; j++) {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z') {
+                        chars[j] += 'a' - 'A';
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return s.substring(start, end);
+    }
+
+    // Appends "?" and the relevant parameters of url[start, end) in order, without repeating identical ones
+    private static void appendRelevantParams(StringBuilder out, String url, int start, int end) {
+        int queryOffset = -1;
+        int paramStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && url.charAt(i) != '&') {
+                continue;
+            }
+            if (isRelevantParam(url, paramStart, i) && !containsParam(out, queryOffset, url, paramStart, i)) {
+                if (queryOffset < 0) {
+                    out.append('?');
+                    queryOffset = out.length();
+                } else {
+                    out.append('&');
+                }
+                out.append(url, paramStart, i);
+            }
+            paramStart = i + 1;
+        }
+    }
+
+    private static boolean isRelevantParam(String url, int start, int end) {
+        int keyEnd = url.indexOf('=', start);
+        if (keyEnd < 0 || keyEnd > end) {
+            keyEnd = end;
+        }
+        for (String param : RELEVANT_PARAMS) {
+            if (param.length() == keyEnd - start && url.regionMatches(true, start, param, 0, param.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsParam(StringBuilder out, int queryOffset, String url, int start, int end) {
+        if (queryOffset < 0) {
+            return false;
+        }
+        int length = end - start;
+        int paramStart = queryOffset;
+        for (int i = queryOffset; i <= out.length(); i++) {
+            if (i < out.length() && out.charAt(i) != '&') {
+                continue;
+            }
+            if (i - paramStart == length && out.substring(paramStart, i).regionMatches(0, url, start, length)) {
+                return true;
+            }
+            paramStart = i + 1;
+        }
+        return false;
+    }
+
+    // The original java.net.URI based normalizer, kept as the fallback and as the reference for tests
+    static String legacyNormalize(String urlString) {
+        try {
+            URI uri = new URI(urlString).normalize();
+            String host = uri.getHost();
+            if (host == null) {
+                return null;
+            }
+            host = host.toLowerCase();
+            String scheme = uri.getScheme().toLowerCase();
+            int port = uri.getPort();
+            String path = uri.getPath().replaceAll("/+$", "");
+            if (path.isEmpty()) path = "/";
+            if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
+                port = -1;
+            }
+            String query = uri.getQuery();
+            if (query != null) {
+                query = legacyFilterIrrelevantParams(query);
+                if (query.isEmpty()) query = null;
+            }
+            return new URI(scheme, null, host, port, path, query, null).toString();
+        } catch (URISyntaxException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    private static String legacyFilterIrrelevantParams(String query) {
+        String[] params = query.split("&");
+        Set<String> validParams = new LinkedHashSet<>();
+        for (String param : params) {
+            String[] keyValue = param.split("=", 2);
+            String key = keyValue[0].toLowerCase();
+            if (key.matches("^(q|search|id|page|sort|category)$")) {
+                validParams.add(param);
+            }
+        }
+        return String.join("&", validParams);
+    }
+
+    static String legacyHost(String url) {
+        try {
+            URI uri = new URI(url);
+            String host = uri.getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.Search.Engine.Crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Hands discovered URLs to the shard that owns their host, through files in a directory all shards share.
+// Every shard has an inbox directory; URLs for shard j are buffered and written as one batch file into
+// j's inbox. A batch is written under a temporary name and then renamed, so a reader never sees half a
+// file. The owner makes each batch durable in its frontier store before deleting it, so a batch that was
+// imported but not deleted before a crash is simply imported twice, which the frontier store ignores.
+// Termination handshake: every shard publishes a state file, shard-<i>.state, saying whether it is active,
+// idle (nothing left to crawl and nothing buffered to send) or done (stopped), with the number of batches it
+// has sent and received. The crawl is over once two reads in a row find every shard idle or done with the
+// same counts, and no batch in the inbox of a shard that is not done. An idle shard sends nothing, and a
+// shard publishes itself active before deleting a batch it took, so unchanged counts mean nothing moved
+// between the reads and nothing is left that could wake a shard.
+public class UrlExchange implements AutoCloseable {
+    public static final String DEFAULT_DIRECTORY = "data/exchange";
+    private static final int FLUSH_BATCH = 1000;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final String BATCH_SUFFIX = ".urls";
+    private static final String STATE_SUFFIX = ".state";
+    private static final String ACTIVE = "active";
+    private static final String IDLE = "idle";
+    private static final String DONE = "done";
+
+    private final Path root;
+    private final ShardAssignment shard;
+    private final List<List<Entry>> outgoing = new ArrayList<>();
+    private long batchSequence = System.currentTimeMillis();
+    private long lastFlush = System.currentTimeMillis();
+    private final Object receiveLock = new Object();
+    private long sentBatches = 0;
+    private long receivedBatches = 0;
+    private String state;
+    // The states read by the last isCrawlOver that found every shard idle or done, otherwise null
+    private String lastStates;
+    private boolean crawlOver = false;
+
+    public static class Entry {
+        private final String url;
+        private final String host;
+        private final int depth;
+        private final double priority;
+
+        public Entry(String url, String host, int depth, double priority) {
+            this.url = url;
+            this.host = host;
+            this.depth = depth;
+            this.priority = priority;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public double getPriority() {
+            return priority;
+        }
+    }
+
+    public UrlExchange(Path root, ShardAssignment shard) throws IOException {
+        this.root = root;
+        this.shard = shard;
+        for (int i = 0; i < shard.getCount(); i++) {
+            outgoing.add(new ArrayList<>());
+            Files.createDirectories(inbox(i));
+        }
+        publishState(ACTIVE);
+    }
+
+    private Path inbox(int index) {
+        return root.resolve("to-shard-" + index);
+    }
+
+    // Queues a URL for the shard that owns host
+    public synchronized void send(String url, String host, int depth, double priority) {
+        int target = shard.shardOf(host);
+        List<Entry> batch = outgoing.get(target);
+        batch.add(new Entry(url, host, depth, priority));
+        if (batch.size() >= FLUSH_BATCH) {
+            writeBatch(target);
+        }
+        if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    // Writes every buffered URL out to its shard
+    public synchronized void flush() {
+        lastFlush = System.currentTimeMillis();
+        for (int target = 0; target < outgoing.size(); target++) {
+            if (!outgoing.get(target).isEmpty()) {
+                writeBatch(target);
+            }
+        }
+    }
+
+    private void writeBatch(int target) {
+        List<Entry> batch = outgoing.get(target);
+        String name = "from-" + shard.getIndex() + "-" + (batchSequence++);
+        Path temporary = inbox(target).resolve(name + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Entry entry : batch) {
+                    writer.write(entry.depth + "\t" + entry.priority + "\t" + entry.host + "\t" + entry.url);
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, inbox(target).resolve(name + BATCH_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            batch.clear();
+            sentBatches++;
+        } catch (IOException e) {
+            // The batch stays buffered and is retried on the next flush
+            System.err.println("Exchange - Failed to write " + batch.size() + " URLs for shard " + target + ": " + e.getMessage());
+        }
+    }
+
+    // Passes every batch other shards have sent to this one to consumer and deletes it once consumer returns,
+    // so consumer must have stored the URLs durably by then. Returns the number of URLs received.
+    public int receive(Consumer<List<Entry>> consumer) {
+        synchronized (receiveLock) {
+            return receiveBatches(consumer);
+        }
+    }
+
+    private int receiveBatches(Consumer<List<Entry>> consumer) {
+        List<Path> batches;
+        try (Stream<Path> files = Files.list(inbox(shard.getIndex()))) {
+            batches = files.filter(path -> path.getFileName().toString().endsWith(BATCH_SUFFIX)).sorted().toList();
+        } catch (IOException e) {
+            System.err.println("Exchange - Failed to list inbox: " + e.getMessage());
+            return 0;
+        }
+        int received = 0;
+        for (Path batch : batches) {
+            List<Entry> entries = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(batch, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 4);
+                    if (fields.length == 4) {
+                        entries.add(new Entry(fields[3], fields[2], Integer.parseInt(fields[0]), Double.parseDouble(fields[1])));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Exchange - Failed to read " + batch + ": " + e.getMessage());
+                continue;
+            }
+            consumer.accept(entries);
+            received += entries.size();
+            // Before the batch is gone, so no other shard can find it neither waiting nor taken
+            tookBatch();
+            try {
+                Files.delete(batch);
+            } catch (IOException e) {
+                System.err.println("Exchange - Failed to delete " + batch + ": " + e.getMessage());
+            }
+        }
+        return received;
+    }
+
+    private synchronized void tookBatch() {
+        receivedBatches++;
+        if (!ACTIVE.equals(state)) {
+            publishState(ACTIVE);
+        }
+    }
+
+    // Publishes this shard as idle once everything buffered is written out; the caller must have nothing left
+    // to crawl. Returns false, staying active, if a batch could not be written.
+    public synchronized boolean markIdle() {
+        flush();
+        for (List<Entry> batch : outgoing) {
+            if (!batch.isEmpty()) {
+                return false;
+            }
+        }
+        if (!IDLE.equals(state)) {
+            publishState(IDLE);
+        }
+        return true;
+    }
+
+    // True once the handshake has found every shard idle or done with nothing in flight; see the class comment.
+    // Each call is one read, so callers poll it.
+    public synchronized boolean isCrawlOver() {
+        if (crawlOver) {
+            return true;
+        }
+        StringBuilder states = new StringBuilder();
+        for (int i = 0; i < shard.getCount(); i++) {
+            String line;
+            try {
+                line = Files.readString(statePath(root, i), StandardCharsets.UTF_8).trim();
+            } catch (IOException e) {
+                // Not started yet, or its state could not be read
+                lastStates = null;
+                return false;
+            }
+            if (line.startsWith(ACTIVE) || (line.startsWith(IDLE) && hasBatches(inbox(i)))) {
+                lastStates = null;
+                return false;
+            }
+            states.append(line).append('\n');
+        }
+        crawlOver = states.toString().equals(lastStates);
+        lastStates = states.toString();
+        return crawlOver;
+    }
+
+    private static boolean hasBatches(Path inbox) {
+        try (Stream<Path> files = Files.list(inbox)) {
+            return files.findAny().isPresent();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void publishState(String newState) {
+        try {
+            writeState(root, shard.getIndex(), newState + " " + sentBatches + " " + receivedBatches);
+            state = newState;
+        } catch (IOException e) {
+            // The old state stays; an idle or done shard that cannot say so only keeps the crawl running longer
+            System.err.println("Exchange - Failed to publish state " + newState + ": " + e.getMessage());
+        }
+    }
+
+    private static Path statePath(Path root, int index) {
+        return root.resolve("shard-" + index + STATE_SUFFIX);
+    }
+
+    private static void writeState(Path root, int index, String line) throws IOException {
+        Path temporary = root.resolve("shard-" + index + STATE_SUFFIX + ".tmp");
+        Files.writeString(temporary, line + "\n", StandardCharsets.UTF_8);
+        Files.move(temporary, statePath(root, index), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Forgets the states of an earlier crawl, which must not end or hold up a new one; run before starting shards
+    public static void clearStates(Path root, int shards) throws IOException {
+        for (int i = 0; i < shards; i++) {
+            Files.deleteIfExists(statePath(root, i));
+        }
+    }
+
+    // Publishes a shard that stopped without closing its exchange, e.g. after a crash, as done, so the others
+    // do not wait for it
+    public static void markStopped(Path root, int index) throws IOException {
+        Files.createDirectories(root);
+        writeState(root, index, DONE + " 0 0");
+    }
+
+    // Writes out everything buffered and publishes this shard as done
+    @Override
+    public synchronized void close() {
+        flush();
+        publishState(DONE);
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.Search.Engine.Data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Append-only store for raw page HTML and the parsed page records built from it.
+// Every record is deflate-compressed and appended to the current segment file under data/content;
+// DocumentMetaData only keeps (segment, offset, length) pointers, so metadata scans never touch the HTML
+// and a record is decompressed only when it is actually needed.
+public class ContentStore implements AutoCloseable {
+    public static final String DEFAULT_DIRECTORY = "data/content";
+    private static final long MAX_SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final Map<Integer, FileChannel> readChannels = new ConcurrentHashMap<>();
+    private FileChannel appendChannel;
+    private int appendSegment;
+    private long appendPosition;
+
+    public static class Pointer {
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        public Pointer(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        // Reads the content_segment/offset/length columns, or returns null for rows that still keep inline html
+        public static Pointer fromResultSet(ResultSet rs) throws SQLException {
+            return fromResultSet(rs, "content");
+        }
+
+        // Reads the <prefix>_segment/offset/length columns, or returns null if the row has no such record
+        public static Pointer fromResultSet(ResultSet rs, String prefix) throws SQLException {
+            int segment = rs.getInt(prefix + "_segment");
+            if (rs.wasNull()) {
+                return null;
+            }
+            return new Pointer(segment, rs.getLong(prefix + "_offset"), rs.getInt(prefix + "_length"));
+        }
+    }
+
+    public ContentStore() {
+        this(Paths.get(DEFAULT_DIRECTORY));
+    }
+
+    public ContentStore(Path directory) {
+        this.directory = directory;
+    }
+
+    // Adds the pointer columns to DocumentMetaData if this database predates the content store
+    public static void ensureSchema(Connection conn) throws SQLException {
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "content_segment", "INTEGER");
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "content_offset", "INTEGER");
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "content_length", "INTEGER");
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "parsed_segment", "INTEGER");
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "parsed_offset", "INTEGER");
+        DataBaseManager.ensureColumn(conn, "DocumentMetaData", "parsed_length", "INTEGER");
+    }
+
+    public Pointer append(String html) throws IOException {
+        return append(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Pointer append(byte[] record) throws IOException {
+        return appendCompressed(compress(record));
+    }
+
+    private synchronized Pointer appendCompressed(byte[] compressed) throws IOException {
+        if (appendChannel == null) {
+            openAppendSegment(latestSegment());
+        }
+        if (appendPosition > 0 && appendPosition + compressed.length > MAX_SEGMENT_BYTES) {
+            // flush() only reaches the current segment, and the batch being written may have records in this one
+            appendChannel.force(false);
+            appendChannel.close();
+            openAppendSegment(appendSegment + 1);
+        }
+        long offset = appendPosition;
+        ByteBuffer buffer = ByteBuffer.wrap(compressed);
+        while (buffer.hasRemaining()) {
+            appendPosition += appendChannel.write(buffer, appendPosition);
+        }
+        return new Pointer(appendSegment, offset, compressed.length);
+    }
+
+    // Forces appended content to disk; call before committing the pointers that reference it
+    public synchronized void flush() throws IOException {
+        if (appendChannel != null) {
+            appendChannel.force(false);
+        }
+    }
+
+    public String read(Pointer pointer) throws IOException {
+        return new String(readBytes(pointer), StandardCharsets.UTF_8);
+    }
+
+    public byte[] readBytes(Pointer pointer) throws IOException {
+        FileChannel channel = readChannels.get(pointer.segment);
+        if (channel == null) {
+            try {
+                channel = readChannels.computeIfAbsent(pointer.segment, segment -> {
+                    try {
+                        return FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.length);
+        long position = pointer.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Content pointer past end of segment " + pointer.segment);
+            }
+        }
+        return decompress(buffer.array());
+    }
+
+    // Returns the page HTML from the store, falling back to the legacy inline html column
+    public String readHtml(ResultSet rs) throws SQLException, IOException {
+        Pointer pointer = Pointer.fromResultSet(rs);
+        return pointer != null ? read(pointer) : rs.getString("html");
+    }
+
+    // Copies every segment of another store into this one as its segment number plus offset; pointers into the
+    // source stay valid after adding offset to their segment. offset must be past every segment a row points
+    // into, so a file already there is left from an import whose rows were never committed and is replaced.
+    // The copies are forced to disk, so rows committed after this returns can rely on them.
+    // Must not run while this store is appending.
+    public synchronized void importSegments(Path sourceDirectory, int offset) throws IOException {
+        if (!Files.isDirectory(sourceDirectory)) {
+            return;
+        }
+        Files.createDirectories(directory);
+        for (int segment : segmentNumbers(sourceDirectory).toArray()) {
+            Path target = segmentPath(segment + offset);
+            Files.copy(sourceDirectory.resolve(segmentFileName(segment)), target, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private static IntStream segmentNumbers(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            int[] segments = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .mapToInt(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .toArray();
+            return IntStream.of(segments);
+        }
+    }
+
+    private void openAppendSegment(int segment) throws IOException {
+        Files.createDirectories(directory);
+        appendSegment = segment;
+        appendChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        appendPosition = appendChannel.size();
+    }
+
+    private int latestSegment() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 1;
+        }
+        return segmentNumbers(directory).max().orElse(1);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(segmentFileName(segment));
+    }
+
+    private static String segmentFileName(int segment) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX);
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated content record");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt content record", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (appendChannel != null) {
+                appendChannel.close();
+                appendChannel = null;
+            }
+            for (FileChannel channel : readChannels.values()) {
+                channel.close();
+            }
+            readChannels.clear();
+        } catch (IOException e) {
+            System.err.println("Error closing content store: " + e.getMessage());
+        }
+    }
+
+    // Moves HTML still stored inline in DocumentMetaData into the content store and compacts the database
+    public static void main(String[] args) {
+        try (ContentStore store = new ContentStore();
+             Connection conn = DataBaseManager.getConnection()) {
+            ensureSchema(conn);
+            conn.setAutoCommit(false);
+            int moved = 0;
+            while (true) {
+                Map<Integer, String> batch = new LinkedHashMap<>();
+                try (Statement select = conn.createStatement();
+                     ResultSet rs = select.executeQuery("SELECT id, html FROM DocumentMetaData WHERE html IS NOT NULL LIMIT 500")) {
+                    while (rs.next()) {
+                        batch.put(rs.getInt("id"), rs.getString("html"));
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try (PreparedStatement update = conn.prepareStatement(
+                        "UPDATE DocumentMetaData SET html = NULL, content_segment = ?, content_offset = ?, content_length = ? WHERE id = ?")) {
+                    for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+                        Pointer pointer = store.append(entry.getValue());
+                        update.setInt(1, pointer.segment);
+                        update.setLong(2, pointer.offset);
+                        update.setInt(3, pointer.length);
+                        update.setInt(4, entry.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+                store.flush();
+                conn.commit();
+                moved += batch.size();
+                System.out.println("Moved " + moved + " documents into the content store");
+            }
+            conn.setAutoCommit(true);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("VACUUM");
+            }
+            System.out.println("Content store migration finished: " + moved + " documents moved");
+        } catch (SQLException | IOException e) {
+            System.err.println("Content store migration failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.Search.Engine.Data;
 
+import com.example.Search.Engine.Crawler.UrlCanonicalizer;
 import com.example.Search.Engine.QP.QueryIndex;
 import javafx.util.Pair;
 import java.sql.*;
@@ -12,11 +13,118 @@ import java.util.stream.Collectors;
 public class DataBaseManager {
     private static final String URL = "jdbc:sqlite:./data/search_index.db";
     private static final int BATCH_SIZE = 100; // Number of documents per batch
+    private static final int RANK_BATCH_SIZE = 10_000; // Rank updates per JDBC batch
+    private static final int RANK_PROGRESS_INTERVAL = 100_000; // Rank updates between progress lines
+    private static final int LINK_BATCH_SIZE = 10_000; // Stored links read and rewritten per step of the link migration
+    // PRAGMA user_version from which extracted_links hold canonical URLs, as the storage writer now stores them
+    private static final int CANONICAL_LINKS_VERSION = 1;
 
     public static Connection getConnection() throws SQLException {
         return DriverManager.getConnection(URL);
     }
 
+    // Adds a column to an existing table unless it is already there (SQLite has no ADD COLUMN IF NOT EXISTS)
+    public static void ensureColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (rs.getString("name").equalsIgnoreCase(column)) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    // Link graph as resolved document ids: one row per distinct (from_id, to_id) edge, kept up to date by the
+    // crawler's storage writer as pages are stored, so loading the graph is a scan of the primary key instead of
+    // a join of every extracted link URL against DocumentMetaData. Needs extracted_links and DocumentMetaData(url)
+    // indexed; the first call on a database crawled before the table existed, or before links were stored in
+    // canonical form, canonicalizes the stored links and fills the table from them.
+    public static void ensureLinkGraph(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_extracted_link ON extracted_links(extracted_link)");
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'link_edges'")) {
+                exists = rs.next();
+            }
+            int version;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (exists && version >= CANONICAL_LINKS_VERSION) {
+                return;
+            }
+            canonicalizeLinks(conn);
+            stmt.execute("CREATE TABLE IF NOT EXISTS link_edges (from_id INTEGER NOT NULL, to_id INTEGER NOT NULL, " +
+                    "PRIMARY KEY (from_id, to_id)) WITHOUT ROWID");
+            int edges = stmt.executeUpdate("INSERT OR IGNORE INTO link_edges (from_id, to_id) " +
+                    "SELECT el.doc_id, dm.id FROM extracted_links el JOIN DocumentMetaData dm ON el.extracted_link = dm.url");
+            if (edges > 0) {
+                System.out.println("Backfilled " + edges + " link graph edges");
+            }
+            stmt.execute("PRAGMA user_version = " + CANONICAL_LINKS_VERSION);
+        }
+    }
+
+    // Rewrites raw hrefs (fragments, upper-case hosts, default ports, ...) to the canonical URLs pages are stored
+    // under, so they can match DocumentMetaData.url; links that cannot be canonicalized are dropped
+    // Reads a page of rows by rowid and closes the cursor before rewriting them, so no read is open on the table
+    // or its link index while they change.
+    private static void canonicalizeLinks(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int rewritten = 0;
+        try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT rowid, extracted_link FROM extracted_links WHERE rowid > ? ORDER BY rowid LIMIT " + LINK_BATCH_SIZE);
+             PreparedStatement update = conn.prepareStatement("UPDATE extracted_links SET extracted_link = ? WHERE rowid = ?");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM extracted_links WHERE rowid = ?")) {
+            long lastRowId = 0;
+            while (true) {
+                List<Long> rowIds = new ArrayList<>(LINK_BATCH_SIZE);
+                List<String> links = new ArrayList<>(LINK_BATCH_SIZE);
+                select.setLong(1, lastRowId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rowIds.add(rs.getLong(1));
+                        links.add(rs.getString(2));
+                    }
+                }
+                if (rowIds.isEmpty()) {
+                    break;
+                }
+                lastRowId = rowIds.get(rowIds.size() - 1);
+                for (int i = 0; i < rowIds.size(); i++) {
+                    String link = links.get(i);
+                    UrlCanonicalizer.CanonicalUrl canonical = link == null ? null : UrlCanonicalizer.canonicalize(link);
+                    if (canonical == null) {
+                        delete.setLong(1, rowIds.get(i));
+                        delete.addBatch();
+                        rewritten++;
+                    } else if (!canonical.url().equals(link)) {
+                        update.setString(1, canonical.url());
+                        update.setLong(2, rowIds.get(i));
+                        update.addBatch();
+                        rewritten++;
+                    }
+                }
+                update.executeBatch();
+                delete.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        if (rewritten > 0) {
+            System.out.println("Canonicalized " + rewritten + " stored links");
+        }
+    }
+
     public static List<Pair<String, Integer>> GetALLQueries() throws SQLException {
         List<Pair<String, Integer>> queries = new ArrayList<>();
         String sql = "SELECT * FROM search_queries;\n";
@@ -35,42 +143,96 @@ public class DataBaseManager {
     }
 
     public static Map<Integer, List<Integer>> getGraphFromDB() throws SQLException {
+        try (Connection conn = getConnection()) {
+            return getGraph(conn);
+        }
+    }
+
+    // Edges are unique by the primary key, so no per-edge duplicate check is needed
+    public static Map<Integer, List<Integer>> getGraph(Connection conn) throws SQLException {
         Map<Integer, List<Integer>> graph = new HashMap<>();
-        String linksSql = "SELECT el.doc_id AS from_id, dm.id AS to_id " +
-                "FROM extracted_links el " +
-                "JOIN DocumentMetaData dm ON el.extracted_link = dm.url " +
-                "WHERE dm.id IS NOT NULL";
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(linksSql)) {
+        forEachEdge(conn, (from, to) -> {
+            graph.computeIfAbsent(from, k -> new ArrayList<>()).add(to);
+            graph.putIfAbsent(to, new ArrayList<>());
+        });
+        return graph;
+    }
+
+    public interface EdgeConsumer {
+        void accept(int fromId, int toId);
+    }
+
+    // Streams every link graph edge without building any per-node collections
+    public static void forEachEdge(Connection conn, EdgeConsumer consumer) throws SQLException {
+        ensureLinkGraph(conn);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT from_id, to_id FROM link_edges")) {
             while (rs.next()) {
-                int from = rs.getInt("from_id");
-                int to = rs.getInt("to_id");
-                graph.putIfAbsent(from, new ArrayList<>());
-                graph.putIfAbsent(to, new ArrayList<>());
-                if (!graph.get(from).contains(to)) {
-                    graph.get(from).add(to);
-                }
+                consumer.accept(rs.getInt(1), rs.getInt(2));
+            }
+        }
+    }
+
+    public interface RankConsumer {
+        void accept(int id, double pageRank);
+    }
+
+    // Streams the stored page rank of every document
+    public static void forEachPageRank(Connection conn, RankConsumer consumer) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, page_rank FROM DocumentMetaData")) {
+            while (rs.next()) {
+                consumer.accept(rs.getInt(1), rs.getDouble(2));
             }
         }
-        return graph;
     }
 
     public static void setPageRank(Map<Integer, Double> pageRankMap) throws SQLException {
+        try (Connection conn = getConnection()) {
+            setPageRank(conn, pageRankMap);
+        }
+    }
+
+    public static void setPageRank(Connection conn, Map<Integer, Double> pageRankMap) throws SQLException {
+        int[] ids = new int[pageRankMap.size()];
+        double[] pageRanks = new double[pageRankMap.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> entry : pageRankMap.entrySet()) {
+            ids[i] = entry.getKey();
+            pageRanks[i++] = entry.getValue();
+        }
+        setPageRank(conn, ids, pageRanks);
+    }
+
+    // Writes pageRanks[i] for document ids[i]. All rows go in one transaction as batched updates, so the
+    // database syncs once instead of once per document; a failure leaves every stored rank unchanged.
+    public static void setPageRank(Connection conn, int[] ids, double[] pageRanks) throws SQLException {
         String updateSql = "UPDATE DocumentMetaData SET page_rank = ? WHERE id = ?;";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-            for (Map.Entry<Integer, Double> entry : pageRankMap.entrySet()) {
-                int id = entry.getKey();
-                double pageRank = entry.getValue();
-                pstmt.setDouble(1, pageRank);
-                pstmt.setInt(2, id);
-                pstmt.executeUpdate();
+        boolean autoCommit = conn.getAutoCommit();
+        long startTime = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
+            for (int i = 0; i < ids.length; i++) {
+                pstmt.setDouble(1, pageRanks[i]);
+                pstmt.setInt(2, ids[i]);
+                pstmt.addBatch();
+                if ((i + 1) % RANK_BATCH_SIZE == 0) {
+                    pstmt.executeBatch();
+                }
+                if ((i + 1) % RANK_PROGRESS_INTERVAL == 0) {
+                    System.out.println("Page rank - Written " + (i + 1) + " / " + ids.length);
+                }
             }
+            pstmt.executeBatch();
+            conn.commit();
         } catch (SQLException e) {
+            conn.rollback();
             e.printStackTrace();
             throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
+        System.out.println("Page rank - Stored " + ids.length + " ranks in " + (System.currentTimeMillis() - startTime) + " ms");
     }
 
     public static void getPageRank(List<QueryIndex.DocumentData> documents) throws SQLException {
@@ -0,0 +1,265 @@
+package com.example.Search.Engine.Data;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+// Everything the crawler and the indexer need from a page, extracted in one walk over the jsoup DOM:
+// the title, the text of every heading and content block, and the outgoing links.
+// It is stored next to the raw HTML in the content store (parsed_* columns) so the indexer can tokenize
+// a page without parsing its HTML again.
+public class ParsedPage {
+    // Block kinds: 1-6 are the heading levels h1-h6
+    public static final int CONTENT = 0;
+    private static final int FORMAT_VERSION = 1;
+    private static final Set<String> CONTENT_TAGS = Set.of("p", "div", "li", "article", "section");
+
+    private final String title;
+    private final List<Block> blocks;
+    private final List<String> links;
+    // All visible text as the crawler saw it; not stored, only the blocks are
+    private final String visibleText;
+
+    public static class Block {
+        private final int kind;
+        private final String text;
+
+        public Block(int kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public ParsedPage(String title, List<Block> blocks, List<String> links) {
+        this(title, blocks, links, null);
+    }
+
+    private ParsedPage(String title, List<Block> blocks, List<String> links, String visibleText) {
+        this.title = title;
+        this.blocks = blocks;
+        this.links = links;
+        this.visibleText = visibleText;
+    }
+
+    public static ParsedPage parse(String html, String baseUrl) {
+        return fromDocument(Jsoup.parse(html, baseUrl), Integer.MAX_VALUE);
+    }
+
+    // Text inside a heading belongs to the heading, text inside p, div, li, article and section is content,
+    // and a span counts as content only outside those. Each piece of text lands in exactly one block: text
+    // before, inside and after a nested block becomes three blocks. Links are absolute http(s) hrefs.
+    public static ParsedPage fromDocument(Document doc, int maxLinks) {
+        Extractor extractor = new Extractor(maxLinks);
+        NodeTraversor.traverse(extractor, doc);
+        return new ParsedPage(doc.title(), extractor.blocks, new ArrayList<>(extractor.links), extractor.visible.toString().trim());
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    // Page text for fingerprinting; for a page read back from the store, the title and blocks joined
+    public String getVisibleText() {
+        if (visibleText != null) {
+            return visibleText;
+        }
+        StringBuilder text = new StringBuilder(title);
+        for (Block block : blocks) {
+            text.append(' ').append(block.text);
+        }
+        return text.toString();
+    }
+
+    private static class Extractor implements NodeVisitor {
+        private final int maxLinks;
+        private final List<Block> blocks = new ArrayList<>();
+        private final Set<String> links = new LinkedHashSet<>();
+        private final StringBuilder visible = new StringBuilder();
+        private final StringBuilder block = new StringBuilder();
+        // Open heading and content elements with their kinds; -1 is the title, whose text is kept separately
+        private final ArrayDeque<Element> openElements = new ArrayDeque<>();
+        private final ArrayDeque<Integer> openKinds = new ArrayDeque<>();
+
+        private Extractor(int maxLinks) {
+            this.maxLinks = maxLinks;
+        }
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                String text = textNode.getWholeText();
+                appendNormalized(visible, text);
+                if (!openKinds.isEmpty()) {
+                    appendNormalized(block, text);
+                }
+                return;
+            }
+            if (!(node instanceof Element element)) {
+                return;
+            }
+            String name = element.normalName();
+            if (element.isBlock() || name.equals("br")) {
+                separate();
+            }
+            if (name.equals("a") && links.size() < maxLinks && element.hasAttr("href")) {
+                String href = element.absUrl("href");
+                if (href.startsWith("http")) {
+                    links.add(href);
+                }
+            }
+            int kind = kindOf(name);
+            if (kind != Integer.MIN_VALUE) {
+                flush();
+                openElements.push(element);
+                openKinds.push(kind);
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (!(node instanceof Element element)) {
+                return;
+            }
+            if (!openElements.isEmpty() && openElements.peek() == element) {
+                flush();
+                openElements.pop();
+                openKinds.pop();
+            }
+            if (element.isBlock()) {
+                separate();
+            }
+        }
+
+        private int kindOf(String name) {
+            if (name.equals("title")) {
+                return -1;
+            }
+            if (name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '6') {
+                return name.charAt(1) - '0';
+            }
+            if (CONTENT_TAGS.contains(name) || (name.equals("span") && openKinds.isEmpty())) {
+                return CONTENT;
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        private void flush() {
+            if (!openKinds.isEmpty() && openKinds.peek() >= 0) {
+                String text = block.toString().trim();
+                if (!text.isEmpty()) {
+                    blocks.add(new Block(openKinds.peek(), text));
+                }
+            }
+            block.setLength(0);
+        }
+
+        private void separate() {
+            appendSpace(visible);
+            appendSpace(block);
+        }
+
+        private static void appendSpace(StringBuilder out) {
+            if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') {
+                out.append(' ');
+            }
+        }
+
+        // Collapses whitespace runs to one space, like Element.text()
+        private static void appendNormalized(StringBuilder out, String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00a0') {
+                    appendSpace(out);
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            writeString(out, title);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeByte(block.kind);
+                writeString(out, block.text);
+            }
+            out.writeInt(links.size());
+            for (String link : links) {
+                writeString(out, link);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ParsedPage fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown parsed page format " + version);
+        }
+        String title = readString(in);
+        int blockCount = in.readInt();
+        List<Block> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            int kind = in.readByte();
+            blocks.add(new Block(kind, readString(in)));
+        }
+        int linkCount = in.readInt();
+        List<String> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            links.add(readString(in));
+        }
+        return new ParsedPage(title, blocks, links);
+    }
+
+    // The stored record of a row, or null for rows crawled before parsed pages were stored
+    public static ParsedPage read(ContentStore store, ResultSet rs) throws SQLException, IOException {
+        ContentStore.Pointer pointer = ContentStore.Pointer.fromResultSet(rs, "parsed");
+        return pointer != null ? fromBytes(store.readBytes(pointer)) : null;
+    }
+
+    // DataOutputStream.writeUTF is limited to 64 KB, which a long article can exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -1,31 +1,55 @@
 package com.example.Search.Engine.Indexer;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import com.example.Search.Engine.Data.ParsedPage;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
 public class Indexer implements AutoCloseable {
+    private static final int WRITE_BATCH_SIZE = 1000;
+    private static final int QUEUE_CAPACITY_PER_WORKER = 16;
+    // Documents buffered per index segment; bounds the memory of the segment writer
+    private static final int SEGMENT_MAX_DOCUMENTS = 10_000;
+    public static final Path SEGMENT_DIRECTORY = Paths.get("data", "index");
+    // Queue markers for the end of the input; compared by identity
+    private static final SQLiteSearcher.StoredDocument END_OF_DOCUMENTS = new SQLiteSearcher.StoredDocument(0, "", null, null, null);
+    private static final SQLiteSearcher.TokenizedDocument END_OF_TOKENS = new SQLiteSearcher.TokenizedDocument(END_OF_DOCUMENTS, Map.of());
     private final SQLiteSearcher searcher;
     private final Tokenizer tokenizer;
+    private final Path segmentDirectory;
+    private final int workers;
+    // Merges the segments this indexer writes in the background, so queries read a few large segments
+    private final SegmentMerger merger;
 
     @Autowired
     public Indexer(SQLiteSearcher searcher, Tokenizer tokenizer) {
+        this(searcher, tokenizer, SEGMENT_DIRECTORY, Runtime.getRuntime().availableProcessors());
+    }
+
+    Indexer(SQLiteSearcher searcher, Tokenizer tokenizer, Path segmentDirectory, int workers) {
         this.searcher = searcher;
         this.tokenizer = tokenizer;
+        this.segmentDirectory = segmentDirectory;
+        this.workers = workers;
+        this.merger = new SegmentMerger(segmentDirectory);
     }
 
     @Override
     public void close() {
         System.out.println("Closing Indexer resources...");
         try {
+            merger.close();
             searcher.close();
             System.out.println("Resources closed successfully");
         } catch (Exception e) {
@@ -33,84 +57,107 @@ public class Indexer implements AutoCloseable {
         }
     }
 
+    // Indexes the documents that are new or changed since the last run, so the time taken follows the size of
+    // the crawl batch rather than of the corpus.
+    // Streaming pipeline: a reader thread walks those rows with a cursor, a pool of workers loads and
+    // tokenizes each page, and the calling thread writes the results in batches of WRITE_BATCH_SIZE. Both
+    // queues are bounded, so a slow stage blocks the ones before it and memory stays flat whatever the
+    // number of documents; at most the queued rows and one write batch are held at a time.
+    // A document is marked indexed only once the segment holding it is in the manifest, so a run that fails
+    // or stops before then leaves it to the next run.
     public void index() {
         long startTime = System.nanoTime();
 
         System.out.println("\nStarting to index documents from database...");
         List<String> errors = Collections.synchronizedList(new ArrayList<>());
-
-        try {
-            // Get all documents from DocumentMetaData
-            List<Map.Entry<String, String>> documents = searcher.getAllDocuments();
-            System.out.println("Found " + documents.size() + " documents to index");
-
-            // Create a thread pool for parallel processing
-            int processors = Runtime.getRuntime().availableProcessors();
-            ExecutorService executor = Executors.newFixedThreadPool(processors);
-            List<CompletableFuture<Map.Entry<String, Map<String, Tokenizer.Token>>>> futures = new ArrayList<>();
-
-            // First pass: collect all documents and tokens in parallel
-            long tokenizationStart = System.nanoTime();
-            for (Map.Entry<String, String> doc : documents) {
-                CompletableFuture<Map.Entry<String, Map<String, Tokenizer.Token>>> future = CompletableFuture.supplyAsync(() -> {
-                    long docStart = System.nanoTime();
-                    try {
-                        System.out.println("\n=== Processing document: " + doc.getKey() + " ===");
-                        String url = doc.getKey();
-                        String html = doc.getValue();
-                        Document docHtml = Jsoup.parse(html);
-                        Map<String, Tokenizer.Token> tokens = tokenizer.tokenizeDocument(docHtml);
-                        long docEnd = System.nanoTime();
-                        System.out.printf("Document %s processed in %.2f ms%n", url, (docEnd - docStart) / 1000000.0);
-                        return Map.entry(url, tokens);
-                    } catch (Exception e) {
-                        String error = String.format("Error processing %s: %s", doc.getKey(), e.getMessage());
-                        System.err.println(error);
-                        errors.add(error);
-                        return null;
-                    }
-                }, executor);
-                futures.add(future);
-            }
-
-            // Wait for all processing to complete
-            List<Map.Entry<String, Map<String, Tokenizer.Token>>> results = futures.stream()
-                .map(CompletableFuture::join)
-                .filter(Objects::nonNull)
-                .toList();
-            long tokenizationEnd = System.nanoTime();
-
-            // Bulk write to database
-            System.out.println("\nWriting " + results.size() + " documents to database in bulk...");
-            long dbStart = System.nanoTime();
+        BlockingQueue<SQLiteSearcher.StoredDocument> documents = new ArrayBlockingQueue<>(workers * QUEUE_CAPACITY_PER_WORKER);
+        BlockingQueue<SQLiteSearcher.TokenizedDocument> tokenized = new ArrayBlockingQueue<>(WRITE_BATCH_SIZE);
+        AtomicLong tokenizationNanos = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        Thread reader = new Thread(() -> {
             try {
-                searcher.addDocuments(results);
+                searcher.forEachDocument(documents::put);
+            } catch (InterruptedException e) {
+                return;
             } catch (Exception e) {
-                String error = String.format("Error during bulk indexing: %s", e.getMessage());
+                String error = String.format("Error reading documents: %s", e.getMessage());
                 System.err.println(error);
                 errors.add(error);
             }
-            long dbEnd = System.nanoTime();
-
-            executor.shutdown();
             try {
-                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
+                for (int i = 0; i < workers; i++) {
+                    documents.put(END_OF_DOCUMENTS);
                 }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
+            } catch (InterruptedException ignored) {
+                // Indexing was aborted
+            }
+        }, "index-reader");
+
+        try {
+            reader.start();
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> tokenize(documents, tokenized, tokenizationNanos, errors));
+            }
+
+            long dbNanos = 0;
+            int written = 0;
+            int finishedWorkers = 0;
+            Set<String> changedWords = new HashSet<>();
+            // Each run's documents also go to new immutable segments; a document indexed again later is in a
+            // newer segment, which supersedes the older ones for that document id
+            SegmentWriter segment = new SegmentWriter();
+            List<SQLiteSearcher.StoredDocument> unpublished = new ArrayList<>(SEGMENT_MAX_DOCUMENTS);
+            int segments = 0;
+            List<SQLiteSearcher.TokenizedDocument> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+            while (finishedWorkers < workers) {
+                SQLiteSearcher.TokenizedDocument document = tokenized.take();
+                if (document == END_OF_TOKENS) {
+                    finishedWorkers++;
+                } else {
+                    batch.add(document);
+                }
+                if (batch.size() == WRITE_BATCH_SIZE || (finishedWorkers == workers && !batch.isEmpty())) {
+                    long dbStart = System.nanoTime();
+                    changedWords.addAll(searcher.addBatch(batch));
+                    dbNanos += System.nanoTime() - dbStart;
+                    for (SQLiteSearcher.TokenizedDocument doc : batch) {
+                        segment.addDocument((int) doc.getDocument().getId(), doc.getTokens());
+                        unpublished.add(doc.getDocument());
+                    }
+                    if (segment.documentCount() >= SEGMENT_MAX_DOCUMENTS) {
+                        writeSegment(segment);
+                        dbNanos += markIndexed(unpublished);
+                        segments++;
+                    }
+                    written += batch.size();
+                    batch.clear();
+                    System.out.println("Indexed " + written + " documents");
+                }
+            }
+            if (!segment.isEmpty()) {
+                writeSegment(segment);
+                dbNanos += markIndexed(unpublished);
+                segments++;
+            }
+            if (written > 0) {
+                System.out.println("Updating IDF for " + changedWords.size() + " words...");
+                long idfStart = System.nanoTime();
+                searcher.updateIDF(changedWords);
+                dbNanos += System.nanoTime() - idfStart;
+            } else {
+                System.out.println("No new or changed documents to index");
             }
 
             // Print performance metrics
             long endTime = System.nanoTime();
-            
+
             System.out.println("\n=== Performance Metrics ===");
             System.out.printf("Total indexing time: %.2f seconds%n", (endTime - startTime) / 1000000000.0);
-            System.out.printf("Tokenization time: %.2f seconds%n", (tokenizationEnd - tokenizationStart) / 1000000000.0);
-            System.out.printf("Database time: %.2f seconds%n", (dbEnd - dbStart) / 1000000000.0);
-            System.out.printf("Average time per document: %.2f ms%n", 
-                (endTime - startTime) / (results.size() * 1000000.0));
+            System.out.printf("Tokenization time (all workers): %.2f seconds%n", tokenizationNanos.get() / 1000000000.0);
+            System.out.printf("Database time: %.2f seconds%n", dbNanos / 1000000000.0);
+            System.out.println("Segments written: " + segments);
+            System.out.printf("Average time per document: %.2f ms%n",
+                (endTime - startTime) / (Math.max(1, written) * 1000000.0));
             System.out.println("=========================");
 
             if (!errors.isEmpty()) {
@@ -118,22 +165,109 @@ public class Indexer implements AutoCloseable {
                 errors.forEach(System.err::println);
                 throw new IOException("Errors occurred while indexing:\n" + String.join("\n", errors));
             }
-            
+
             System.out.println("\nSuccessfully indexed all documents from database");
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Indexing interrupted");
         } catch (Exception e) {
             System.err.println("Error during indexing: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            // Unblocks the reader and workers if the writer stopped early
+            reader.interrupt();
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    System.err.println("Indexing workers did not stop");
+                }
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    // Writes the segment, makes it the newest in the manifest, and lets the merger check for a merge
+    private void writeSegment(SegmentWriter segment) throws IOException {
+        String name = SegmentManifest.newSegmentName(segmentDirectory);
+        long postings = segment.postingCount();
+        int documents = segment.documentCount();
+        segment.write(segmentDirectory, name);
+        SegmentManifest.add(segmentDirectory, name);
+        System.out.println("Wrote index segment " + name + " (" + documents + " documents, " + postings + " postings)");
+        merger.maybeMerge();
+    }
+
+    // Marks the documents of the segment just published indexed; returns the time taken
+    private long markIndexed(List<SQLiteSearcher.StoredDocument> published) throws SQLException {
+        long start = System.nanoTime();
+        searcher.markIndexed(published);
+        published.clear();
+        return System.nanoTime() - start;
+    }
+
+    // Worker loop: loads and tokenizes documents until it takes END_OF_DOCUMENTS or fails, then passes END_OF_TOKENS on
+    private void tokenize(BlockingQueue<SQLiteSearcher.StoredDocument> documents,
+                          BlockingQueue<SQLiteSearcher.TokenizedDocument> tokenized,
+                          AtomicLong tokenizationNanos, List<String> errors) {
+        try {
+            while (true) {
+                SQLiteSearcher.StoredDocument doc = documents.take();
+                if (doc == END_OF_DOCUMENTS) {
+                    break;
+                }
+                long docStart = System.nanoTime();
+                try {
+                    // The crawler stored the page already parsed, so normally there is no HTML to parse here
+                    ParsedPage page = searcher.load(doc);
+                    // A row with no content is indexed with no words, so it is marked and not read again, and
+                    // loses any postings an earlier version had
+                    Map<String, Tokenizer.Token> tokens = page != null ? tokenizer.tokenizeParsedPage(page) : Map.of();
+                    tokenizationNanos.addAndGet(System.nanoTime() - docStart);
+                    tokenized.put(new SQLiteSearcher.TokenizedDocument(doc, tokens));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    String error = String.format("Error processing %s: %s", doc.getUrl(), e.getMessage());
+                    System.err.println(error);
+                    errors.add(error);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Indexing was aborted
+            return;
+        } catch (Throwable e) {
+            // Let through by the per-document handler, e.g. an Error; the writer must still hear this worker end
+            String error = String.format("Indexing worker failed: %s", e);
+            System.err.println(error);
+            errors.add(error);
+        }
+        try {
+            tokenized.put(END_OF_TOKENS);
+        } catch (InterruptedException e) {
+            // Indexing was aborted
+        }
+    }
+
+    // Usage: Indexer [--full]; --full reindexes every document instead of only new and changed ones
     public static void main(String[] args) {
         SQLiteSearcher searcher = null;
         try {
             searcher = new SQLiteSearcher();
+            // Nothing is writing segments yet, so anything outside the manifest is left over
+            SegmentMerger.deleteUnreferenced(SEGMENT_DIRECTORY);
             Tokenizer tokenizer = new Tokenizer();
             Indexer indexer = new Indexer(searcher, tokenizer);
-            
+            if (Arrays.asList(args).contains("--full")) {
+                searcher.markAllForReindex();
+            } else if (SegmentFormat.generations(SEGMENT_DIRECTORY).isEmpty() && searcher.indexedDocumentCount() > 0) {
+                // Indexed before queries read segments: write every document to them once
+                System.out.println("No index segments found, reindexing every document");
+                searcher.markAllForReindex();
+            }
+
             System.out.println("Starting to index documents from database...");
             indexer.index();
             System.out.println("Successfully indexed all documents from database");
@@ -1,5 +1,10 @@
 package com.example.Search.Engine.Indexer;
 
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.DataBaseManager;
+import com.example.Search.Engine.Data.ParsedPage;
+
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.*;
@@ -7,9 +12,17 @@ import org.springframework.stereotype.Component;
 
 @Component
 public class SQLiteSearcher implements AutoCloseable {
+    private static final String DB_URL = "jdbc:sqlite:data/search_index.db";
+    // Clears the reindex flag only if the row still holds the content that was indexed. Only a content change
+    // moves the parsed pointer, as the store is append-only; unchanged and failed revisits leave it alone.
+    private static final String MARK_INDEXED =
+            "UPDATE DocumentMetaData SET indexed = 1, needs_reindex = 0 WHERE id = ? AND parsed_segment IS ? AND parsed_offset IS ?";
+    private static final double IDF_REFRESH_RATIO = 0.1;
+    private final String dbUrl;
     private final Connection connection;
     private final ThreadLocal<Connection> threadLocalConnection = new ThreadLocal<>();
     private final Object connectionLock = new Object();
+    private final ContentStore contentStore;
     private static final double TITLE_WEIGHT = 5.0;    // Most important - page title
     private static final double H1_WEIGHT = 4.0;       // Main heading
     private static final double H2_WEIGHT = 3.0;       // Sub-heading
@@ -43,7 +56,68 @@ public class SQLiteSearcher implements AutoCloseable {
         }
     }
 
+    // A DocumentMetaData row as read by forEachDocument: only the pointers, so rows are cheap to queue;
+    // the page itself is read with load, on whichever thread processes it
+    public static class StoredDocument {
+        private final long id;
+        private final String url;
+        private final ContentStore.Pointer parsed;
+        private final ContentStore.Pointer content;
+        // Inline html of rows crawled before the content store, otherwise null
+        private final String html;
+
+        StoredDocument(long id, String url, ContentStore.Pointer parsed, ContentStore.Pointer content, String html) {
+            this.id = id;
+            this.url = url;
+            this.parsed = parsed;
+            this.content = content;
+            this.html = html;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        // Null for rows crawled before parsed pages were stored
+        public ContentStore.Pointer getParsed() {
+            return parsed;
+        }
+    }
+
+    public static class TokenizedDocument {
+        private final StoredDocument document;
+        private final Map<String, Tokenizer.Token> tokens;
+
+        public TokenizedDocument(StoredDocument document, Map<String, Tokenizer.Token> tokens) {
+            this.document = document;
+            this.tokens = tokens;
+        }
+
+        public StoredDocument getDocument() {
+            return document;
+        }
+
+        public Map<String, Tokenizer.Token> getTokens() {
+            return tokens;
+        }
+    }
+
+    public interface DocumentConsumer {
+        // May block, e.g. on a full queue
+        void accept(StoredDocument document) throws InterruptedException;
+    }
+
     public SQLiteSearcher() throws SQLException {
+        this(DB_URL, new ContentStore());
+    }
+
+    SQLiteSearcher(String dbUrl, ContentStore contentStore) throws SQLException {
+        this.dbUrl = dbUrl;
+        this.contentStore = contentStore;
         connection = getThreadConnection();
         initializeDatabase();
     }
@@ -56,7 +130,13 @@ public class SQLiteSearcher implements AutoCloseable {
                 title TEXT,
                 last_crawled_date TEXT DEFAULT CURRENT_TIMESTAMP,
                 html TEXT,
-                page_rank REAL DEFAULT 0.0
+                page_rank REAL DEFAULT 0.0,
+                content_segment INTEGER,
+                content_offset INTEGER,
+                content_length INTEGER,
+                parsed_segment INTEGER,
+                parsed_offset INTEGER,
+                parsed_length INTEGER
             )
         """;
 
@@ -82,326 +162,238 @@ public class SQLiteSearcher implements AutoCloseable {
             )
         """;
 
+        // Document frequency of every word, kept up to date by addBatch
+        String createTermStatsTable = """
+            CREATE TABLE TermStats (
+                word TEXT PRIMARY KEY,
+                doc_count INTEGER NOT NULL
+            ) WITHOUT ROWID
+        """;
+
+        String createIndexStatsTable = "CREATE TABLE IF NOT EXISTS IndexStats (name TEXT PRIMARY KEY, value INTEGER)";
+
         String createWordIndex = "CREATE INDEX IF NOT EXISTS idx_inverted_word ON InvertedIndex(word)";
         String createDocIndex = "CREATE INDEX IF NOT EXISTS idx_inverted_doc ON InvertedIndex(doc_id)";
 
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createDocumentMetaDataTable);
+            ContentStore.ensureSchema(connection);
             stmt.execute(createInvertedIndexTable);
             stmt.execute(createWordPositionsTable);
             stmt.execute(createWordIndex);
             stmt.execute(createDocIndex);
+            // indexed: postings are written; needs_reindex: the crawler stored a changed version since
+            DataBaseManager.ensureColumn(connection, "DocumentMetaData", "indexed", "INTEGER DEFAULT 0");
+            DataBaseManager.ensureColumn(connection, "DocumentMetaData", "needs_reindex", "INTEGER DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_pending_index ON DocumentMetaData(indexed, needs_reindex)");
+            stmt.execute(createIndexStatsTable);
+            boolean termStatsExist;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'TermStats'")) {
+                termStatsExist = rs.next();
+            }
+            if (!termStatsExist) {
+                stmt.execute(createTermStatsTable);
+                // An index built before TermStats existed; duplicate postings of a document count once
+                stmt.execute("INSERT INTO TermStats (word, doc_count) " +
+                        "SELECT word, COUNT(DISTINCT doc_id) FROM InvertedIndex GROUP BY word");
+            }
             connection.commit();
         } catch (SQLException e) {
             throw new RuntimeException("Database initialization failed", e);
         }
     }
 
-    public void addDocuments(List<Map.Entry<String, Map<String, Tokenizer.Token>>> documents) {
-        int batchSize = 1000;
-        int totalBatches = (documents.size() + batchSize - 1) / batchSize;
-        
-        for (int batchNum = 0; batchNum < totalBatches; batchNum++) {
-            int start = batchNum * batchSize;
-            int end = Math.min(start + batchSize, documents.size());
-            List<Map.Entry<String, Map<String, Tokenizer.Token>>> currentBatch = documents.subList(start, end);
-            
-            System.out.println("Processing batch " + (batchNum + 1) + " of " + totalBatches + " (" + currentBatch.size() + " documents)");
-            
-            try {
-                // Process this batch
-                processBatch(currentBatch);
-                
-                // Clear references to allow garbage collection
-                currentBatch = null;
-                
-            } catch (SQLException e) {
-                System.err.println("SQL Error in batch " + (batchNum + 1) + ": " + e.getMessage());
-                e.printStackTrace();
-                throw new RuntimeException("Error processing batch " + (batchNum + 1) + ": " + e.getMessage(), e);
-            } catch (Exception e) {
-                System.err.println("Unexpected error in batch " + (batchNum + 1) + ": " + e.getMessage());
-                e.printStackTrace();
-                throw new RuntimeException("Unexpected error in batch " + (batchNum + 1) + ": " + e.getMessage(), e);
-            }
-        }
-        
-        // Update IDF once after all batches are processed
+    // Replaces the postings of one batch of tokenized documents and commits it. A document that was indexed
+    // before loses its old postings and positions first, so reindexing never duplicates them, and TermStats
+    // document frequencies move by the difference between the old and new words. The documents stay pending
+    // until markIndexed, so a run that stops before their segment is published indexes them again. Returns
+    // the words whose postings or document frequency changed, for updateIDF.
+    public Set<String> addBatch(List<TokenizedDocument> batch) throws SQLException {
+        Connection conn = getThreadConnection();
+        Map<String, Integer> documentFrequencyDelta = new HashMap<>();
         try {
-            System.out.println("Updating IDF for all words...");
-            updateIDF();
+            for (TokenizedDocument doc : batch) {
+                long docId = doc.getDocument().getId();
+                removePostings(conn, docId, documentFrequencyDelta);
+                insertPostings(conn, docId, doc.getTokens(), documentFrequencyDelta);
+            }
+            updateTermStats(conn, documentFrequencyDelta);
+            conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error updating IDF: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Error updating IDF: " + e.getMessage(), e);
+            conn.rollback();
+            throw e;
         }
+        return documentFrequencyDelta.keySet();
     }
-    
-    private void processBatch(List<Map.Entry<String, Map<String, Tokenizer.Token>>> batch) throws SQLException {
-        if (batch == null || batch.isEmpty()) {
-            throw new SQLException("Batch is null or empty");
-        }
 
-        Map<String, Long> urlToDocId = new ConcurrentHashMap<>();
-        int processors = Runtime.getRuntime().availableProcessors();
-        ExecutorService executor = Executors.newFixedThreadPool(processors);
-        List<CompletableFuture<Void>> idFutures = new ArrayList<>();
-        
-        // Process document IDs
-        String getDocId = "SELECT id FROM DocumentMetaData WHERE url = ?";
-        String insertDoc = "INSERT INTO DocumentMetaData (url, title) VALUES (?, ?)";
-        
-        for (Map.Entry<String, Map<String, Tokenizer.Token>> doc : batch) {
-            if (doc == null || doc.getKey() == null) {
-                throw new SQLException("Invalid document entry in batch");
+    // Marks documents indexed once their postings are in a published segment, each only if the crawler has
+    // not rewritten it since it was read
+    public void markIndexed(List<StoredDocument> documents) throws SQLException {
+        Connection conn = getThreadConnection();
+        try (PreparedStatement markIndexed = conn.prepareStatement(MARK_INDEXED)) {
+            for (StoredDocument document : documents) {
+                markIndexed.setLong(1, document.getId());
+                ContentStore.Pointer parsed = document.getParsed();
+                markIndexed.setObject(2, parsed != null ? parsed.getSegment() : null);
+                markIndexed.setObject(3, parsed != null ? parsed.getOffset() : null);
+                markIndexed.addBatch();
             }
+            markIndexed.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
 
-            final String url = doc.getKey();
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                Connection conn = null;
-                try {
-                    conn = getThreadConnection();
-                    conn.setAutoCommit(false);
-                    
-                    try (PreparedStatement getStmt = conn.prepareStatement(getDocId);
-                         PreparedStatement insertStmt = conn.prepareStatement(insertDoc, Statement.RETURN_GENERATED_KEYS)) {
-                        
-                        // Try to get existing document ID
-                        getStmt.setString(1, url);
-                        try (ResultSet rs = getStmt.executeQuery()) {
-                            if (rs.next()) {
-                                long existingId = rs.getLong(1);
-                                urlToDocId.put(url, existingId);
-                            } else {
-                                // Insert new document
-                                insertStmt.setString(1, url);
-                                insertStmt.setString(2, url);
-                                int affectedRows = insertStmt.executeUpdate();
-                                
-                                if (affectedRows == 0) {
-                                    throw new SQLException("Failed to insert document for URL: " + url);
-                                }
-                                
-                                try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
-                                    if (generatedKeys.next()) {
-                                        long newId = generatedKeys.getLong(1);
-                                        urlToDocId.put(url, newId);
-                                    } else {
-                                        throw new SQLException("Failed to get generated key for URL: " + url);
-                                    }
-                                }
-                            }
-                        }
-                        conn.commit();
-                    }
-                } catch (SQLException e) {
-                    System.err.println("SQL Error processing URL " + url + ": " + e.getMessage());
-                    if (conn != null) {
-                        try {
-                            conn.rollback();
-                        } catch (SQLException rollbackError) {
-                            System.err.println("Rollback failed for URL " + url + ": " + rollbackError.getMessage());
-                        }
-                    }
-                    throw new RuntimeException("Error processing document ID for URL " + url + ": " + e.getMessage(), e);
-                } finally {
-                    if (conn != null) {
-                        try {
-                            conn.close();
-                        } catch (SQLException e) {
-                            System.err.println("Error closing connection for URL " + url + ": " + e.getMessage());
-                        }
-                    }
+    private static void removePostings(Connection conn, long docId, Map<String, Integer> documentFrequencyDelta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT DISTINCT word FROM InvertedIndex WHERE doc_id = ?")) {
+            pstmt.setLong(1, docId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    documentFrequencyDelta.merge(rs.getString(1), -1, Integer::sum);
                 }
-            }, executor);
-            idFutures.add(future);
-        }
-        
-        // Wait for all document IDs to be processed
-        try {
-            CompletableFuture.allOf(idFutures.toArray(new CompletableFuture[0])).join();
-        } catch (Exception e) {
-            executor.shutdownNow();
-            throw new SQLException("Error waiting for document ID processing: " + e.getMessage(), e);
-        }
-        
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
-            throw new SQLException("Interrupted while waiting for document ID processing", e);
         }
-
-        // Verify all documents have IDs
-        for (Map.Entry<String, Map<String, Tokenizer.Token>> doc : batch) {
-            String url = doc.getKey();
-            if (!urlToDocId.containsKey(url)) {
-                System.err.println("Failed to get or create document ID for URL: " + url);
-                System.err.println("Current URL to ID mapping: " + urlToDocId);
-                throw new SQLException("Failed to get or create document ID for URL: " + url);
-            }
+        try (PreparedStatement positions = conn.prepareStatement(
+                "DELETE FROM WordPositions WHERE index_id IN (SELECT id FROM InvertedIndex WHERE doc_id = ?)");
+             PreparedStatement postings = conn.prepareStatement("DELETE FROM InvertedIndex WHERE doc_id = ?")) {
+            positions.setLong(1, docId);
+            positions.executeUpdate();
+            postings.setLong(1, docId);
+            postings.executeUpdate();
         }
-        
-        // Process tokens and positions in smaller sub-batches
-        int subBatchSize = 100; // Process 100 documents at a time for tokens and positions
-        for (int i = 0; i < batch.size(); i += subBatchSize) {
-            int end = Math.min(i + subBatchSize, batch.size());
-            List<Map.Entry<String, Map<String, Tokenizer.Token>>> subBatch = batch.subList(i, end);
-            
-            // Process tokens
-            String insertToken = """
-                INSERT INTO InvertedIndex (word, doc_id, frequency, importance)
-                VALUES (?, ?, ?, ?)
-            """;
-            
-            Map<String, Long> wordToIndexId = new HashMap<>();
-            try (PreparedStatement pstmt = getThreadConnection().prepareStatement(insertToken, Statement.RETURN_GENERATED_KEYS)) {
-                for (Map.Entry<String, Map<String, Tokenizer.Token>> doc : subBatch) {
-                    Long docId = urlToDocId.get(doc.getKey());
-                    if (docId == null) {
-                        throw new SQLException("Document ID is null for URL: " + doc.getKey());
-                    }
-                    
-                    for (Tokenizer.Token token : doc.getValue().values()) {
-                        pstmt.setString(1, token.getWord());
-                        pstmt.setLong(2, docId);
-                        pstmt.setDouble(3, token.getCount());
-                        pstmt.setDouble(4, getPositionWeight(token.getPosition()));
-                        pstmt.executeUpdate();
-                        
-                        try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                wordToIndexId.put(token.getWord() + "_" + docId, generatedKeys.getLong(1));
-                            } else {
-                                throw new SQLException("Failed to get generated key for word: " + token.getWord());
-                            }
-                        }
+    }
+
+    private void insertPostings(Connection conn, long docId, Map<String, Tokenizer.Token> tokens,
+                                Map<String, Integer> documentFrequencyDelta) throws SQLException {
+        String insertToken = """
+            INSERT INTO InvertedIndex (word, doc_id, frequency, importance)
+            VALUES (?, ?, ?, ?)
+        """;
+        String insertPosition = """
+            INSERT OR IGNORE INTO WordPositions (index_id, position)
+            VALUES (?, ?)
+        """;
+        try (PreparedStatement tokenStmt = conn.prepareStatement(insertToken, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement positionStmt = conn.prepareStatement(insertPosition)) {
+            for (Tokenizer.Token token : tokens.values()) {
+                tokenStmt.setString(1, token.getWord());
+                tokenStmt.setLong(2, docId);
+                tokenStmt.setDouble(3, token.getCount());
+                tokenStmt.setDouble(4, getPositionWeight(token.getPosition()));
+                tokenStmt.executeUpdate();
+                long indexId;
+                try (ResultSet generatedKeys = tokenStmt.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Failed to get generated key for word: " + token.getWord());
                     }
+                    indexId = generatedKeys.getLong(1);
+                }
+                documentFrequencyDelta.merge(token.getWord(), 1, Integer::sum);
+                for (Integer position : token.getPositions()) {
+                    positionStmt.setLong(1, indexId);
+                    positionStmt.setInt(2, position);
+                    positionStmt.addBatch();
                 }
             }
+            positionStmt.executeBatch();
+        }
+    }
 
-            // Process positions in even smaller batches
-            String insertPosition = """
-                INSERT OR IGNORE INTO WordPositions (index_id, position)
-                VALUES (?, ?)
-            """;
-            
-            try (PreparedStatement pstmt = getThreadConnection().prepareStatement(insertPosition)) {
-                int positionBatchSize = 0;
-                for (Map.Entry<String, Map<String, Tokenizer.Token>> doc : subBatch) {
-                    Long docId = urlToDocId.get(doc.getKey());
-                    if (docId == null) {
-                        throw new SQLException("Document ID is null for URL: " + doc.getKey());
-                    }
-                    
-                    for (Tokenizer.Token token : doc.getValue().values()) {
-                        Long indexId = wordToIndexId.get(token.getWord() + "_" + docId);
-                        if (indexId == null) {
-                            throw new SQLException("Index ID is null for word: " + token.getWord());
-                        }
-                        
-                        for (Integer position : token.getPositions()) {
-                            pstmt.setLong(1, indexId);
-                            pstmt.setInt(2, position);
-                            pstmt.addBatch();
-                            positionBatchSize++;
-                            
-                            if (positionBatchSize >= 1000) {
-                                pstmt.executeBatch();
-                                positionBatchSize = 0;
-                            }
-                        }
-                    }
+    // Words that went out of every document are dropped
+    private static void updateTermStats(Connection conn, Map<String, Integer> documentFrequencyDelta) throws SQLException {
+        try (PreparedStatement upsert = conn.prepareStatement("INSERT INTO TermStats (word, doc_count) VALUES (?, ?) " +
+                "ON CONFLICT(word) DO UPDATE SET doc_count = doc_count + excluded.doc_count");
+             PreparedStatement prune = conn.prepareStatement("DELETE FROM TermStats WHERE word = ? AND doc_count <= 0")) {
+            for (Map.Entry<String, Integer> entry : documentFrequencyDelta.entrySet()) {
+                if (entry.getValue() == 0) {
+                    continue;
                 }
-                if (positionBatchSize > 0) {
-                    pstmt.executeBatch();
+                upsert.setString(1, entry.getKey());
+                upsert.setInt(2, entry.getValue());
+                upsert.addBatch();
+                if (entry.getValue() < 0) {
+                    prune.setString(1, entry.getKey());
+                    prune.addBatch();
                 }
             }
-
-            // Clear references for this sub-batch
-            wordToIndexId.clear();
-            subBatch = null;
-            System.gc();
+            upsert.executeBatch();
+            prune.executeBatch();
         }
+    }
 
-        getThreadConnection().commit();
-        
-        // Clear all references
-        urlToDocId.clear();
-        batch = null;
-        System.gc();
+    // Makes the next index() run reindex every document, e.g. after a tokenizer change
+    public void markAllForReindex() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE DocumentMetaData SET needs_reindex = 1");
+        }
+        connection.commit();
     }
 
-    public void updateIDF() throws SQLException {
-        System.out.println("Starting IDF update...");
-        
-        // First, get total number of documents
-        String countDocs = "SELECT COUNT(*) FROM DocumentMetaData";
-        int totalDocs;
+    // Sets IDF on the postings of the given words from their TermStats document frequency. Other words keep
+    // the IDF computed against the document count of the last full pass, so once the number of indexed
+    // documents has moved more than IDF_REFRESH_RATIO away from that count, every word is updated instead.
+    public void updateIDF(Collection<String> words) throws SQLException {
+        int totalDocs = indexedDocumentCount();
+        long lastFullCount = 0;
         try (Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(countDocs)) {
-            rs.next();
-            totalDocs = rs.getInt(1);
-            System.out.println("Total documents: " + totalDocs);
+             ResultSet rs = stmt.executeQuery("SELECT value FROM IndexStats WHERE name = 'idf_documents'")) {
+            if (rs.next()) {
+                lastFullCount = rs.getLong(1);
+            }
+        }
+        if (lastFullCount == 0 || Math.abs(totalDocs - lastFullCount) > IDF_REFRESH_RATIO * lastFullCount) {
+            updateIDF();
+            return;
         }
-
-        // Get all unique words and their document counts in a single query
-        String getWordCounts = """
-            SELECT word, COUNT(DISTINCT doc_id) as doc_count
-            FROM InvertedIndex
-            GROUP BY word
-        """;
-
-        // Update IDF values in batches
         String updateIDF = """
             UPDATE InvertedIndex
-            SET IDF = -LOG(? * 1.0 / ?)
+            SET IDF = -LOG((SELECT doc_count FROM TermStats WHERE word = ?) * 1.0 / ?)
             WHERE word = ?
         """;
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(getWordCounts);
-             PreparedStatement updateStmt = connection.prepareStatement(updateIDF)) {
-            
-            int batchSize = 10000; // Increased batch size for IDF updates
-            int count = 0;
-            int totalUpdated = 0;
-            
-            while (rs.next()) {
-                String word = rs.getString("word");
-                int docCount = rs.getInt("doc_count");
-                
-                updateStmt.setInt(1, docCount);
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateIDF)) {
+            for (String word : words) {
+                updateStmt.setString(1, word);
                 updateStmt.setInt(2, totalDocs);
                 updateStmt.setString(3, word);
                 updateStmt.addBatch();
-                count++;
-                
-                if (count % batchSize == 0) {
-                    int[] results = updateStmt.executeBatch();
-                    totalUpdated += results.length;
-                    connection.commit();
-                    System.out.println("Updated " + totalUpdated + " words so far...");
-                }
-            }
-            
-            // Process remaining batch
-            if (count % batchSize != 0) {
-                int[] results = updateStmt.executeBatch();
-                totalUpdated += results.length;
-                connection.commit();
             }
-            
-            System.out.println("Updated IDF for " + totalUpdated + " words in total");
+            updateStmt.executeBatch();
         }
+        connection.commit();
+        System.out.println("Updated IDF for " + words.size() + " words");
+    }
 
+    // Recomputes IDF on every posting from TermStats
+    public void updateIDF() throws SQLException {
+        System.out.println("Starting IDF update...");
+        int totalDocs = indexedDocumentCount();
+        System.out.println("Total documents: " + totalDocs);
+        String updateIDF = """
+            UPDATE InvertedIndex
+            SET IDF = -LOG((SELECT doc_count FROM TermStats WHERE TermStats.word = InvertedIndex.word) * 1.0 / ?)
+        """;
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateIDF);
+             PreparedStatement statsStmt = connection.prepareStatement(
+                     "INSERT OR REPLACE INTO IndexStats (name, value) VALUES ('idf_documents', ?)")) {
+            updateStmt.setInt(1, totalDocs);
+            int updated = updateStmt.executeUpdate();
+            statsStmt.setInt(1, totalDocs);
+            statsStmt.executeUpdate();
+            connection.commit();
+            System.out.println("Updated IDF for " + updated + " postings in total");
+        }
         System.out.println("IDF update completed successfully");
     }
 
+    int indexedDocumentCount() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM DocumentMetaData WHERE indexed = 1")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
     private double getPositionWeight(String position) {
         return switch (position) {
             case "title" -> TITLE_WEIGHT;
@@ -415,21 +407,43 @@ public class SQLiteSearcher implements AutoCloseable {
         };
     }
 
-    public List<Map.Entry<String, String>> getAllDocuments() throws SQLException {
-        String sql = "SELECT url, html FROM DocumentMetaData";
-        List<Map.Entry<String, String>> results = new ArrayList<>();
-        
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String url = rs.getString("url");
-                String html = rs.getString("html");
-                results.add(Map.entry(url, html));
+    // Streams the DocumentMetaData rows that are new or changed since they were indexed through a cursor on a connection of its own, so memory does not
+    // depend on the number of documents and the rows can be read while another connection writes the index.
+    // WAL mode lets the read and the index commits run at the same time.
+    public void forEachDocument(DocumentConsumer consumer) throws SQLException, InterruptedException {
+        String sql = "SELECT id, url, html IS NOT NULL AND content_segment IS NULL AND parsed_segment IS NULL AS inline, " +
+                "content_segment, content_offset, content_length, parsed_segment, parsed_offset, parsed_length " +
+                "FROM DocumentMetaData WHERE indexed = 0 OR needs_reindex = 1";
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    consumer.accept(new StoredDocument(rs.getLong("id"), rs.getString("url"), ContentStore.Pointer.fromResultSet(rs, "parsed"), ContentStore.Pointer.fromResultSet(rs),
+                            rs.getBoolean("inline") ? inlineHtml(conn, rs.getLong("id")) : null));
+                }
+            }
+        }
+    }
+
+    private static String inlineHtml(Connection conn, long id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT html FROM DocumentMetaData WHERE id = ?")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
             }
         }
-        
-        return results;
+    }
+
+    // Parsed page of a document; rows crawled before parsed pages were stored are parsed from their HTML.
+    // Returns null for a row with no content at all.
+    public ParsedPage load(StoredDocument document) throws IOException {
+        if (document.parsed != null) {
+            return ParsedPage.fromBytes(contentStore.readBytes(document.parsed));
+        }
+        String html = document.content != null ? contentStore.read(document.content) : document.html;
+        return html != null ? ParsedPage.parse(html, document.url) : null;
     }
 
     public Connection getConnection() {
@@ -440,7 +454,7 @@ public class SQLiteSearcher implements AutoCloseable {
         Connection conn = threadLocalConnection.get();
         if (conn == null || conn.isClosed()) {
             synchronized (connectionLock) {
-                conn = DriverManager.getConnection("jdbc:sqlite:data/search_index.db");
+                conn = DriverManager.getConnection(dbUrl);
                 conn.setAutoCommit(false);
                 threadLocalConnection.set(conn);
             }
@@ -450,6 +464,7 @@ public class SQLiteSearcher implements AutoCloseable {
 
     @Override
     public void close() {
+        contentStore.close();
         try {
             connection.close();
         } catch (SQLException e) {
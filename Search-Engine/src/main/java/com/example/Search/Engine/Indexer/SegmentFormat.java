@@ -0,0 +1,98 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+// On-disk layout of an immutable index segment. A segment named segment-<n> is three files:
+//   .terms      term dictionary: one entry per term in sorted order, then the segment's document ids, then
+//               a table of entry offsets for binary search, then a fixed-size footer
+//   .postings   per term, its postings in document order: vint doc id delta, float frequency, byte importance
+//   .positions  per posting, its word positions: vint count, then vint deltas of the sorted positions
+// A dictionary entry is: vint term length, UTF-8 term, vint document frequency, vlong postings offset,
+// vint postings length, vlong positions offset, vint positions length. The footer is: int document count,
+// int term count, long document ids offset, long entry table offset, int version, int magic.
+// Doc ids and positions are delta-encoded varints (7 bits per byte, high bit set on all but the last byte),
+// so a posting costs 6-8 bytes and a position usually 1, against a table row with its own id and B-tree
+// entry per posting and per position.
+public final class SegmentFormat {
+    static final int MAGIC = 0x53454731; // "SEG1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8; // magic and version at the start of every file
+    static final int FOOTER_BYTES = 32;
+    static final String TERMS = ".terms";
+    static final String POSTINGS = ".postings";
+    static final String POSITIONS = ".positions";
+    private static final String PREFIX = "segment-";
+
+    // Tokenizer position classes, stored as the posting's importance byte
+    static final List<String> IMPORTANCE_CLASSES = List.of("content", "title", "h1", "h2", "h3", "h4", "h5", "h6");
+
+    private SegmentFormat() {
+    }
+
+    static byte importanceOf(String position) {
+        int code = IMPORTANCE_CLASSES.indexOf(position);
+        return (byte) Math.max(0, code);
+    }
+
+    static String positionOf(byte importance) {
+        return importance >= 0 && importance < IMPORTANCE_CLASSES.size() ? IMPORTANCE_CLASSES.get(importance) : "content";
+    }
+
+    public static String segmentName(long generation) {
+        return PREFIX + generation;
+    }
+
+    // One more than the highest segment generation in directory, so names are never reused
+    public static long nextGeneration(Path directory) throws IOException {
+        List<Long> generations = generations(directory);
+        return generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+    }
+
+    // Generations of the complete segments in directory, oldest first
+    public static List<Long> generations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(PREFIX) && name.endsWith(TERMS)) {
+                        try {
+                            generations.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - TERMS.length())));
+                        } catch (NumberFormatException ignored) {
+                            // Not a segment
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    static int readVInt(ByteBuffer in) {
+        int b = in.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    static long readVLong(ByteBuffer in) {
+        long b = in.get();
+        long value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
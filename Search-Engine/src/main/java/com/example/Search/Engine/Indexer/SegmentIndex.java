@@ -0,0 +1,155 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+
+// The live segments of an index directory read as one index. A document indexed again lands in a newer
+// segment, so each document is read from the newest segment holding it and its postings in older segments
+// are masked. An open index is a fixed snapshot: merges replace segments without disturbing it.
+public class SegmentIndex implements Closeable {
+    private static final int OPEN_ATTEMPTS = 3;
+    // Newest first
+    private final List<SegmentReader> segments;
+    // Per segment, the documents a newer segment holds, or null if there are none
+    private final List<BitSet> superseded;
+    private final int documentCount;
+
+    private SegmentIndex(List<SegmentReader> segments) throws IOException {
+        this.segments = segments;
+        this.superseded = new ArrayList<>(segments.size());
+        BitSet seen = new BitSet();
+        for (SegmentReader segment : segments) {
+            BitSet masked = null;
+            for (int docId : segment.documentIds()) {
+                if (seen.get(docId)) {
+                    if (masked == null) {
+                        masked = new BitSet();
+                    }
+                    masked.set(docId);
+                }
+                seen.set(docId);
+            }
+            superseded.add(masked);
+        }
+        this.documentCount = seen.cardinality();
+    }
+
+    public static SegmentIndex open(Path directory) throws IOException {
+        return open(directory, null);
+    }
+
+    // Opens the segments the manifest lists now, reusing the readers of previous for those it already had
+    // open. A segment merged away between reading the manifest and opening it means the manifest has changed
+    // since, so it is read again.
+    public static SegmentIndex open(Path directory, SegmentIndex previous) throws IOException {
+        Map<String, SegmentReader> open = new HashMap<>();
+        if (previous != null) {
+            previous.segments.forEach(segment -> open.put(segment.getName(), segment));
+        }
+        for (int attempt = 1; ; attempt++) {
+            List<String> names = SegmentManifest.read(directory);
+            List<SegmentReader> segments = new ArrayList<>(names.size());
+            try {
+                for (int i = names.size() - 1; i >= 0; i--) {
+                    SegmentReader segment = open.get(names.get(i));
+                    if (segment == null) {
+                        segment = SegmentReader.open(directory, names.get(i));
+                        open.put(segment.getName(), segment);
+                    }
+                    segments.add(segment);
+                }
+                return new SegmentIndex(segments);
+            } catch (NoSuchFileException e) {
+                if (attempt == OPEN_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    // Newest first
+    List<SegmentReader> segments() {
+        return segments;
+    }
+
+    // Documents of the index-th segment, newest first, that a newer segment holds; null if there are none
+    BitSet superseded(int index) {
+        return superseded.get(index);
+    }
+
+    // Number of distinct documents in the index
+    public int documentCount() {
+        return documentCount;
+    }
+
+    // The live postings of term across all segments, decoded into arrays; positions are decoded only if asked for
+    public TermPostings postings(String term, boolean withPositions) throws IOException {
+        List<SegmentReader.Postings> cursors = new ArrayList<>(segments.size());
+        int capacity = 0;
+        for (SegmentReader segment : segments) {
+            SegmentReader.Postings cursor = segment.postings(term);
+            cursors.add(cursor);
+            capacity += cursor == null ? 0 : cursor.documentFrequency();
+        }
+
+        int[] docIds = new int[capacity];
+        float[] frequencies = new float[capacity];
+        int[][] positions = withPositions ? new int[capacity][] : null;
+        int count = 0;
+        for (int s = 0; s < cursors.size(); s++) {
+            SegmentReader.Postings cursor = cursors.get(s);
+            if (cursor == null) {
+                continue;
+            }
+            BitSet masked = superseded.get(s);
+            while (cursor.next()) {
+                int docId = cursor.docId();
+                if (masked != null && masked.get(docId)) {
+                    continue;
+                }
+                docIds[count] = docId;
+                frequencies[count] = cursor.frequency();
+                if (withPositions) {
+                    positions[count] = cursor.positions();
+                }
+                count++;
+            }
+        }
+        if (count < capacity) {
+            docIds = Arrays.copyOf(docIds, count);
+            frequencies = Arrays.copyOf(frequencies, count);
+            positions = withPositions ? Arrays.copyOf(positions, count) : null;
+        }
+        return new TermPostings(docIds, frequencies, positions);
+    }
+
+    // Parallel arrays, one entry per document containing the term; documents are grouped by segment, not sorted
+    public static class TermPostings {
+        public final int[] docIds;
+        public final float[] frequencies;
+        // Sorted word positions per document, or null if positions were not requested
+        public final int[][] positions;
+
+        TermPostings(int[] docIds, float[] frequencies, int[][] positions) {
+            this.docIds = docIds;
+            this.frequencies = frequencies;
+            this.positions = positions;
+        }
+
+        public int documentFrequency() {
+            return docIds.length;
+        }
+    }
+
+    @Override
+    public void close() {
+        segments.forEach(SegmentReader::close);
+    }
+}
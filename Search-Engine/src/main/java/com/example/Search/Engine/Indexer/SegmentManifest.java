@@ -0,0 +1,119 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// The segments file of an index directory: the names of the live segments, one per line, oldest first. A
+// document in a later segment supersedes its postings in earlier ones, so the order, not the generation,
+// decides which copy is read; a merged segment takes the place of the run it replaces. The file is replaced
+// by an atomic rename, so a reader sees either the old set of segments or the new one. The first line holds a
+// version that every rewrite increments, so readers can tell two rewrites apart however close together they
+// land. Manifests without the line are read as version 0; directories written before there was a manifest
+// list their segments in generation order.
+// Updates are serialized within the process; one indexing process writes a directory at a time.
+public final class SegmentManifest {
+    static final String FILE_NAME = "segments";
+    private static final String VERSION_PREFIX = "version ";
+    private static long lastGeneration = 0;
+
+    private SegmentManifest() {
+    }
+
+    public static List<String> read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            List<String> names = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.startsWith(VERSION_PREFIX)) {
+                    names.add(line.trim());
+                }
+            }
+            return names;
+        }
+        List<String> names = new ArrayList<>();
+        for (long generation : SegmentFormat.generations(directory)) {
+            names.add(SegmentFormat.segmentName(generation));
+        }
+        return names;
+    }
+
+    // Increases whenever the set of live segments changes. Without a manifest it is the newest segment's
+    // generation, which the first manifest written then goes past.
+    public static long version(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            List<Long> generations = SegmentFormat.generations(directory);
+            return generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line != null && line.startsWith(VERSION_PREFIX) ? Long.parseLong(line.substring(VERSION_PREFIX.length()).trim()) : 0;
+        }
+    }
+
+    // A name no segment in directory has had, including segments still being written by this process
+    static synchronized String newSegmentName(Path directory) throws IOException {
+        lastGeneration = Math.max(lastGeneration + 1, SegmentFormat.nextGeneration(directory));
+        return SegmentFormat.segmentName(lastGeneration);
+    }
+
+    // Appends a newly written segment as the newest
+    static synchronized void add(Path directory, String name) throws IOException {
+        List<String> names = read(directory);
+        if (!names.contains(name)) {
+            names.add(name);
+        }
+        write(directory, names);
+    }
+
+    // Replaces the contiguous run merged with the segment merged into, or drops the run if merged is null.
+    // Returns false, changing nothing, if the run is no longer in the manifest as it was.
+    static synchronized boolean replace(Path directory, List<String> run, String merged) throws IOException {
+        List<String> names = read(directory);
+        int start = names.indexOf(run.get(0));
+        if (start < 0 || start + run.size() > names.size() || !names.subList(start, start + run.size()).equals(run)) {
+            return false;
+        }
+        names.subList(start, start + run.size()).clear();
+        if (merged != null) {
+            names.add(start, merged);
+        }
+        write(directory, names);
+        return true;
+    }
+
+    private static void write(Path directory, List<String> names) throws IOException {
+        Files.createDirectories(directory);
+        List<String> lines = new ArrayList<>(names.size() + 1);
+        lines.add(VERSION_PREFIX + (version(directory) + 1));
+        lines.addAll(names);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+    }
+
+    // Makes the rename durable; not every platform can open a directory to force it, and there it is skipped
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The rename is still atomic, only not yet on disk
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps the number of segments logarithmic in the size of the index by merging them in the background.
+// Merge policy, after Lucene's LogMergePolicy: a segment's level is the log base MERGE_FACTOR of its live
+// document count, and once MERGE_FACTOR adjacent segments share a level they are merged into one segment a
+// level up. Smaller segments between larger ones count at the larger ones' level, so the odd small flush does
+// not stall merging. Only adjacent segments are merged, which keeps the manifest order, and so which copy of
+// a reindexed document wins, unchanged. A segment more than MAX_SUPERSEDED_FRACTION superseded by newer
+// segments is rewritten on its own.
+// A merge streams the run's terms in sorted order, dropping the postings of superseded documents, writes the
+// result as a new segment and swaps it into the manifest in one rename. Readers keep the snapshot they opened.
+public class SegmentMerger implements AutoCloseable {
+    static final int MERGE_FACTOR = 10;
+    // Segments below this many documents all count as the lowest level
+    static final int MIN_MERGE_DOCUMENTS = 1_000;
+    // A level takes in the segments down to this far below its largest one
+    static final double LEVEL_SPAN = 0.75;
+    // Keeps each segment file well under the 2 GB a mapping can hold
+    static final int MAX_MERGED_DOCUMENTS = 2_000_000;
+    static final double MAX_SUPERSEDED_FRACTION = 0.5;
+
+    private final Path directory;
+    private final ExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private SegmentIndex snapshot;
+    private int merges = 0;
+
+    public SegmentMerger(Path directory) {
+        this.directory = directory;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-merge");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // Schedules merging until the policy finds nothing more to merge; calls while one is pending are coalesced
+    public void maybeMerge() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                scheduled.set(false);
+                try {
+                    while (mergeOnce()) {
+                        // Merging moves segments up a level, which may complete a run at the next one
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error merging index segments: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    public synchronized int mergeCount() {
+        return merges;
+    }
+
+    // Runs the next merge the policy picks; returns false if there was none
+    synchronized boolean mergeOnce() throws IOException {
+        snapshot = SegmentIndex.open(directory, snapshot);
+        List<SegmentReader> newestFirst = snapshot.segments();
+        int count = newestFirst.size();
+        int[] documents = new int[count];
+        int[] live = new int[count];
+        for (int i = 0; i < count; i++) {
+            // Manifest order, oldest first
+            SegmentReader segment = newestFirst.get(count - 1 - i);
+            BitSet superseded = snapshot.superseded(count - 1 - i);
+            documents[i] = segment.documentCount();
+            live[i] = segment.documentCount() - (superseded == null ? 0 : superseded.cardinality());
+        }
+        int[] run = findMerge(documents, live);
+        if (run == null) {
+            return false;
+        }
+
+        List<SegmentReader> segments = new ArrayList<>();
+        List<BitSet> superseded = new ArrayList<>();
+        for (int i = run[0]; i < run[1]; i++) {
+            segments.add(newestFirst.get(count - 1 - i));
+            superseded.add(snapshot.superseded(count - 1 - i));
+        }
+        merge(segments, superseded);
+        return true;
+    }
+
+    // Picks the run of segments to merge next as {from, to} indexes into the manifest order, or null.
+    // documents and live are each segment's document count with and without those newer segments supersede.
+    static int[] findMerge(int[] documents, int[] live) {
+        int count = live.length;
+        double[] levels = new double[count];
+        for (int i = 0; i < count; i++) {
+            levels[i] = Math.log(Math.max(live[i], MIN_MERGE_DOCUMENTS)) / Math.log(MERGE_FACTOR);
+        }
+        double lowestLevel = Math.log(MIN_MERGE_DOCUMENTS) / Math.log(MERGE_FACTOR);
+
+        int start = 0;
+        while (start < count) {
+            double maxLevel = levels[start];
+            for (int i = start + 1; i < count; i++) {
+                maxLevel = Math.max(maxLevel, levels[i]);
+            }
+            double levelBottom = maxLevel <= lowestLevel ? -1 : maxLevel - LEVEL_SPAN;
+            // The newest segment at this level closes it; everything older from start belongs to it
+            int upto = count - 1;
+            while (upto >= start && levels[upto] < levelBottom) {
+                upto--;
+            }
+            for (int from = start; from + MERGE_FACTOR <= upto + 1; from += MERGE_FACTOR) {
+                long total = 0;
+                for (int i = from; i < from + MERGE_FACTOR; i++) {
+                    total += live[i];
+                }
+                if (total <= MAX_MERGED_DOCUMENTS) {
+                    return new int[]{from, from + MERGE_FACTOR};
+                }
+            }
+            start = upto + 1;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (documents[i] > 0 && documents[i] - live[i] > MAX_SUPERSEDED_FRACTION * documents[i]) {
+                return new int[]{i, i + 1};
+            }
+        }
+        return null;
+    }
+
+    // Merges segments, oldest first and adjacent in the manifest, into one. superseded holds per segment the
+    // documents any newer segment has, inside the run or after it, or null.
+    private void merge(List<SegmentReader> segments, List<BitSet> superseded) throws IOException {
+        long startTime = System.nanoTime();
+        List<String> run = new ArrayList<>();
+        BitSet liveDocuments = new BitSet();
+        for (int s = 0; s < segments.size(); s++) {
+            run.add(segments.get(s).getName());
+            for (int docId : segments.get(s).documentIds()) {
+                if (superseded.get(s) == null || !superseded.get(s).get(docId)) {
+                    liveDocuments.set(docId);
+                }
+            }
+        }
+        int[] docIds = liveDocuments.stream().toArray();
+
+        String merged = null;
+        if (docIds.length > 0) {
+            merged = SegmentManifest.newSegmentName(directory);
+            SegmentWriter.writeFiles(directory, merged, docIds, new MergedTerms(segments, superseded));
+        }
+        if (!SegmentManifest.replace(directory, run, merged)) {
+            // Not expected with one merge thread and an indexer that only appends
+            System.err.println("Index segments " + run + " changed during merge, discarding " + merged);
+            if (merged != null) {
+                deleteSegment(directory, merged);
+            }
+            return;
+        }
+        merges++;
+        for (String name : run) {
+            deleteSegment(directory, name);
+        }
+        System.out.println("Merged " + run.size() + " index segments into " + (merged == null ? "none" : merged)
+                + " (" + docIds.length + " documents) in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    // On Linux an open mapping outlives the file, so readers still on an older snapshot are unaffected. Where
+    // the file cannot be deleted while mapped, it is left for deleteUnreferenced at the next start.
+    private static void deleteSegment(Path directory, String name) {
+        for (String extension : List.of(SegmentFormat.TERMS, SegmentFormat.POSTINGS, SegmentFormat.POSITIONS)) {
+            try {
+                Files.deleteIfExists(directory.resolve(name + extension));
+            } catch (IOException e) {
+                System.err.println("Error deleting " + name + extension + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Deletes segment files the manifest no longer lists, left by a crash or an earlier failed delete. Must
+    // run before this process starts writing segments, as it also removes partly written ones.
+    public static void deleteUnreferenced(Path directory) throws IOException {
+        if (!Files.exists(directory.resolve(SegmentManifest.FILE_NAME))) {
+            return;
+        }
+        Set<String> live = new HashSet<>(SegmentManifest.read(directory));
+        List<Path> stale = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (name.startsWith("segment-") && dot > 0 && (name.endsWith(".tmp") || !live.contains(name.substring(0, dot)))) {
+                    stale.add(file);
+                }
+            });
+        }
+        for (Path file : stale) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error deleting " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Union of the run's dictionaries in sorted term order, each term with its live postings in document order
+    private static class MergedTerms implements Iterator<Map.Entry<String, List<SegmentWriter.Posting>>> {
+        private final List<SegmentReader> segments;
+        private final List<BitSet> superseded;
+        private final int[] termIndexes;
+        private final String[] currentTerms;
+        private Map.Entry<String, List<SegmentWriter.Posting>> next;
+
+        MergedTerms(List<SegmentReader> segments, List<BitSet> superseded) throws IOException {
+            this.segments = segments;
+            this.superseded = superseded;
+            this.termIndexes = new int[segments.size()];
+            this.currentTerms = new String[segments.size()];
+            for (int s = 0; s < segments.size(); s++) {
+                currentTerms[s] = segments.get(s).termCount() > 0 ? segments.get(s).termAt(0) : null;
+            }
+            advance();
+        }
+
+        // Moves to the next term that still has a live posting
+        private void advance() throws IOException {
+            next = null;
+            while (next == null) {
+                String term = null;
+                for (String current : currentTerms) {
+                    if (current != null && (term == null || current.compareTo(term) < 0)) {
+                        term = current;
+                    }
+                }
+                if (term == null) {
+                    return;
+                }
+                List<SegmentWriter.Posting> postings = new ArrayList<>();
+                for (int s = 0; s < segments.size(); s++) {
+                    if (!term.equals(currentTerms[s])) {
+                        continue;
+                    }
+                    SegmentReader segment = segments.get(s);
+                    SegmentReader.Postings cursor = segment.postingsAt(termIndexes[s]);
+                    BitSet masked = superseded.get(s);
+                    while (cursor.next()) {
+                        if (masked == null || !masked.get(cursor.docId())) {
+                            postings.add(new SegmentWriter.Posting(cursor.docId(), cursor.frequency(),
+                                    cursor.importance(), cursor.positions()));
+                        }
+                    }
+                    termIndexes[s]++;
+                    currentTerms[s] = termIndexes[s] < segment.termCount() ? segment.termAt(termIndexes[s]) : null;
+                }
+                if (!postings.isEmpty()) {
+                    // Each live document is in exactly one segment of the run
+                    postings.sort(Comparator.comparingInt(posting -> posting.docId));
+                    next = Map.entry(term, postings);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, List<SegmentWriter.Posting>> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, List<SegmentWriter.Posting>> result = next;
+            try {
+                advance();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading index segment: " + e.getMessage(), e);
+            }
+            return result;
+        }
+    }
+
+    // Waits for a running merge to finish; a merge cut short would only leave files for deleteUnreferenced
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
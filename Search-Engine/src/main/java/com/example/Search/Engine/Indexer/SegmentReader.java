@@ -0,0 +1,235 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads one segment written by SegmentWriter. The three files are memory-mapped, so a term lookup is a binary
+// search over the dictionary's entry table in the page cache, and a term's postings and positions are slices
+// of the mappings decoded as they are iterated, with no copy and no system call. Thread-safe: all reads are
+// absolute or go through per-call slices.
+public class SegmentReader implements Closeable {
+    private final String name;
+    private final ByteBuffer terms;
+    private final ByteBuffer postings;
+    private final ByteBuffer positions;
+    private final int documentCount;
+    private final int termCount;
+    private final long docIdsOffset;
+    private final long indexOffset;
+
+    private SegmentReader(String name, ByteBuffer terms, ByteBuffer postings, ByteBuffer positions) throws IOException {
+        this.name = name;
+        this.terms = terms;
+        this.postings = postings;
+        this.positions = positions;
+        if (terms.capacity() < SegmentFormat.HEADER_BYTES + SegmentFormat.FOOTER_BYTES) {
+            throw new IOException("Segment file truncated: " + name);
+        }
+        ByteBuffer footer = read(terms, terms.capacity() - SegmentFormat.FOOTER_BYTES, SegmentFormat.FOOTER_BYTES);
+        documentCount = footer.getInt();
+        termCount = footer.getInt();
+        docIdsOffset = footer.getLong();
+        indexOffset = footer.getLong();
+        int version = footer.getInt();
+        if (footer.getInt() != SegmentFormat.MAGIC || version != SegmentFormat.VERSION) {
+            throw new IOException("Not a version " + SegmentFormat.VERSION + " segment: " + name);
+        }
+    }
+
+    public static SegmentReader open(Path directory, String name) throws IOException {
+        return new SegmentReader(name,
+                map(directory.resolve(name + SegmentFormat.TERMS)),
+                map(directory.resolve(name + SegmentFormat.POSTINGS)),
+                map(directory.resolve(name + SegmentFormat.POSITIONS)));
+    }
+
+    // The mapping stays valid after the channel is closed, and is released when the buffer is collected
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment file larger than 2 GB: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    // Sorted ids of the documents in this segment, including those without any term
+    public int[] documentIds() throws IOException {
+        ByteBuffer in = read(terms, docIdsOffset, (int) (indexOffset - docIdsOffset));
+        int[] ids = new int[documentCount];
+        int docId = 0;
+        for (int i = 0; i < documentCount; i++) {
+            docId += SegmentFormat.readVInt(in);
+            ids[i] = docId;
+        }
+        return ids;
+    }
+
+    // Number of documents containing term, 0 if none
+    public int documentFrequency(String term) throws IOException {
+        ByteBuffer entry = findEntry(term);
+        return entry == null ? 0 : SegmentFormat.readVInt(entry);
+    }
+
+    // Postings of term in document order, or null if no document in this segment contains it
+    public Postings postings(String term) throws IOException {
+        ByteBuffer entry = findEntry(term);
+        return entry == null ? null : postings(entry);
+    }
+
+    // The index-th term in sorted order, for walking the whole dictionary
+    String termAt(int index) throws IOException {
+        return readTerm(entry(index));
+    }
+
+    Postings postingsAt(int index) throws IOException {
+        ByteBuffer entry = entry(index);
+        readTerm(entry);
+        return postings(entry);
+    }
+
+    private Postings postings(ByteBuffer entry) throws IOException {
+        int documentFrequency = SegmentFormat.readVInt(entry);
+        long postingsOffset = SegmentFormat.readVLong(entry);
+        int postingsLength = SegmentFormat.readVInt(entry);
+        long positionsOffset = SegmentFormat.readVLong(entry);
+        int positionsLength = SegmentFormat.readVInt(entry);
+        return new Postings(documentFrequency, read(postings, postingsOffset, postingsLength),
+                read(positions, positionsOffset, positionsLength));
+    }
+
+    // Binary search of the entry table; returns the entry positioned after its term, or null
+    private ByteBuffer findEntry(String term) throws IOException {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            ByteBuffer entry = entry(middle);
+            int compare = readTerm(entry).compareTo(term);
+            if (compare == 0) {
+                return entry;
+            } else if (compare < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return null;
+    }
+
+    private static String readTerm(ByteBuffer entry) {
+        byte[] bytes = new byte[SegmentFormat.readVInt(entry)];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer entry(int index) throws IOException {
+        int table = (int) indexOffset + 8 * index;
+        long start = terms.getLong(table);
+        long end = index + 1 < termCount ? terms.getLong(table + 8) : docIdsOffset;
+        return read(terms, start, (int) (end - start));
+    }
+
+    private static ByteBuffer read(ByteBuffer file, long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > file.capacity()) {
+            throw new IOException("Segment file truncated");
+        }
+        return file.slice((int) offset, length);
+    }
+
+    // Cursor over one term's postings: call next() before reading each posting
+    public static class Postings {
+        private final int documentFrequency;
+        private final ByteBuffer postings;
+        private final ByteBuffer positions;
+        private int remaining;
+        private int docId = 0;
+        private float frequency;
+        private byte importance;
+        private boolean positionsRead = true;
+
+        Postings(int documentFrequency, ByteBuffer postings, ByteBuffer positions) {
+            this.documentFrequency = documentFrequency;
+            this.postings = postings;
+            this.positions = positions;
+            this.remaining = documentFrequency;
+        }
+
+        public int documentFrequency() {
+            return documentFrequency;
+        }
+
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            if (!positionsRead) {
+                skipPositions();
+            }
+            remaining--;
+            docId += SegmentFormat.readVInt(postings);
+            frequency = postings.getFloat();
+            importance = postings.get();
+            positionsRead = false;
+            return true;
+        }
+
+        public int docId() {
+            return docId;
+        }
+
+        public float frequency() {
+            return frequency;
+        }
+
+        byte importance() {
+            return importance;
+        }
+
+        // Tokenizer position class ("title", "h1", ... or "content") the word carried most weight in
+        public String position() {
+            return SegmentFormat.positionOf(importance);
+        }
+
+        // Sorted word positions of the current posting; may be called once per posting
+        public int[] positions() {
+            int[] result = new int[SegmentFormat.readVInt(positions)];
+            int position = 0;
+            for (int i = 0; i < result.length; i++) {
+                position += SegmentFormat.readVInt(positions);
+                result[i] = position;
+            }
+            positionsRead = true;
+            return result;
+        }
+
+        private void skipPositions() {
+            int count = SegmentFormat.readVInt(positions);
+            for (int i = 0; i < count; i++) {
+                SegmentFormat.readVInt(positions);
+            }
+        }
+    }
+
+    // Nothing to release eagerly: the mappings go with the last reference to this reader
+    @Override
+    public void close() {
+    }
+}
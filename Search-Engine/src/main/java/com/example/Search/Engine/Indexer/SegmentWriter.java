@@ -0,0 +1,229 @@
+package com.example.Search.Engine.Indexer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Collects the tokenized documents of an index run in memory and writes them out as one immutable segment
+// (see SegmentFormat). The caller bounds memory by writing a segment every so many documents.
+public class SegmentWriter {
+    private final Map<String, List<Posting>> postings = new HashMap<>();
+    private int[] documents = new int[1024];
+    private int documentCount = 0;
+    private long postingCount = 0;
+
+    static class Posting {
+        final int docId;
+        final float frequency;
+        final byte importance;
+        // Sorted and distinct
+        final int[] positions;
+
+        Posting(int docId, float frequency, byte importance, int[] positions) {
+            this.docId = docId;
+            this.frequency = frequency;
+            this.importance = importance;
+            this.positions = positions;
+        }
+    }
+
+    public void addDocument(int docId, Map<String, Tokenizer.Token> tokens) {
+        if (documentCount == documents.length) {
+            documents = Arrays.copyOf(documents, documentCount * 2);
+        }
+        documents[documentCount++] = docId;
+        for (Tokenizer.Token token : tokens.values()) {
+            int[] positions = token.getPositions().stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+            postings.computeIfAbsent(token.getWord(), word -> new ArrayList<>()).add(new Posting(docId,
+                    (float) token.getCount(), SegmentFormat.importanceOf(token.getPosition()), positions));
+            postingCount++;
+        }
+    }
+
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public long postingCount() {
+        return postingCount;
+    }
+
+    public boolean isEmpty() {
+        return documentCount == 0;
+    }
+
+    // Writes the buffered documents as segment name in directory, then clears the buffer
+    public void write(Path directory, String name) throws IOException {
+        List<String> terms = new ArrayList<>(postings.keySet());
+        Collections.sort(terms);
+        int[] docIds = Arrays.stream(documents, 0, documentCount).sorted().distinct().toArray();
+        Iterator<String> termIterator = terms.iterator();
+        writeFiles(directory, name, docIds, new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return termIterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, List<Posting>> next() {
+                String term = termIterator.next();
+                List<Posting> list = postings.get(term);
+                list.sort(Comparator.comparingInt(posting -> posting.docId));
+                return Map.entry(term, list);
+            }
+        });
+
+        postings.clear();
+        documentCount = 0;
+        postingCount = 0;
+    }
+
+    // Writes a segment from sorted document ids and terms given in sorted order, each with its postings in
+    // document order; terms are pulled one at a time so a merge never holds more than one posting list. The
+    // files are written under temporary names, forced to disk and renamed, the terms file last, so a segment
+    // is never seen half written, even by a manifest that survived a crash the segment's data did not.
+    static void writeFiles(Path directory, String name, int[] docIds, Iterator<Map.Entry<String, List<Posting>>> terms) throws IOException {
+        Files.createDirectories(directory);
+        Path termsFile = directory.resolve(name + SegmentFormat.TERMS);
+        Path postingsFile = directory.resolve(name + SegmentFormat.POSTINGS);
+        Path positionsFile = directory.resolve(name + SegmentFormat.POSITIONS);
+        Path termsTemp = directory.resolve(name + SegmentFormat.TERMS + ".tmp");
+        Path postingsTemp = directory.resolve(name + SegmentFormat.POSTINGS + ".tmp");
+        Path positionsTemp = directory.resolve(name + SegmentFormat.POSITIONS + ".tmp");
+
+        try (Output termsOut = new Output(termsTemp);
+             Output postingsOut = new Output(postingsTemp);
+             Output positionsOut = new Output(positionsTemp)) {
+            long[] entryOffsets = new long[1024];
+            int termCount = 0;
+            while (terms.hasNext()) {
+                Map.Entry<String, List<Posting>> term = terms.next();
+                List<Posting> list = term.getValue();
+                long postingsStart = postingsOut.position();
+                long positionsStart = positionsOut.position();
+                int previousDoc = 0;
+                for (Posting posting : list) {
+                    postingsOut.writeVInt(posting.docId - previousDoc);
+                    postingsOut.writeFloat(posting.frequency);
+                    postingsOut.writeByte(posting.importance);
+                    previousDoc = posting.docId;
+                    positionsOut.writeVInt(posting.positions.length);
+                    int previousPosition = 0;
+                    for (int position : posting.positions) {
+                        positionsOut.writeVInt(position - previousPosition);
+                        previousPosition = position;
+                    }
+                }
+
+                if (termCount == entryOffsets.length) {
+                    entryOffsets = Arrays.copyOf(entryOffsets, termCount * 2);
+                }
+                entryOffsets[termCount++] = termsOut.position();
+                byte[] bytes = term.getKey().getBytes(StandardCharsets.UTF_8);
+                termsOut.writeVInt(bytes.length);
+                termsOut.writeBytes(bytes);
+                termsOut.writeVInt(list.size());
+                termsOut.writeVLong(postingsStart);
+                termsOut.writeVInt((int) (postingsOut.position() - postingsStart));
+                termsOut.writeVLong(positionsStart);
+                termsOut.writeVInt((int) (positionsOut.position() - positionsStart));
+            }
+
+            long docIdsOffset = termsOut.position();
+            int previousDoc = 0;
+            for (int docId : docIds) {
+                termsOut.writeVInt(docId - previousDoc);
+                previousDoc = docId;
+            }
+            long indexOffset = termsOut.position();
+            for (int t = 0; t < termCount; t++) {
+                termsOut.writeLong(entryOffsets[t]);
+            }
+            termsOut.writeInt(docIds.length);
+            termsOut.writeInt(termCount);
+            termsOut.writeLong(docIdsOffset);
+            termsOut.writeLong(indexOffset);
+            termsOut.writeInt(SegmentFormat.VERSION);
+            termsOut.writeInt(SegmentFormat.MAGIC);
+        }
+        Files.move(postingsTemp, postingsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(positionsTemp, positionsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(termsTemp, termsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Buffered big-endian output that tracks its position, with varint encoding; closing it forces the file to disk
+    private static class Output implements Closeable {
+        private final FileChannel channel;
+        private final OutputStream out;
+        private long position = 0;
+
+        Output(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            writeInt(SegmentFormat.MAGIC);
+            writeInt(SegmentFormat.VERSION);
+        }
+
+        long position() {
+            return position;
+        }
+
+        void writeByte(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        void writeInt(int value) throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeFloat(float value) throws IOException {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        void writeVInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeVLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (out) {
+                out.flush();
+                channel.force(false);
+            }
+        }
+    }
+}
@@ -4,14 +4,10 @@ import java.io.*;
 import java.util.*;
 import java.util.regex.Pattern;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.springframework.stereotype.Component;
 import org.springframework.core.io.ClassPathResource;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import com.example.Search.Engine.Data.ParsedPage;
 import com.example.Search.Engine.QP.Stemmer;
-import java.util.stream.IntStream;
 
 //Component responsible for tokenizing text and HTML documents.
 //Handles stopword removal, word validation, and position-based weighting.
@@ -122,112 +118,37 @@ public class Tokenizer {
             (!removeStopWords || !stopWords.contains(word));
     }
 
-    //Tokenizes an HTML document, processing different elements with appropriate weights.
-    public Map<String, Token> tokenizeDocument(Document doc) {
-        ConcurrentHashMap<String, Token> tokens = new ConcurrentHashMap<>();
-        AtomicInteger totalTokens = new AtomicInteger(0);
-
-        CompletableFuture<Void> titleFuture = CompletableFuture.runAsync(() -> {
-            String title = doc.title();
-            if (title != null && !title.isEmpty()) {
-                processText(title, tokens, "title");
-                totalTokens.addAndGet(countTokens(title));
-            }
-        });
-
-        CompletableFuture<Void> headersFuture = CompletableFuture.runAsync(() -> {
-            // Process all header levels
-            IntStream.rangeClosed(1, 6).forEach(i -> {
-                Elements headers = doc.select("h" + i);
-                if (!headers.isEmpty()) {
-                    headers.parallelStream().forEach(header -> {
-                        String text = header.text();
-                        if (!text.isEmpty()) {
-                            processText(text, tokens, "h" + i);
-                            totalTokens.addAndGet(countTokens(text));
-                        }
-                    });
-                }
-            });
-        });
-
-        CompletableFuture<Void> contentFuture = CompletableFuture.runAsync(() -> {
-            // Process paragraphs
-            Elements paragraphs = doc.select("p");
-            if (!paragraphs.isEmpty()) {
-                paragraphs.parallelStream().forEach(p -> {
-                    String text = p.text();
-                    if (!text.isEmpty()) {
-                        processText(text, tokens, "content");
-                        totalTokens.addAndGet(countTokens(text));
-                    }
-                });
-            }
-
-            // Process divs with text content
-            Elements divs = doc.select("div");
-            if (!divs.isEmpty()) {
-                divs.parallelStream().forEach(div -> {
-                    String text = div.text();
-                    if (!text.isEmpty()) {
-                        processText(text, tokens, "content");
-                        totalTokens.addAndGet(countTokens(text));
-                    }
-                });
-            }
-
-            // Process list items
-            Elements listItems = doc.select("li");
-            if (!listItems.isEmpty()) {
-                listItems.parallelStream().forEach(li -> {
-                    String text = li.text();
-                    if (!text.isEmpty()) {
-                        processText(text, tokens, "content");
-                        totalTokens.addAndGet(countTokens(text));
-                    }
-                });
-            }
-
-            // Process spans
-            Elements spans = doc.select("span");
-            if (!spans.isEmpty()) {
-                spans.parallelStream().forEach(span -> {
-                    String text = span.text();
-                    if (!text.isEmpty()) {
-                        processText(text, tokens, "content");
-                        totalTokens.addAndGet(countTokens(text));
-                    }
-                });
-            }
-
-            // Process articles and sections
-            Elements articles = doc.select("article, section");
-            if (!articles.isEmpty()) {
-                articles.parallelStream().forEach(article -> {
-                    String text = article.text();
-                    if (!text.isEmpty()) {
-                        processText(text, tokens, "content");
-                        totalTokens.addAndGet(countTokens(text));
-                    }
-                });
+    //Tokenizes a parsed page: the title, every heading block at its level's weight and every content block.
+    //Each block is tokenized once, so text nested in several elements is no longer counted several times.
+    public Map<String, Token> tokenizeParsedPage(ParsedPage page) {
+        Map<String, Token> tokens = new HashMap<>();
+        int totalTokens = 0;
+        String title = page.getTitle();
+        if (title != null && !title.isEmpty()) {
+            totalTokens += processText(title, tokens, "title");
+        }
+        for (ParsedPage.Block block : page.getBlocks()) {
+            String position = block.getKind() == ParsedPage.CONTENT ? "content" : "h" + block.getKind();
+            totalTokens += processText(block.getText(), tokens, position);
+        }
+        if (totalTokens > 0) {
+            for (Token token : tokens.values()) {
+                token.setCount(token.getCount() / totalTokens);
             }
-        });
-
-        CompletableFuture.allOf(titleFuture, headersFuture, contentFuture).join();
-
-        int finalTotalTokens = totalTokens.get();
-        if (finalTotalTokens > 0) {
-            tokens.values().parallelStream().forEach(token -> 
-                token.setCount(token.getCount() / finalTotalTokens));
         }
+        return tokens;
+    }
 
-        return new HashMap<>(tokens);
+    //Tokenizes an HTML document, processing different elements with appropriate weights.
+    public Map<String, Token> tokenizeDocument(Document doc) {
+        return tokenizeParsedPage(ParsedPage.fromDocument(doc, 0));
     }
 
-    private void processText(String text, ConcurrentHashMap<String, Token> tokens, String position) {
+    //Adds the words of text to tokens and returns how many of them count towards the document's total
+    private int processText(String text, Map<String, Token> tokens, String position) {
         List<String> words = tokenizeString(text, true);
         if (words.isEmpty()) {
-            return;
+            return 0;
         }
         
         double positionWeight = getPositionWeight(position);
@@ -250,12 +171,7 @@ public class Tokenizer {
                 }
             });
         }
-    }
-
-    private int countTokens(String text) {
-        return (int) tokenizeString(text, true).stream()
-            .filter(word -> isValidWord(word, true))
-            .count();
+        return (int) words.stream().filter(word -> isValidWord(word, true)).count();
     }
 
     private double getPositionWeight(String position) {
@@ -1,38 +1,23 @@
 package com.example.Search.Engine.QP;
 
-import com.example.Search.Engine.Data.DataBaseManager;
+import com.example.Search.Engine.Indexer.Indexer;
+import com.example.Search.Engine.Indexer.SegmentIndex;
+import com.example.Search.Engine.Indexer.SegmentManifest;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
+// Answers word and phrase queries from the memory-mapped index segments the Indexer writes, so a lookup is a
+// binary search and a decode of the posting lists, with no database round trip
 public class QueryIndex {
 
-    private static final int DB_THREAD_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
-    private static final ExecutorService dbExecutor = Executors.newFixedThreadPool(DB_THREAD_POOL_SIZE);
-    private static final int BATCH_SIZE = 3; // Number of words per query batch
+    private static final Path INDEX_DIRECTORY = Indexer.SEGMENT_DIRECTORY;
     private static final boolean DEBUG = false; // Toggle for logging
 
-    static {
-        // Ensure dbExecutor shutdown on JVM exit
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            dbExecutor.shutdown();
-            try {
-                if (!dbExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    dbExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                dbExecutor.shutdownNow();
-            }
-        }));
-    }
+    private static SegmentIndex segmentIndex;
+    private static long segmentIndexVersion;
 
     public static class DocumentData {
         private final int docId;
@@ -91,89 +76,73 @@ public class QueryIndex {
     private static class WordData {
         final String word; // Stemmed word
         final String originalWord; // Original query word
-        final int indexId;
         final double idf;
         final double frequency;
+        final int[] positions; // Sorted
 
-        WordData(String word, String originalWord, int indexId, double idf, double frequency) {
+        WordData(String word, String originalWord, double idf, double frequency, int[] positions) {
             this.word = word;
             this.originalWord = originalWord;
-            this.indexId = indexId;
             this.idf = idf;
             this.frequency = frequency;
+            this.positions = positions;
         }
 
         @Override
         public String toString() {
-            return "WordData{word=" + word + ", originalWord=" + originalWord + ", indexId=" + indexId + ", idf=" + idf + ", frequency=" + frequency + "}";
+            return "WordData{word=" + word + ", originalWord=" + originalWord + ", idf=" + idf + ", frequency=" + frequency + ", positions=" + positions.length + "}";
         }
     }
 
     private static final Map<String, QueryResult> phraseQueryCache = new HashMap<>();
 
+    // The index over the current segments, reopened on the first query after the indexer or a merge replaces
+    // the manifest; segments that did not change keep their open readers. A query holds the index it started
+    // with, which stays readable after its segments are merged away.
+    private static synchronized SegmentIndex segmentIndex() throws IOException {
+        long version = SegmentManifest.version(INDEX_DIRECTORY);
+        if (segmentIndex == null || version != segmentIndexVersion) {
+            segmentIndex = SegmentIndex.open(INDEX_DIRECTORY, segmentIndex);
+            segmentIndexVersion = version;
+            phraseQueryCache.clear();
+            System.out.println("QueryIndex: Opened " + segmentIndex.segmentCount() + " index segments with "
+                    + segmentIndex.documentCount() + " documents");
+        }
+        return segmentIndex;
+    }
+
+    // Same base-10 IDF the Indexer used to store per posting, taken from the live document frequency
+    private static double idf(int documentFrequency, int totalDocuments) {
+        return -Math.log10(documentFrequency * 1.0 / totalDocuments);
+    }
+
     public static QueryResult queryWords(Set<String> words, Map<String, String> stemToOriginal) throws SQLException {
         if (words == null || words.isEmpty()) {
             if (DEBUG) System.out.println("QueryIndex: No words provided, returning empty result");
             return new QueryResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyMap());
         }
 
-        // Split words into batches
-        List<List<String>> batches = new ArrayList<>();
-        List<String> wordList = new ArrayList<>(words);
-        for (int i = 0; i < wordList.size(); i += BATCH_SIZE) {
-            batches.add(wordList.subList(i, Math.min(i + BATCH_SIZE, wordList.size())));
-        }
-
-        // Parallel query for each batch
-        List<CompletableFuture<Map<Integer, Map<String, List<Double>>>>> futures = batches.stream()
-                .map(batch -> CompletableFuture.supplyAsync(() -> {
-                    String baseSql = "SELECT word, doc_id, frequency, IDF FROM InvertedIndex WHERE word IN (";
-                    String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
-                    String indexSql = baseSql + placeholders + ")";
-                    Map<Integer, Map<String, List<Double>>> batchDocWordInfo = new HashMap<>();
-                    try (Connection conn = DataBaseManager.getConnection();
-                         PreparedStatement pstmt = conn.prepareStatement(indexSql)) {
-                        int index = 1;
-                        for (String word : batch) {
-                            pstmt.setString(index++, word);
-                        }
-                        try (ResultSet rs = pstmt.executeQuery()) {
-                            while (rs.next()) {
-                                String stemmedWord = rs.getString("word");
-                                int docId = rs.getInt("doc_id");
-                                double idf = rs.getDouble("IDF");
-                                double frequency = rs.getDouble("frequency");
-
-                                if (stemmedWord == null) {
-                                    if (DEBUG) System.err.println("QueryIndex: Null word in ResultSet for docId: " + docId);
-                                    continue;
-                                }
-                                String originalWord = stemToOriginal.getOrDefault(stemmedWord, stemmedWord);
-                                if (originalWord == null) {
-                                    if (DEBUG) System.err.println("QueryIndex: No original word for stem: " + stemmedWord);
-                                    continue;
-                                }
-
-                                batchDocWordInfo.computeIfAbsent(docId, k -> new HashMap<>());
-                                batchDocWordInfo.get(docId).put(originalWord, Arrays.asList(frequency, idf));
-                            }
-                        }
-                    } catch (SQLException e) {
-                        throw new RuntimeException("QueryIndex: SQL error in batch: " + e.getMessage(), e);
-                    }
-                    return batchDocWordInfo;
-                }, dbExecutor))
-                .collect(Collectors.toList());
-
-        // Merge results
         Map<Integer, Map<String, List<Double>>> docWordInfo = new HashMap<>();
-        for (CompletableFuture<Map<Integer, Map<String, List<Double>>>> future : futures) {
-            Map<Integer, Map<String, List<Double>>> batchResult = future.join();
-            for (Map.Entry<Integer, Map<String, List<Double>>> entry : batchResult.entrySet()) {
-                int docId = entry.getKey();
-                Map<String, List<Double>> wordInfo = entry.getValue();
-                docWordInfo.computeIfAbsent(docId, k -> new HashMap<>()).putAll(wordInfo);
+        try {
+            SegmentIndex index = segmentIndex();
+            for (String stemmedWord : words) {
+                SegmentIndex.TermPostings postings = index.postings(stemmedWord, false);
+                if (postings.documentFrequency() == 0) {
+                    continue;
+                }
+                String originalWord = stemToOriginal.getOrDefault(stemmedWord, stemmedWord);
+                if (originalWord == null) {
+                    if (DEBUG) System.err.println("QueryIndex: No original word for stem: " + stemmedWord);
+                    continue;
+                }
+                double idf = idf(postings.documentFrequency(), index.documentCount());
+                for (int i = 0; i < postings.docIds.length; i++) {
+                    docWordInfo.computeIfAbsent(postings.docIds[i], k -> new HashMap<>())
+                            .put(originalWord, Arrays.asList((double) postings.frequencies[i], idf));
+                }
             }
+        } catch (IOException e) {
+            throw new RuntimeException("QueryIndex: Index read error: " + e.getMessage(), e);
         }
 
         // Build DocumentData list
@@ -195,6 +164,13 @@ public class QueryIndex {
             return new QueryResult(new ArrayList<>(), new ArrayList<>(originalWords), new HashMap<>());
         }
 
+        SegmentIndex index;
+        try {
+            index = segmentIndex();
+        } catch (IOException e) {
+            throw new RuntimeException("QueryIndex: Index read error: " + e.getMessage(), e);
+        }
+
         // Check cache
         String cacheKey = words.toString();
         if (phraseQueryCache.containsKey(cacheKey)) {
@@ -220,112 +196,47 @@ public class QueryIndex {
             stemToOriginal.put(wordList.get(i), originalWordList.get(i));
         }
 
-        try (Connection conn = DataBaseManager.getConnection()) {
-            // Optimized SQL query to fetch documents with all words
-            String indexSql = "SELECT word, doc_id, IDF, frequency, id AS index_id FROM InvertedIndex WHERE word IN ("
-                    + String.join(",", Collections.nCopies(words.size(), "?"))
-                    + ") AND doc_id IN (SELECT doc_id FROM InvertedIndex WHERE word IN ("
-                    + String.join(",", Collections.nCopies(words.size(), "?"))
-                    + ") GROUP BY doc_id HAVING COUNT(DISTINCT word) = ?) ORDER BY doc_id";
-            Map<Integer, Map<String, WordData>> docWordData = new HashMap<>();
-            try (PreparedStatement pstmt = conn.prepareStatement(indexSql)) {
-                int index = 1;
-                for (String word : words) {
-                    pstmt.setString(index++, word);
-                }
-                for (String word : words) {
-                    pstmt.setString(index++, word);
-                }
-                pstmt.setInt(index, words.size());
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        String stemmedWord = rs.getString("word");
-                        int docId = rs.getInt("doc_id");
-                        double idf = rs.getDouble("IDF");
-                        double frequency = rs.getDouble("frequency");
-                        int indexId = rs.getInt("index_id");
-
-                        if (stemmedWord == null) {
-                            System.err.println("QueryIndex: Null word in ResultSet for docId: " + docId);
-                            continue;
-                        }
-                        String originalWord = stemToOriginal.getOrDefault(stemmedWord, stemmedWord);
-                        if (originalWord == null) {
-                            System.err.println("QueryIndex: No original word for stem: " + stemmedWord);
-                            continue;
-                        }
-
-                        WordData wordData = new WordData(stemmedWord, originalWord, indexId, idf, frequency);
-                        System.out.println("QueryIndex: Created WordData: " + wordData);
-                        docWordData.computeIfAbsent(docId, k -> new HashMap<>());
-                        docWordData.get(docId).put(stemmedWord, wordData);
-                    }
-                }
-            } catch (SQLException e) {
-                System.err.println("QueryIndex: SQL error in InvertedIndex query: " + e.getMessage());
-                throw e;
-            }
-            System.out.println("QueryIndex: Found " + docWordData.size() + " candidate documents");
-
-            // Collect all index IDs for WordPositions query
-            Set<Integer> allIndexIds = new HashSet<>();
-            Map<Integer, Map<String, Integer>> docWordToIndexId = new HashMap<>();
-            for (Map.Entry<Integer, Map<String, WordData>> entry : docWordData.entrySet()) {
-                int docId = entry.getKey();
-                Map<String, Integer> wordToIndexId = new HashMap<>();
-                for (WordData wordData : entry.getValue().values()) {
-                    wordToIndexId.put(wordData.word, wordData.indexId);
-                    allIndexIds.add(wordData.indexId);
+        // Postings with positions of every word; a document is a candidate only if it contains all of them
+        Map<Integer, Map<String, WordData>> docWordData = new HashMap<>();
+        try {
+            for (String stemmedWord : wordList) {
+                SegmentIndex.TermPostings postings = index.postings(stemmedWord, true);
+                if (postings.documentFrequency() == 0) {
+                    System.out.println("QueryIndex: No documents contain word: " + stemmedWord);
+                    docWordData.clear();
+                    break;
                 }
-                docWordToIndexId.put(docId, wordToIndexId);
-            }
-
-            // Query WordPositions
-            Map<Integer, List<Integer>> indexIdToPositions = new HashMap<>();
-            if (!allIndexIds.isEmpty()) {
-                String posSql = "SELECT index_id, position FROM WordPositions WHERE index_id IN ("
-                        + String.join(",", Collections.nCopies(allIndexIds.size(), "?"))
-                        + ") ORDER BY index_id, position";
-                try (PreparedStatement posPstmt = conn.prepareStatement(posSql)) {
-                    int index = 1;
-                    for (int indexId : allIndexIds) {
-                        posPstmt.setInt(index++, indexId);
-                    }
-                    try (ResultSet rs = posPstmt.executeQuery()) {
-                        while (rs.next()) {
-                            int indexId = rs.getInt("index_id");
-                            int position = rs.getInt("position");
-                            indexIdToPositions.computeIfAbsent(indexId, k -> new ArrayList<>()).add(position);
-                        }
-                    }
-                } catch (SQLException e) {
-                    System.err.println("QueryIndex: SQL error in WordPositions query: " + e.getMessage());
-                    throw e;
+                String originalWord = stemToOriginal.getOrDefault(stemmedWord, stemmedWord);
+                double idf = idf(postings.documentFrequency(), index.documentCount());
+                for (int i = 0; i < postings.docIds.length; i++) {
+                    WordData wordData = new WordData(stemmedWord, originalWord, idf, postings.frequencies[i], postings.positions[i]);
+                    docWordData.computeIfAbsent(postings.docIds[i], k -> new HashMap<>()).put(stemmedWord, wordData);
                 }
             }
+        } catch (IOException e) {
+            System.err.println("QueryIndex: Index read error in query for phrase: " + e.getMessage());
+            throw new RuntimeException("QueryIndex: Index read error: " + e.getMessage(), e);
+        }
+        docWordData.values().removeIf(wordDataMap -> wordDataMap.size() < wordList.size());
+        System.out.println("QueryIndex: Found " + docWordData.size() + " candidate documents");
 
-            // Check phrase for each candidate document
-            for (Map.Entry<Integer, Map<String, WordData>> entry : docWordData.entrySet()) {
-                int docId = entry.getKey();
-                Map<String, WordData> wordDataMap = entry.getValue();
-                Map<String, Integer> wordToIndexId = docWordToIndexId.get(docId);
+        // Check phrase for each candidate document
+        for (Map.Entry<Integer, Map<String, WordData>> entry : docWordData.entrySet()) {
+            int docId = entry.getKey();
+            Map<String, WordData> wordDataMap = entry.getValue();
 
-                boolean phraseFound = checkSequentialPositions(indexIdToPositions, wordList, wordToIndexId);
+            boolean phraseFound = checkSequentialPositions(wordDataMap, wordList);
 
-                if (phraseFound) {
-                    Map<String, List<Double>> wordInfo = new HashMap<>();
-                    for (WordData wordData : wordDataMap.values()) {
-                        wordInfo.put(wordData.originalWord, Arrays.asList(wordData.frequency, wordData.idf));
-                        System.out.println("QueryIndex: Added wordInfo for docId: " + docId + ", word: " + wordData.originalWord + ", frequency: " + wordData.frequency);
-                    }
-                    DocumentData docData = new DocumentData(docId, wordInfo);
-                    documentDataList.add(docData);
-                    System.out.println("QueryIndex: Phrase found in docId: " + docId);
+            if (phraseFound) {
+                Map<String, List<Double>> wordInfo = new HashMap<>();
+                for (WordData wordData : wordDataMap.values()) {
+                    wordInfo.put(wordData.originalWord, Arrays.asList(wordData.frequency, wordData.idf));
+                    System.out.println("QueryIndex: Added wordInfo for docId: " + docId + ", word: " + wordData.originalWord + ", frequency: " + wordData.frequency);
                 }
+                DocumentData docData = new DocumentData(docId, wordInfo);
+                documentDataList.add(docData);
+                System.out.println("QueryIndex: Phrase found in docId: " + docId);
             }
-        } catch (SQLException e) {
-            System.err.println("QueryIndex: SQL error in query for phrase: " + e.getMessage());
-            throw e;
         }
 
         QueryResult result = new QueryResult(documentDataList, queryWords, new HashMap<>());
@@ -338,24 +249,24 @@ public class QueryIndex {
         return result;
     }
 
-    private static boolean checkSequentialPositions(Map<Integer, List<Integer>> indexIdToPositions, List<String> words, Map<String, Integer> wordToIndexId) {
+    private static boolean checkSequentialPositions(Map<String, WordData> wordDataMap, List<String> words) {
         // Collect position lists for all words in the phrase
-        List<List<Integer>> positionLists = new ArrayList<>();
+        List<int[]> positionLists = new ArrayList<>();
         for (String word : words) {
-            Integer indexId = wordToIndexId.get(word);
-            List<Integer> positions = indexIdToPositions.getOrDefault(indexId, Collections.emptyList());
-            if (positions.isEmpty()) {
+            WordData wordData = wordDataMap.get(word);
+            int[] positions = wordData == null ? new int[0] : wordData.positions;
+            if (positions.length == 0) {
                 System.out.println("QueryIndex: No positions for word: " + word);
                 return false; // Early exit if any word has no positions
             }
-            positionLists.add(positions); // Already sorted by SQL query
+            positionLists.add(positions); // Already sorted in the segment
         }
 
         // Maximum allowed gap between words
         final int MAX_GAP = 3;
 
         // Check sequentiality for each starting position of the first word
-        List<Integer> firstPositions = positionLists.get(0);
+        int[] firstPositions = positionLists.get(0);
         for (int startPos : firstPositions) {
             boolean valid = true;
             int currentPos = startPos;
@@ -364,7 +275,7 @@ public class QueryIndex {
             // Verify that subsequent words appear in sequence
             while (currentWordIndex < words.size() - 1) {
                 currentWordIndex++;
-                List<Integer> positions = positionLists.get(currentWordIndex);
+                int[] positions = positionLists.get(currentWordIndex);
                 boolean foundNext = false;
 
                 // Look for the next word within the allowed gap
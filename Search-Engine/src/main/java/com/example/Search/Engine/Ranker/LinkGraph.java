@@ -0,0 +1,149 @@
+package com.example.Search.Engine.Ranker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Link graph in compressed sparse row form over dense node indices 0..n-1, for PageRank.
+// Only the reverse adjacency is kept: the in-links of node v are inSources[inOffsets[v] .. inOffsets[v+1]),
+// which is what a pull-based iteration reads, plus every node's out-degree. Every array is a flat int[],
+// so a graph with millions of edges costs about 4 bytes per edge and 12 per node.
+public class LinkGraph {
+    private final int[] nodeIds;
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final int[] outDegree;
+    // Forward adjacency, built on first use: only incremental PageRank needs to follow out-links
+    private int[] outOffsets;
+    private int[] outTargets;
+
+    private LinkGraph(int[] nodeIds, int[] inOffsets, int[] inSources, int[] outDegree) {
+        this.nodeIds = nodeIds;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.outDegree = outDegree;
+    }
+
+    // Collects edges between document ids, then builds the graph; nodes are the ids seen on either end
+    public static class Builder {
+        private final Map<Integer, Integer> index = new HashMap<>();
+        private int[] ids = new int[1024];
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int nodes = 0;
+        private int edges = 0;
+
+        public void addEdge(int fromId, int toId) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = indexOf(fromId);
+            to[edges] = indexOf(toId);
+            edges++;
+        }
+
+        private int indexOf(int id) {
+            Integer existing = index.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            if (nodes == ids.length) {
+                ids = Arrays.copyOf(ids, nodes * 2);
+            }
+            ids[nodes] = id;
+            index.put(id, nodes);
+            return nodes++;
+        }
+
+        // Counting sort of the edges by target: two passes over the edge arrays, no per-edge objects
+        public LinkGraph build() {
+            int[] inOffsets = new int[nodes + 1];
+            int[] outDegree = new int[nodes];
+            for (int e = 0; e < edges; e++) {
+                inOffsets[to[e] + 1]++;
+                outDegree[from[e]]++;
+            }
+            for (int v = 0; v < nodes; v++) {
+                inOffsets[v + 1] += inOffsets[v];
+            }
+            int[] next = Arrays.copyOf(inOffsets, nodes);
+            int[] inSources = new int[edges];
+            for (int e = 0; e < edges; e++) {
+                inSources[next[to[e]]++] = from[e];
+            }
+            return new LinkGraph(Arrays.copyOf(ids, nodes), inOffsets, inSources, outDegree);
+        }
+    }
+
+    // From an adjacency map as returned by DataBaseManager.getGraphFromDB; nodes with no edges are kept
+    public static LinkGraph fromAdjacency(Map<Integer, List<Integer>> adjacency) {
+        Builder builder = new Builder();
+        for (Integer node : adjacency.keySet()) {
+            builder.indexOf(node);
+        }
+        adjacency.forEach((from, targets) -> {
+            for (Integer to : targets) {
+                builder.addEdge(from, to);
+            }
+        });
+        return builder.build();
+    }
+
+    public int nodeCount() {
+        return nodeIds.length;
+    }
+
+    public int edgeCount() {
+        return inSources.length;
+    }
+
+    // Document id of node v
+    public int nodeId(int v) {
+        return nodeIds[v];
+    }
+
+    int[] inOffsets() {
+        return inOffsets;
+    }
+
+    int[] inSources() {
+        return inSources;
+    }
+
+    int[] outDegree() {
+        return outDegree;
+    }
+
+    // Out-links of node v are outTargets()[outOffsets()[v] .. outOffsets()[v+1])
+    synchronized int[] outOffsets() {
+        buildForward();
+        return outOffsets;
+    }
+
+    synchronized int[] outTargets() {
+        buildForward();
+        return outTargets;
+    }
+
+    private void buildForward() {
+        if (outOffsets != null) {
+            return;
+        }
+        int n = nodeIds.length;
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + outDegree[v];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[inSources.length];
+        for (int v = 0; v < n; v++) {
+            for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+                targets[next[inSources[k]]++] = v;
+            }
+        }
+        outTargets = targets;
+        outOffsets = offsets;
+    }
+}
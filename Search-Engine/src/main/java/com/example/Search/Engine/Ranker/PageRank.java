@@ -1,107 +1,404 @@
 package com.example.Search.Engine.Ranker;
 
+import com.example.Search.Engine.Data.DataBaseManager;
+
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
-import static com.example.Search.Engine.Data.DataBaseManager.getGraphFromDB;
 import static com.example.Search.Engine.Data.DataBaseManager.setPageRank;
 
 public class PageRank {
 
     private static final double damping = 0.85;
-    private static final double epsilon = 0.00001;
+    // Total (L1) change in rank below which the iteration has converged
+    private static final double tolerance = 1e-6;
+    private static final int maxIterations = 200;
+    // Vertex ranges per worker thread; the pool hands them out as threads free up, which evens out slices
+    // that are heavier than their edge count suggests
+    private static final int partitionsPerThread = 4;
+    // Incremental refresh: change in a node's unnormalized rank below which it is not propagated further.
+    // Unnormalized ranks average about 1 / (1 - damping), so this is about what tolerance allows per node;
+    // anything tighter would find every node stale in ranks that the full iteration left at tolerance.
+    private static final double localTolerance = 1e-5;
+    // Share of the nodes that may start out of date before a refresh iterates the whole graph instead
+    private static final double maxLocalFraction = 0.1;
+    // Relative change below which a refreshed rank is not written back
+    private static final double writeTolerance = 1e-4;
 
+    // Usage: PageRank [threads] [--incremental]
     public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean incremental = false;
+        for (String arg : args) {
+            if (arg.equals("--incremental")) {
+                incremental = true;
+            } else {
+                threads = Integer.parseInt(arg);
+            }
+        }
         try {
-            pageRank();
+            if (incremental) {
+                try (Connection conn = DataBaseManager.getConnection()) {
+                    refreshPageRank(conn, threads);
+                }
+            } else {
+                pageRank(threads);
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public static void pageRank() throws SQLException {
+        pageRank(Runtime.getRuntime().availableProcessors());
+    }
 
-        Map<Integer, List<Integer>> nodeAdjMap = getGraphFromDB();
-        int n = nodeAdjMap.size();
-
-        // Initialize probability map with 1/N for each node
-        Map<Integer, Double> probability = new HashMap<>();
-        for (Integer node : nodeAdjMap.keySet()) {
-            probability.put(node, 1.0 / n);
-        }
+    public static void pageRank(int threads) throws SQLException {
+        LinkGraph graph = loadGraph();
 
         long startTime = System.currentTimeMillis(); // Start time
-        rank(nodeAdjMap, probability);
-
-//        double sum = 0;
-//        for (Integer key : probability.keySet()) {
-//            sum += probability.get(key);
-//        }
-//        System.out.println(sum);
-
+        double[] rank = new double[graph.nodeCount()];
+        int iterations = iterate(graph, rank, threads);
         long endTime = System.currentTimeMillis(); // End time
 
         long elapsedTime = endTime - startTime;
         // Calculate elapsed time in milliseconds
-        System.out.println("Execution Time: " + elapsedTime + " milliseconds");
+        System.out.println("Execution Time: " + elapsedTime + " milliseconds (" + graph.nodeCount() + " nodes, "
+                + graph.edgeCount() + " edges, " + iterations + " iterations, " + threads + " threads)");
 
-        setPageRank(probability);
-        System.out.println(probability);
+        int[] ids = new int[graph.nodeCount()];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = graph.nodeId(v);
+        }
+        try (Connection conn = DataBaseManager.getConnection()) {
+            setPageRank(conn, ids, rank);
+        }
     }
 
+    // Streams the link_edges table straight into CSR arrays, without an intermediate adjacency map
+    static LinkGraph loadGraph() throws SQLException {
+        try (Connection conn = DataBaseManager.getConnection()) {
+            return loadGraph(conn);
+        }
+    }
 
-    private static void rank(Map<Integer, List<Integer>> nodeAdjMap, Map<Integer, Double> probability) {
-        boolean exit = false;
-        while (!exit) {
-            exit = true;
+    static LinkGraph loadGraph(Connection conn) throws SQLException {
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        DataBaseManager.forEachEdge(conn, builder::addEdge);
+        return builder.build();
+    }
 
-            Map<Integer, Double> newProbability = new HashMap<>();
-            double dangling = 0.0;
+    // Outcome of refresh: the new ranks, how many nodes were out of date at the start, and whether the whole
+    // graph had to be iterated (iterations is 0 when only the affected region was)
+    public record Refresh(double[] rank, int staleNodes, boolean full, int iterations) {
+    }
 
-            // Calculate dangling contribution
-            for (Integer node : nodeAdjMap.keySet()) {
-                List<Integer> edges = nodeAdjMap.getOrDefault(node, new ArrayList<>());
-                if (edges.isEmpty()) {
-                    dangling += probability.getOrDefault(node, 0.0);
-                }
+    // Refreshes the ranks stored in DocumentMetaData after the link graph has grown, e.g. after a crawl batch,
+    // starting from the stored values; only ranks that moved by more than writeTolerance are written back
+    public static Refresh refreshPageRank(Connection conn, int threads) throws SQLException {
+        LinkGraph graph = loadGraph(conn);
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            index.put(graph.nodeId(v), v);
+        }
+        double[] previous = new double[graph.nodeCount()];
+        DataBaseManager.forEachPageRank(conn, (id, pageRank) -> {
+            Integer v = index.get(id);
+            if (v != null) {
+                previous[v] = pageRank;
             }
+        });
+
+        long startTime = System.currentTimeMillis();
+        Refresh refresh = refresh(graph, previous, threads);
+        long elapsedTime = System.currentTimeMillis() - startTime;
 
-            int totalNodes = nodeAdjMap.size();
+        double[] rank = refresh.rank();
+        int[] ids = new int[rank.length];
+        double[] values = new double[rank.length];
+        int changed = 0;
+        for (int v = 0; v < rank.length; v++) {
+            if (Math.abs(rank[v] - previous[v]) > writeTolerance * previous[v]) {
+                ids[changed] = graph.nodeId(v);
+                values[changed++] = rank[v];
+            }
+        }
+        setPageRank(conn, Arrays.copyOf(ids, changed), Arrays.copyOf(values, changed));
+        System.out.println("PageRank refresh: " + elapsedTime + " milliseconds (" + graph.nodeCount() + " nodes, "
+                + refresh.staleNodes() + " stale, " + (refresh.full() ? refresh.iterations() + " full iterations" : "local")
+                + ", " + changed + " ranks updated)");
+        return refresh;
+    }
 
-            // Compute new rank for each node
-            for (Integer i : nodeAdjMap.keySet()) {
-                double rank = (1 - damping) / totalNodes;
+    // Warm-started PageRank. previous holds the last ranks computed for each node, or 0 for nodes added since.
+    // The refresh works on unnormalized ranks y = 1 + damping * sum(y[u] / outDegree[u]) over in-links u: the
+    // normalized PageRank (dangling mass included) is y / sum(y), but unlike it y is local, so a new page or
+    // link only changes y downstream of it. The previous ranks are y times a common factor, recovered as the
+    // median of rank[v] - damping * sum(rank[u] / outDegree[u]) over previously ranked nodes, which is the
+    // same for every node whose in-links did not change. New nodes start at 1, the least any node can have.
+    // Nodes whose equation no longer holds go on a work list; each update that moves a node by more than
+    // localTolerance puts its out-links back on it, until the list drains. When more than maxLocalFraction
+    // of the graph is out of date, the full iteration runs instead, still starting from the previous ranks.
+    public static Refresh refresh(LinkGraph graph, double[] previous, int threads) {
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return new Refresh(new double[0], 0, false, 0);
+        }
+        double scale = previousScale(graph, previous);
+        if (!(scale > 0)) {
+            double[] rank = new double[n];
+            return new Refresh(rank, n, true, iterate(graph, rank, threads));
+        }
+        double[] y = new double[n];
+        for (int v = 0; v < n; v++) {
+            y[v] = previous[v] > 0 ? previous[v] / scale : 1.0;
+        }
 
-                // Loop through all other nodes to find which ones link to node 'i'
-                for (Integer j : nodeAdjMap.keySet()) {
-                    List<Integer> edges = nodeAdjMap.getOrDefault(j, new ArrayList<>());
-                    if (edges.contains(i)) {
-                        rank += damping * probability.getOrDefault(j, 0.0) / edges.size();
+        // Ring buffer of stale nodes; queued keeps every node in it at most once
+        int[] queue = new int[n];
+        boolean[] queued = new boolean[n];
+        int head = 0;
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            if (Math.abs(unnormalized(graph, y, v) - y[v]) > localTolerance) {
+                queued[v] = true;
+                queue[size++] = v;
+            }
+        }
+        int stale = size;
+        if (stale <= maxLocalFraction * n) {
+            int[] outOffsets = graph.outOffsets();
+            int[] outTargets = graph.outTargets();
+            long budget = (long) maxIterations * n;
+            while (size > 0 && budget-- > 0) {
+                int v = queue[head];
+                head = (head + 1) % n;
+                size--;
+                queued[v] = false;
+                double value = unnormalized(graph, y, v);
+                if (Math.abs(value - y[v]) <= localTolerance) {
+                    continue;
+                }
+                y[v] = value;
+                for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+                    int w = outTargets[k];
+                    if (!queued[w]) {
+                        queued[w] = true;
+                        queue[(head + size) % n] = w;
+                        size++;
                     }
                 }
+            }
+            if (size == 0) {
+                return new Refresh(normalize(y), stale, false, 0);
+            }
+        }
+        double[] rank = normalize(y);
+        return new Refresh(rank, stale, true, iterateFrom(graph, rank, threads));
+    }
 
-                // Add dangling node contribution
-                rank += damping * dangling / totalNodes;
+    private static double unnormalized(LinkGraph graph, double[] y, int v) {
+        int[] inOffsets = graph.inOffsets();
+        int[] inSources = graph.inSources();
+        int[] outDegree = graph.outDegree();
+        double sum = 0.0;
+        for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+            sum += y[inSources[k]] / outDegree[inSources[k]];
+        }
+        return 1.0 + damping * sum;
+    }
 
-                newProbability.put(i, rank);
+    // Teleport term of the previous ranks, or NaN when there are none to start from
+    private static double previousScale(LinkGraph graph, double[] previous) {
+        int[] inOffsets = graph.inOffsets();
+        int[] inSources = graph.inSources();
+        int[] outDegree = graph.outDegree();
+        double[] estimates = new double[graph.nodeCount()];
+        int count = 0;
+        nodes:
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            if (previous[v] <= 0) {
+                continue;
+            }
+            double sum = 0.0;
+            for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+                int u = inSources[k];
+                if (previous[u] <= 0) {
+                    continue nodes;
+                }
+                sum += previous[u] / outDegree[u];
             }
+            estimates[count++] = previous[v] - damping * sum;
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(estimates, 0, count);
+        return estimates[count / 2];
+    }
+
+    private static double[] normalize(double[] y) {
+        double total = sum(y);
+        double[] rank = new double[y.length];
+        for (int v = 0; v < y.length; v++) {
+            rank[v] = y[v] / total;
+        }
+        return rank;
+    }
+
+    public static double[] rank(LinkGraph graph) {
+        double[] rank = new double[graph.nodeCount()];
+        iterate(graph, rank);
+        return rank;
+    }
+
+    // Power iteration over the CSR graph; rank holds the result afterwards, indexed like the graph's nodes.
+    // Pull-based: each node sums the contributions of its in-links, so every node is written exactly once per
+    // iteration. The rank of dangling nodes (no out-links) is spread evenly over all nodes, which keeps the
+    // total at 1. Stops when the ranks move less than tolerance in total (L1). Returns the iteration count.
+    public static int iterate(LinkGraph graph, double[] rank) {
+        return iterate(graph, rank, 1);
+    }
 
+    // Same iteration with the vertex range split into slices computed by a pool of threads. Every slice reads
+    // only the previous iteration's vectors and writes only its own range, so the workers share nothing
+    // mutable; each writes its part of the dangling sum and of the residual into its own slot, and those are
+    // added up between the two phases in slice order, so the result does not depend on scheduling.
+    public static int iterate(LinkGraph graph, double[] rank, int threads) {
+        Arrays.fill(rank, 1.0 / graph.nodeCount());
+        return iterateFrom(graph, rank, threads);
+    }
 
-            // Check for convergence
-            for (Integer node : probability.keySet()) {
-                if (Math.abs(probability.get(node) - newProbability.get(node)) > epsilon) {
-                    exit = false;
+    // Iterates starting from the ranks already in rank, which must sum to 1
+    public static int iterateFrom(LinkGraph graph, double[] rank, int threads) {
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return 0;
+        }
+        int[] inOffsets = graph.inOffsets();
+        int[] inSources = graph.inSources();
+        int[] outDegree = graph.outDegree();
+        int[] bounds = partition(graph, threads <= 1 ? 1 : threads * partitionsPerThread);
+        double[] partial = new double[bounds.length - 1];
+        ExecutorService pool = threads <= 1 ? null : Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pagerank");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            double[] current = rank;
+            double[] next = new double[n];
+            double[] contribution = new double[n];
+            int iterations = 0;
+            while (iterations < maxIterations) {
+                iterations++;
+                double[] previous = current;
+                forEachSlice(pool, bounds, p -> {
+                    double dangling = 0.0;
+                    for (int u = bounds[p], end = bounds[p + 1]; u < end; u++) {
+                        if (outDegree[u] == 0) {
+                            dangling += previous[u];
+                        } else {
+                            contribution[u] = previous[u] / outDegree[u];
+                        }
+                    }
+                    partial[p] = dangling;
+                });
+                double base = (1 - damping) / n + damping * sum(partial) / n;
+                double[] updated = next;
+                forEachSlice(pool, bounds, p -> {
+                    double delta = 0.0;
+                    for (int v = bounds[p], end = bounds[p + 1]; v < end; v++) {
+                        double sum = 0.0;
+                        for (int k = inOffsets[v], kEnd = inOffsets[v + 1]; k < kEnd; k++) {
+                            sum += contribution[inSources[k]];
+                        }
+                        updated[v] = base + damping * sum;
+                        delta += Math.abs(updated[v] - previous[v]);
+                    }
+                    partial[p] = delta;
+                });
+                current = updated;
+                next = previous;
+                if (sum(partial) < tolerance) {
+                    break;
                 }
-                probability.put(node, newProbability.get(node));
             }
+            if (current != rank) {
+                System.arraycopy(current, 0, rank, 0, n);
+            }
+            return iterations;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
 
+    // Splits 0..n into at most parts contiguous ranges of about equal cost, counting one per node and one per
+    // in-link, so a slice holding a few hubs is as small as their in-links make it. Returns parts+1 bounds.
+    static int[] partition(LinkGraph graph, int parts) {
+        int n = graph.nodeCount();
+        int[] inOffsets = graph.inOffsets();
+        parts = Math.max(1, Math.min(parts, n));
+        long total = (long) n + inOffsets[n];
+        int[] bounds = new int[parts + 1];
+        int v = 0;
+        for (int p = 1; p < parts; p++) {
+            long target = total * p / parts;
+            while (v < n && (long) v + inOffsets[v] < target) {
+                v++;
+            }
+            bounds[p] = v;
+        }
+        bounds[parts] = n;
+        return bounds;
+    }
 
-            // Print for debugging
-//            System.out.println(newProbability);
+    private static void forEachSlice(ExecutorService pool, int[] bounds, IntConsumer slice) {
+        int parts = bounds.length - 1;
+        if (pool == null) {
+            for (int p = 0; p < parts; p++) {
+                slice.accept(p);
+            }
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(parts);
+        for (int p = 0; p < parts; p++) {
+            int part = p;
+            tasks.add(() -> {
+                slice.accept(part);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("PageRank interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("PageRank worker failed", e.getCause());
         }
     }
 
+    private static double sum(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
 }
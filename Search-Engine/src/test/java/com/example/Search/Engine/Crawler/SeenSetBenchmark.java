@@ -0,0 +1,87 @@
+package com.example.Search.Engine.Crawler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compares the crawler's old ConcurrentHashMap key sets of URL strings with SeenSet.
+// Reports retained heap, off-heap bytes and lookup throughput for hits and misses.
+// Run with: java -cp target/classes:target/test-classes com.example.Search.Engine.Crawler.SeenSetBenchmark [urls]
+public class SeenSetBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] urls = new String[n];
+        String[] misses = new String[n];
+        for (int i = 0; i < n; i++) {
+            urls[i] = "https://www.example" + (i % 5000) + ".com/articles/" + i + "/index.html?page=" + (i % 7);
+            misses[i] = "https://www.example" + (i % 5000) + ".org/unseen/" + i;
+        }
+
+        long before = usedHeap();
+        Set<String> hashSet = ConcurrentHashMap.newKeySet();
+        for (String url : urls) {
+            hashSet.add(url);
+        }
+        long hashSetHeap = usedHeap() - before;
+        System.out.printf("ConcurrentHashMap key set: %,d urls, %,d bytes heap (%.1f bytes/url, not counting the URL strings it retains)%n",
+                hashSet.size(), hashSetHeap, hashSetHeap / (double) n);
+        benchmarkLookups("ConcurrentHashMap key set", hashSet::contains, urls, misses);
+        hashSet = null;
+
+        Path dir = Files.createTempDirectory("seen-set-benchmark");
+        before = usedHeap();
+        try (SeenSet seenSet = new SeenSet(dir, "urls", n)) {
+            for (String url : urls) {
+                seenSet.add(url);
+            }
+            long seenSetHeap = usedHeap() - before;
+            System.out.printf("SeenSet: %,d urls, %,d bytes heap, %,d bytes total incl. off-heap table (%.1f bytes/url)%n",
+                    seenSet.size(), seenSetHeap, seenSet.memoryBytes(), seenSet.memoryBytes() / (double) n);
+            benchmarkLookups("SeenSet", seenSet::contains, urls, misses);
+        }
+        try (var files = Files.list(dir)) {
+            files.forEach(path -> path.toFile().delete());
+        }
+        Files.delete(dir);
+    }
+
+    private interface Lookup {
+        boolean contains(String url);
+    }
+
+    private static void benchmarkLookups(String name, Lookup lookup, String[] hits, String[] misses) {
+        // Warm-up pass so the JIT has compiled the lookup path
+        for (int i = 0; i < hits.length; i++) {
+            lookup.contains(hits[i]);
+            lookup.contains(misses[i]);
+        }
+        int found = 0;
+        long start = System.nanoTime();
+        for (String url : hits) {
+            if (lookup.contains(url)) {
+                found++;
+            }
+        }
+        double hitSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        start = System.nanoTime();
+        for (String url : misses) {
+            if (lookup.contains(url)) {
+                found--;
+            }
+        }
+        double missSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%s: %,.0f hit lookups/sec, %,.0f miss lookups/sec (%d net hits)%n",
+                name, hits.length / hitSeconds, misses.length / missSeconds, found);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
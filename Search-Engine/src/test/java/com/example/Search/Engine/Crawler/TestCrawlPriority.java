@@ -0,0 +1,24 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCrawlPriority {
+
+    @Test
+    void testLinkShareSplitsDampedCash() {
+        assertEquals(CrawlPriority.DAMPING / 4, CrawlPriority.linkShare(CrawlPriority.SEED_CASH, 4), 1e-12);
+        assertEquals(0, CrawlPriority.linkShare(CrawlPriority.SEED_CASH, 0));
+        // A page without known cash still passes on a little
+        assertTrue(CrawlPriority.linkShare(0, 1) > 0);
+    }
+
+    @Test
+    void testHostWeightFavoursUncoveredHosts() {
+        // Links within a site and into well-covered hosts are worth less
+        assertTrue(CrawlPriority.hostWeight(true, 0, 20) < CrawlPriority.hostWeight(false, 0, 20));
+        assertTrue(CrawlPriority.hostWeight(false, 15, 20) < CrawlPriority.hostWeight(false, 0, 20));
+        assertEquals(1.0, CrawlPriority.hostWeight(false, 0, 20), 1e-12);
+    }
+}
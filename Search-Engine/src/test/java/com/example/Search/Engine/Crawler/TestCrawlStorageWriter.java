@@ -0,0 +1,366 @@
+package com.example.Search.Engine.Crawler;
+
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.DataBaseManager;
+import com.example.Search.Engine.Data.ParsedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCrawlStorageWriter {
+
+    private static void createTables(String dbUrl) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbUrl); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE DocumentMetaData (id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT NOT NULL, host TEXT, title TEXT, " +
+                    "html TEXT, hash TEXT, simhash INTEGER, last_crawled_date TEXT, page_rank REAL DEFAULT 0.0, " +
+                    "content_segment INTEGER, content_offset INTEGER, content_length INTEGER, " +
+                    "parsed_segment INTEGER, parsed_offset INTEGER, parsed_length INTEGER, etag TEXT, last_modified TEXT, " +
+                    "revisit_interval INTEGER, next_crawl_date TEXT, needs_reindex INTEGER DEFAULT 0)");
+            stmt.execute("CREATE TABLE extracted_links (doc_id INTEGER NOT NULL, extracted_link TEXT NOT NULL)");
+            // Pre-existing row so the batch does not start at id 1
+            stmt.execute("INSERT INTO DocumentMetaData (url) VALUES ('https://old.com/')");
+            DataBaseManager.ensureLinkGraph(conn);
+        }
+    }
+
+    private static ParsedPage page(String title, List<String> links) {
+        return new ParsedPage(title, List.of(new ParsedPage.Block(ParsedPage.CONTENT, title + " text")), links);
+    }
+
+    private static ParsedPage page(String title, String link) {
+        return new ParsedPage(title, List.of(new ParsedPage.Block(ParsedPage.CONTENT, title + " text")), List.of(link));
+    }
+
+    private static CrawlStorageWriter openWriter(String dbUrl, ContentStore contentStore, AtomicInteger committed)
+            throws SQLException {
+        return new CrawlStorageWriter(dbUrl, contentStore, 16, 4, 50,
+                new CrawlStorageWriter.Listener() {
+                    @Override
+                    public void committed(List<CrawlStorageWriter.CrawledPage> pages) {
+                        committed.addAndGet(pages.size());
+                    }
+
+                    @Override
+                    public void failed(List<CrawlStorageWriter.CrawledPage> pages, Exception e) {
+                        fail(e);
+                    }
+                });
+    }
+
+    @Test
+    void testPagesAndLinksAreCommittedInBatches(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+
+        AtomicInteger committed = new AtomicInteger();
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, committed);
+        RevisitSchedule schedule = RevisitSchedule.initial("\"v1\"", null, LocalDateTime.now());
+        for (int i = 0; i < 10; i++) {
+            writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/" + i, "a.com", "<html>" + i + "</html>",
+                    page("Page " + i, "https://a.com/" + i + "/link"), i, "now", schedule));
+        }
+        writer.close();
+        assertEquals(10, committed.get());
+
+        // Every page's links must point at that page's own id
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT dm.url, el.extracted_link FROM extracted_links el " +
+                     "JOIN DocumentMetaData dm ON dm.id = el.doc_id")) {
+            int rows = 0;
+            while (rs.next()) {
+                assertEquals(rs.getString("url") + "/link", rs.getString("extracted_link"));
+                rows++;
+            }
+            assertEquals(10, rows);
+        }
+
+        // HTML and the parsed page live in the content store, only the pointers are in the table
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM DocumentMetaData WHERE url LIKE 'https://a.com/%'")) {
+            while (rs.next()) {
+                assertNull(rs.getString("html"));
+                String url = rs.getString("url");
+                String number = url.substring(url.lastIndexOf('/') + 1);
+                assertEquals("<html>" + number + "</html>", contentStore.readHtml(rs));
+                ParsedPage parsed = ParsedPage.read(contentStore, rs);
+                assertEquals("Page " + number, rs.getString("title"));
+                assertEquals("Page " + number + " text", parsed.getBlocks().get(0).getText());
+            }
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testRevisitsUpdateRowsInPlace(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        LocalDateTime crawledAt = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/x", "a.com", "<html>old</html>", page("Old", "https://a.com/old"),
+                1, "then", RevisitSchedule.initial("\"v1\"", null, crawledAt)));
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/y", "a.com", "<html>same</html>", page("Same", "https://a.com/same"),
+                2, "then", RevisitSchedule.initial("\"s1\"", null, crawledAt)));
+        writer.close();
+
+        writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        RevisitSchedule changedSchedule = RevisitSchedule.afterVisit(RevisitSchedule.DEFAULT_INTERVAL_SECONDS, true, "\"v2\"", null, crawledAt);
+        RevisitSchedule unchangedSchedule = RevisitSchedule.afterVisit(RevisitSchedule.DEFAULT_INTERVAL_SECONDS, false, "\"s1\"", null, crawledAt);
+        writer.submit(CrawlStorageWriter.CrawledPage.changed(2, "https://a.com/x", "<html>new</html>", page("New", "https://a.com/new"),
+                3, "now", changedSchedule));
+        writer.submit(CrawlStorageWriter.CrawledPage.unchanged(3, "https://a.com/y", "now", unchangedSchedule));
+        writer.close();
+
+        assertTrue(changedSchedule.getIntervalSeconds() < RevisitSchedule.DEFAULT_INTERVAL_SECONDS);
+        assertTrue(unchangedSchedule.getIntervalSeconds() > RevisitSchedule.DEFAULT_INTERVAL_SECONDS);
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM DocumentMetaData")) {
+                assertEquals(3, rs.getInt(1));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM DocumentMetaData WHERE id = 2")) {
+                assertEquals("New", rs.getString("title"));
+                assertEquals("<html>new</html>", contentStore.readHtml(rs));
+                assertEquals("\"v2\"", rs.getString("etag"));
+                assertEquals(changedSchedule.getNextCrawlDate(), rs.getString("next_crawl_date"));
+                assertEquals(1, rs.getInt("needs_reindex"));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM DocumentMetaData WHERE id = 3")) {
+                assertEquals("Same", rs.getString("title"));
+                assertEquals("<html>same</html>", contentStore.readHtml(rs));
+                assertEquals("now", rs.getString("last_crawled_date"));
+                assertEquals(unchangedSchedule.getIntervalSeconds(), rs.getLong("revisit_interval"));
+                assertEquals(0, rs.getInt("needs_reindex"));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT extracted_link FROM extracted_links WHERE doc_id = 2")) {
+                List<String> links = new ArrayList<>();
+                while (rs.next()) {
+                    links.add(rs.getString(1));
+                }
+                assertEquals(List.of("https://a.com/new"), links);
+            }
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testFailedRevisitKeepsTheCrawlDate(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        LocalDateTime crawledAt = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/x", "a.com", "<html>x</html>", page("X", List.of()),
+                1, "then", RevisitSchedule.initial("\"v1\"", null, crawledAt)));
+        writer.close();
+
+        long id;
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM DocumentMetaData WHERE url = 'https://a.com/x'")) {
+            id = rs.getLong(1);
+        }
+        RevisitSchedule backoff = RevisitSchedule.afterVisit(RevisitSchedule.DEFAULT_INTERVAL_SECONDS, false, "\"v1\"", null,
+                crawledAt.plusDays(1));
+        writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(CrawlStorageWriter.CrawledPage.failedRevisit(id, "https://a.com/x", backoff));
+        writer.close();
+
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM DocumentMetaData WHERE id = " + id)) {
+            assertEquals("then", rs.getString("last_crawled_date"));
+            assertEquals("\"v1\"", rs.getString("etag"));
+            assertEquals(backoff.getIntervalSeconds(), rs.getLong("revisit_interval"));
+            assertEquals(backoff.getNextCrawlDate(), rs.getString("next_crawl_date"));
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testLinkGraphEdgesResolveWhicheverPageIsStoredFirst(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        RevisitSchedule schedule = RevisitSchedule.initial(null, null, LocalDateTime.now());
+
+        // id 2 links to 3 (same batch), to the pre-existing id 1, and to c.com before c.com is stored
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/", "a.com", "<html>a</html>",
+                page("A", List.of("https://b.com/", "https://old.com/", "https://c.com/", "https://b.com/")), 1, "now", schedule));
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://b.com/", "b.com", "<html>b</html>",
+                page("B", List.of("https://a.com/", "https://missing.com/")), 2, "now", schedule));
+        writer.close();
+        writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://c.com/", "c.com", "<html>c</html>",
+                page("C", List.of("https://c.com/")), 3, "now", schedule));
+        writer.close();
+
+        try (Connection conn = DriverManager.getConnection(dbUrl)) {
+            Map<Integer, List<Integer>> graph = DataBaseManager.getGraph(conn);
+            assertEquals(Set.of(3, 1, 4), new HashSet<>(graph.get(2)));
+            assertEquals(3, graph.get(2).size());
+            assertEquals(List.of(2), graph.get(3));
+            assertEquals(List.of(4), graph.get(4));
+            assertEquals(List.of(), graph.get(1));
+
+            // A database from before link_edges existed gets the same graph from a one-time backfill
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE link_edges");
+            }
+            Map<Integer, List<Integer>> backfilled = DataBaseManager.getGraph(conn);
+            assertEquals(graph.keySet(), backfilled.keySet());
+            for (Integer id : graph.keySet()) {
+                assertEquals(new HashSet<>(graph.get(id)), new HashSet<>(backfilled.get(id)));
+            }
+        }
+
+        // A changed page replaces its outgoing edges
+        writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(CrawlStorageWriter.CrawledPage.changed(2, "https://a.com/", "<html>a2</html>", page("A2", List.of("https://c.com/")),
+                4, "later", schedule));
+        writer.close();
+        try (Connection conn = DriverManager.getConnection(dbUrl)) {
+            assertEquals(List.of(4), DataBaseManager.getGraph(conn).get(2));
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testNonCanonicalLinksResolveToTheStoredPage(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        RevisitSchedule schedule = RevisitSchedule.initial(null, null, LocalDateTime.now());
+        String b = UrlCanonicalizer.canonicalize("https://b.com/page").url();
+
+        // id 2 links to b with a fragment, an upper-case host and the default port; none is stored as written
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, new AtomicInteger());
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/", "a.com", "<html>a</html>",
+                page("A", List.of("https://b.com/page#top", "https://B.COM/page", "https://b.com:443/page", "not a url")),
+                1, "now", schedule));
+        writer.submit(new CrawlStorageWriter.CrawledPage(b, "b.com", "<html>b</html>", page("B", List.of()), 2, "now", schedule));
+        writer.close();
+
+        try (Connection conn = DriverManager.getConnection(dbUrl)) {
+            assertEquals(List.of(3), DataBaseManager.getGraph(conn).get(2));
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT extracted_link FROM extracted_links WHERE doc_id = 2")) {
+                assertTrue(rs.next());
+                assertEquals(b, rs.getString(1));
+                assertFalse(rs.next());
+            }
+
+            // Raw links stored by an older crawler are canonicalized before the graph is rebuilt from them
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE link_edges");
+                stmt.execute("DELETE FROM extracted_links");
+                // More rows than the migration reads at a time, malformed ones among them
+                stmt.execute("WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 25000) " +
+                        "INSERT INTO extracted_links SELECT 2, CASE WHEN i % 1000 = 0 THEN 'not a url' " +
+                        "ELSE 'https://B.com/page#' || i END FROM n");
+                stmt.execute("PRAGMA user_version = 0");
+            }
+            assertEquals(List.of(3), DataBaseManager.getGraph(conn).get(2));
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT extracted_link, COUNT(*) FROM extracted_links GROUP BY extracted_link")) {
+                assertTrue(rs.next());
+                assertEquals(b, rs.getString(1));
+                assertEquals(24_975, rs.getInt(2));
+                assertFalse(rs.next());
+            }
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testFailingPageOrListenerDoesNotStopTheWriter(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger committed = new AtomicInteger();
+        CountDownLatch firstBatchDone = new CountDownLatch(1);
+        CrawlStorageWriter writer = new CrawlStorageWriter(dbUrl, contentStore, 2, 4, 50,
+                new CrawlStorageWriter.Listener() {
+                    @Override
+                    public void committed(List<CrawlStorageWriter.CrawledPage> pages) {
+                        committed.addAndGet(pages.size());
+                        throw new IllegalStateException("listener bug");
+                    }
+
+                    @Override
+                    public void failed(List<CrawlStorageWriter.CrawledPage> pages, Exception e) {
+                        pages.forEach(page -> failed.add(page.getUrl()));
+                        firstBatchDone.countDown();
+                    }
+                });
+        RevisitSchedule schedule = RevisitSchedule.initial(null, null, LocalDateTime.now());
+        // A page with no parsed content throws inside the batch
+        writer.submit(new CrawlStorageWriter.CrawledPage("https://bad.com/", "bad.com", "<html></html>", null, 0, "now", schedule));
+        assertTrue(firstBatchDone.await(10, TimeUnit.SECONDS));
+        // More pages than the queue holds, so submit would block for good if the writer had died
+        for (int i = 0; i < 10; i++) {
+            writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/" + i, "a.com", "<html>" + i + "</html>",
+                    page("Page " + i, List.of()), 0, "now", schedule));
+        }
+        writer.close();
+        assertEquals(List.of("https://bad.com/"), failed);
+        assertEquals(10, committed.get());
+        try (Connection conn = DriverManager.getConnection(dbUrl); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM DocumentMetaData WHERE url LIKE 'https://a.com/%'")) {
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+        }
+        contentStore.close();
+    }
+
+    @Test
+    void testLinksFollowTheirPageWhenIdsAreNotConsecutive(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl.db");
+        createTables(dbUrl);
+        // Every stored page takes an extra id, so a batch's ids interleave with rows it did not insert
+        try (Connection conn = DriverManager.getConnection(dbUrl); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TRIGGER gap AFTER INSERT ON DocumentMetaData WHEN NEW.url NOT LIKE 'gap:%' " +
+                    "BEGIN INSERT INTO DocumentMetaData (url) VALUES ('gap:' || NEW.id); END");
+        }
+
+        AtomicInteger committed = new AtomicInteger();
+        ContentStore contentStore = new ContentStore(dir.resolve("content"));
+        CrawlStorageWriter writer = openWriter(dbUrl, contentStore, committed);
+        RevisitSchedule schedule = RevisitSchedule.initial(null, null, LocalDateTime.now());
+        for (int i = 0; i < 6; i++) {
+            writer.submit(new CrawlStorageWriter.CrawledPage("https://a.com/" + i, "a.com", "<html>" + i + "</html>",
+                    page("Page " + i, "https://a.com/" + i + "/link"), 0, "now", schedule));
+        }
+        writer.close();
+        assertEquals(6, committed.get());
+
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT dm.url, el.extracted_link FROM extracted_links el " +
+                     "JOIN DocumentMetaData dm ON dm.id = el.doc_id")) {
+            int rows = 0;
+            while (rs.next()) {
+                assertEquals(rs.getString("url") + "/link", rs.getString("extracted_link"));
+                rows++;
+            }
+            assertEquals(6, rows);
+        }
+        contentStore.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCrawlerMetrics {
+
+    @Test
+    void testHistogramQuantilesStayWithinABucket() {
+        CrawlerMetrics.Histogram histogram = new CrawlerMetrics.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L); // 1..1000 ms
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000_000L, histogram.getMaxNanos());
+        long p50 = histogram.quantileNanos(0.5);
+        long p99 = histogram.quantileNanos(0.99);
+        assertTrue(p50 >= 500_000_000L && p50 < 1_000_000_000L, "p50 " + p50);
+        assertTrue(p99 >= 990_000_000L && p99 <= 1_000_000_000L, "p99 " + p99);
+        assertEquals(0, new CrawlerMetrics.Histogram().quantileNanos(0.5));
+    }
+
+    @Test
+    void testEndpointAndLogShowEveryMetric(@TempDir Path dir) throws Exception {
+        CrawlerMetrics metrics = new CrawlerMetrics();
+        metrics.increment("fetches");
+        metrics.add("bytes_downloaded", 2048);
+        metrics.gauge("frontier_size", () -> 42);
+        metrics.labelledGauge("host_queue_depth", "host", () -> Map.of("a.com", 3));
+        metrics.record(CrawlerMetrics.Stage.PARSE, 3_000_000);
+        metrics.record(CrawlerMetrics.Stage.PARSE, 5_000_000);
+
+        Path log = dir.resolve("metrics.log");
+        metrics.startLogging(log, 60_000);
+        int port = metrics.startServer(0);
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            String body = response.body();
+            assertTrue(body.contains("crawler_fetches 1\n"), body);
+            assertTrue(body.contains("crawler_bytes_downloaded 2048\n"));
+            assertTrue(body.contains("crawler_frontier_size 42\n"));
+            assertTrue(body.contains("crawler_host_queue_depth{host=\"a.com\"} 3\n"));
+            assertTrue(body.contains("crawler_stage_seconds_count{stage=\"parse\"} 2\n"));
+            assertTrue(body.contains("crawler_stage_seconds_bucket{stage=\"parse\",le=\"+Inf\"} 2\n"));
+            assertTrue(body.contains("crawler_stage_seconds_count{stage=\"download\"} 0\n"));
+        } finally {
+            metrics.close();
+        }
+        // Closing writes a final summary
+        String summary = Files.readString(log);
+        assertTrue(summary.contains("fetches=1"), summary);
+        assertFalse(summary.contains("  download "));
+        assertTrue(summary.contains("  parse "));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFrontierScheduler {
+
+    @Test
+    void testHostIsCheckedOutUntilReleased() throws InterruptedException {
+        FrontierScheduler frontier = new FrontierScheduler(0, 1000);
+        frontier.offer("a.com", "https://a.com/1");
+        frontier.offer("a.com", "https://a.com/2");
+        frontier.offer("b.com", "https://b.com/1");
+
+        // Two different hosts are handed out back to back, the second a.com URL has to wait
+        Set<String> first = new HashSet<>();
+        first.add(frontier.poll());
+        first.add(frontier.poll());
+        assertEquals(Set.of("https://a.com/1", "https://b.com/1"), first);
+        assertEquals(1, frontier.size());
+
+        frontier.release("b.com", 0);
+        frontier.release("a.com", 0);
+        assertEquals("https://a.com/2", frontier.poll());
+        frontier.release("a.com", 0);
+
+        // Nothing queued and nothing checked out means the frontier is drained
+        assertNull(frontier.poll());
+    }
+
+    @Test
+    void testCrawlDelayIsRespected() throws InterruptedException {
+        FrontierScheduler frontier = new FrontierScheduler(0, 1000);
+        frontier.offer("a.com", "https://a.com/1");
+        frontier.offer("a.com", "https://a.com/2");
+
+        assertEquals("https://a.com/1", frontier.poll());
+        long releasedAt = System.currentTimeMillis();
+        frontier.release("a.com", 200);
+        assertEquals("https://a.com/2", frontier.poll());
+        assertTrue(System.currentTimeMillis() - releasedAt >= 190, "Host was handed out before its crawl delay elapsed");
+    }
+
+    @Test
+    void testCloseWakesWaitingWorkers() throws Exception {
+        FrontierScheduler frontier = new FrontierScheduler(0, 1000);
+        frontier.offer("a.com", "https://a.com/1");
+        assertNotNull(frontier.poll());
+
+        // a.com is still checked out, so this worker waits for more links until close()
+        FutureTask<String> poll = new FutureTask<>(frontier::poll);
+        Thread worker = new Thread(poll);
+        worker.start();
+        Thread.sleep(50);
+        frontier.close();
+        worker.join(1000);
+        assertFalse(worker.isAlive());
+        assertTrue(poll.isDone());
+        assertNull(poll.get());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFrontierStore {
+
+    @Test
+    void testLoadsQueuedUrlsByPriority(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl_state.db");
+        try (FrontierStore store = new FrontierStore(dbUrl)) {
+            assertTrue(store.isEmpty());
+            store.enqueue("https://a.com/", "a.com", 0, 1.0, false);
+            store.enqueue("https://a.com/deep", "a.com", 2, 1.0 / 3, false);
+            store.enqueue("https://b.com/", "b.com", 1, 0.5, false);
+            store.enqueue("https://a.com/", "a.com", 5, 0.1, false); // duplicate adds its priority, keeps the shorter depth
+            store.enqueue("https://c.com/", "c.com", 1, 0.5, true);
+
+            List<FrontierStore.Entry> first = store.loadQueued(2);
+            assertEquals(List.of("https://a.com/", "https://b.com/"), first.stream().map(FrontierStore.Entry::getUrl).toList());
+            assertEquals(0, first.get(0).getDepth());
+            assertEquals(1.1, first.get(0).getPriority(), 1e-9);
+            List<FrontierStore.Entry> second = store.loadQueued(10);
+            assertEquals(1, second.size());
+            assertEquals("https://a.com/deep", second.get(0).getUrl());
+            assertTrue(store.loadQueued(10).isEmpty());
+            assertArrayEquals(new long[]{0, 4, 0, 0}, store.countByState());
+        }
+    }
+
+    @Test
+    void testInLinksRaiseQueuedPriority(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl_state.db");
+        try (FrontierStore store = new FrontierStore(dbUrl)) {
+            // A seed with 4 links and one with 2: the page both link to ends up ahead of either seed's other links
+            double fromFirst = CrawlPriority.linkShare(CrawlPriority.SEED_CASH, 4);
+            double fromSecond = CrawlPriority.linkShare(CrawlPriority.SEED_CASH, 2);
+            for (int i = 0; i < 3; i++) {
+                store.enqueue("https://a.com/" + i, "a.com", 1, fromFirst, false);
+            }
+            store.enqueue("https://b.com/", "b.com", 1, fromSecond, false);
+            store.enqueue("https://popular.com/", "popular.com", 1, fromFirst, false);
+            store.enqueue("https://popular.com/", "popular.com", 1, fromSecond, false);
+
+            List<FrontierStore.Entry> best = store.loadQueued(1);
+            assertEquals("https://popular.com/", best.get(0).getUrl());
+            assertEquals(fromFirst + fromSecond, best.get(0).getPriority(), 1e-9);
+            // In-links found after a URL was handed out no longer change it
+            store.enqueue("https://popular.com/", "popular.com", 1, 1.0, false);
+            store.markDone("https://popular.com/");
+            assertEquals("https://b.com/", store.loadQueued(1).get(0).getUrl());
+            assertArrayEquals(new long[]{3, 1, 1, 0}, store.countByState());
+        }
+    }
+
+    @Test
+    void testInFlightUrlsAreRequeuedOnReopen(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl_state.db");
+        try (FrontierStore store = new FrontierStore(dbUrl)) {
+            for (int i = 0; i < 5; i++) {
+                store.enqueue("https://a.com/" + i, "a.com", 1, 0.5, false);
+            }
+            assertEquals(5, store.loadQueued(10).size());
+            store.markDone("https://a.com/0");
+            store.markFailed("https://a.com/1");
+        }
+        // Reopening simulates a restart after the crawler stopped with three URLs still in memory
+        try (FrontierStore store = new FrontierStore(dbUrl)) {
+            assertFalse(store.isEmpty());
+            assertArrayEquals(new long[]{3, 0, 1, 1}, store.countByState());
+            List<String> resumed = store.loadQueued(10).stream().map(FrontierStore.Entry::getUrl).sorted().toList();
+            assertEquals(List.of("https://a.com/2", "https://a.com/3", "https://a.com/4"), resumed);
+        }
+    }
+}
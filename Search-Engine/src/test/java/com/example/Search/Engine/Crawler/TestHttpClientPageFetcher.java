@@ -0,0 +1,139 @@
+package com.example.Search.Engine.Crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the fetcher against a local stub server so it can be tested and benchmarked offline
+public class TestHttpClientPageFetcher {
+    private static final String PAGE = "<html><head><title>Stub</title></head><body><p>Hello crawler</p></body></html>";
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private static HttpServer server;
+    private static String baseUrl;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/page", exchange -> respond(exchange, 200, "text/html; charset=UTF-8", PAGE.getBytes(StandardCharsets.UTF_8), false));
+        server.createContext("/gzip", exchange -> respond(exchange, 200, "text/html", PAGE.getBytes(StandardCharsets.UTF_8),
+                exchange.getRequestHeaders().getFirst("Accept-Encoding").contains("gzip")));
+        server.createContext("/big", exchange -> respond(exchange, 200, "text/html", new byte[MAX_BODY_BYTES * 4], false));
+        server.createContext("/image", exchange -> respond(exchange, 200, "image/png", new byte[1024], false));
+        server.createContext("/etag", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+            } else {
+                respond(exchange, 200, "text/html", PAGE.getBytes(StandardCharsets.UTF_8), false);
+            }
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, "text/html", "not found".getBytes(StandardCharsets.UTF_8), false));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body, boolean gzip) throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        } catch (IOException e) {
+            // The client may cancel once it has read enough
+        }
+    }
+
+    @Test
+    void testFetchHtml() throws IOException {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        FetchResult result = fetcher.fetch(baseUrl + "/page", "text/html");
+        assertTrue(result.isSuccess());
+        assertEquals("UTF-8", result.getCharset());
+        assertEquals(PAGE, new String(result.getBody(), StandardCharsets.UTF_8));
+        assertFalse(result.isTruncated());
+        assertTrue(result.getHeadersNanos() >= 0);
+    }
+
+    @Test
+    void testGzipIsDecoded() throws IOException {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        FetchResult result = fetcher.fetch(baseUrl + "/gzip", "text/html");
+        assertEquals(PAGE, new String(result.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testBodyIsLimited() throws IOException {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        FetchResult result = fetcher.fetch(baseUrl + "/big", "text/html");
+        assertTrue(result.isTruncated());
+        assertEquals(MAX_BODY_BYTES, result.getBody().length);
+    }
+
+    @Test
+    void testRejectedResponsesHaveNoBody() throws IOException {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        FetchResult image = fetcher.fetch(baseUrl + "/image", "text/html");
+        assertEquals(0, image.getBody().length);
+        FetchResult missing = fetcher.fetch(baseUrl + "/missing", "text/html");
+        assertEquals(404, missing.getStatusCode());
+        assertEquals(0, missing.getBody().length);
+    }
+
+    @Test
+    void testConditionalRequest() throws IOException {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        FetchResult first = fetcher.fetch(baseUrl + "/etag", "text/html");
+        assertTrue(first.isSuccess());
+        assertEquals("\"v1\"", first.getEtag());
+        FetchResult second = fetcher.fetch(baseUrl + "/etag", "text/html", Map.of("If-None-Match", first.getEtag()));
+        assertTrue(second.isNotModified());
+        assertEquals(0, second.getBody().length);
+    }
+
+    @Test
+    void testThroughput() {
+        HttpClientPageFetcher fetcher = new HttpClientPageFetcher(MAX_BODY_BYTES, Duration.ofSeconds(5));
+        int requests = 500;
+        long start = System.nanoTime();
+        List<CompletableFuture<FetchResult>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(fetcher.fetchAsync(baseUrl + "/page?i=" + i, "text/html"));
+        }
+        long ok = futures.stream().map(CompletableFuture::join).filter(FetchResult::isSuccess).count();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("Fetched %d pages from the stub server in %.2f s (%.0f pages/sec)%n", ok, seconds, ok / seconds);
+        assertEquals(requests, ok);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRobotsCache {
+    private static final byte[] ROBOTS = "User-agent: *\nDisallow: /private\nCrawl-delay: 2\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testConcurrentMissesFetchOnce() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PageFetcher fetcher = (url, accepted, headers) -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new FetchResult(url, 200, "text/plain", ROBOTS, false);
+        };
+        try (RobotsCache cache = new RobotsCache(fetcher, null, 100)) {
+            List<Thread> threads = new ArrayList<>();
+            AtomicInteger allowed = new AtomicInteger();
+            for (int i = 0; i < 16; i++) {
+                String url = "https://a.com/" + (i % 2 == 0 ? "public" : "private") + i;
+                Thread thread = new Thread(() -> {
+                    if (cache.isAllowed("https://a.com", url)) {
+                        allowed.incrementAndGet();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(1, fetches.get());
+            assertEquals(8, allowed.get());
+            assertEquals(2000, cache.getCrawlDelay("https://a.com"));
+            assertEquals(-1, cache.getCrawlDelay("https://b.com"));
+        }
+    }
+
+    @Test
+    void testFailuresAreCachedAndEntriesPersist(@TempDir Path dir) throws Exception {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("crawl_state.db");
+        AtomicInteger fetches = new AtomicInteger();
+        PageFetcher fetcher = (url, accepted, headers) -> {
+            fetches.incrementAndGet();
+            if (url.startsWith("https://down.com")) {
+                throw new IOException("connection refused");
+            }
+            return new FetchResult(url, 200, "text/plain", ROBOTS, false);
+        };
+        try (RobotsCache cache = new RobotsCache(fetcher, dbUrl, 100)) {
+            assertTrue(cache.isAllowed("https://down.com", "https://down.com/private"));
+            assertTrue(cache.isAllowed("https://down.com", "https://down.com/other"));
+            assertFalse(cache.isAllowed("https://a.com", "https://a.com/private"));
+            assertEquals(2, fetches.get());
+        }
+        // A new run reads both hosts from the database instead of fetching them again
+        try (RobotsCache cache = new RobotsCache(fetcher, dbUrl, 100)) {
+            assertFalse(cache.isAllowed("https://a.com", "https://a.com/private"));
+            assertTrue(cache.isAllowed("https://down.com", "https://down.com/private"));
+            assertEquals(2, fetches.get());
+        }
+    }
+
+    @Test
+    void testCacheIsBounded() throws Exception {
+        PageFetcher fetcher = (url, accepted, headers) -> new FetchResult(url, 404, "text/html", new byte[0], false);
+        try (RobotsCache cache = new RobotsCache(fetcher, null, 50)) {
+            for (int i = 0; i < 500; i++) {
+                assertTrue(cache.isAllowed("https://host" + i + ".com", "https://host" + i + ".com/page"));
+                assertTrue(cache.size() <= 50);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSeenSet {
+
+    @Test
+    void testFingerprintSetMatchesHashSet(@TempDir Path dir) throws Exception {
+        // Small fingerprints cluster in the low slots, which exercises long probe runs and backward shifts
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        try (FingerprintSet set = new FingerprintSet(dir.resolve("set.fp"), 16)) {
+            for (int i = 0; i < 50_000; i++) {
+                long fingerprint = random.nextInt(20_000) * 1024L + 1 + random.nextInt(4);
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(fingerprint), set.remove(fingerprint));
+                } else {
+                    assertEquals(expected.add(fingerprint), set.add(fingerprint));
+                }
+            }
+            assertEquals(expected.size(), set.size());
+            for (long fingerprint : expected) {
+                assertTrue(set.contains(fingerprint));
+            }
+            assertTrue(set.capacity() > 1024, "set should have grown");
+        }
+    }
+
+    @Test
+    void testSeenSetSurvivesReopen(@TempDir Path dir) throws Exception {
+        try (SeenSet set = new SeenSet(dir, "urls", 10)) {
+            assertTrue(set.needsRebuild());
+            for (int i = 0; i < 5000; i++) {
+                assertTrue(set.add("https://example.com/page/" + i));
+            }
+            assertFalse(set.add("https://example.com/page/7"));
+            assertTrue(set.remove("https://example.com/page/7"));
+        }
+        try (SeenSet set = new SeenSet(dir, "urls", 10)) {
+            assertFalse(set.needsRebuild());
+            assertEquals(4999, set.size());
+            assertTrue(set.contains("https://example.com/page/4999"));
+            assertFalse(set.contains("https://example.com/page/7"));
+            assertFalse(set.contains("https://example.com/other"));
+        }
+        try (SeenSet set = new SeenSet(dir, "urls", 10, true)) {
+            assertEquals(0, set.size());
+        }
+    }
+
+    @Test
+    void testUncleanShutdownRequestsRebuild(@TempDir Path dir) throws Exception {
+        SeenSet crashed = new SeenSet(dir, "urls", 10);
+        crashed.add("https://example.com/");
+        // Simulates a crash: the table is still marked dirty when the next run opens it
+        try (SeenSet set = new SeenSet(dir, "urls", 10)) {
+            assertTrue(set.needsRebuild());
+            assertEquals(0, set.size());
+        }
+    }
+
+    @Test
+    void testBloomFilterScalesWithoutFalseNegatives() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        int n = 100_000;
+        for (long i = 0; i < n; i++) {
+            filter.add(SeenSet.fingerprint("https://example.com/" + i));
+        }
+        assertTrue(filter.stageCount() > 1);
+        for (long i = 0; i < n; i++) {
+            assertTrue(filter.mightContain(SeenSet.fingerprint("https://example.com/" + i)));
+        }
+        int falsePositives = 0;
+        for (long i = 0; i < n; i++) {
+            if (filter.mightContain(SeenSet.fingerprint("https://other.org/" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < n * 0.01, "false positive rate too high: " + falsePositives);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.Search.Engine.Crawler;
+
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.ParsedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestShardedCrawl {
+
+    @Test
+    void testHostsAreSpreadEvenlyAndOwnedOnce() {
+        assertEquals("2/4", ShardAssignment.parse("2/4").toString());
+        assertThrows(IllegalArgumentException.class, () -> ShardAssignment.parse("4/4"));
+        assertThrows(IllegalArgumentException.class, () -> ShardAssignment.parse("1"));
+
+        int shards = 4;
+        int[] counts = new int[shards];
+        for (int i = 0; i < 20_000; i++) {
+            String host = "www.site" + i + ".com";
+            int owner = ShardAssignment.shardOf(host, shards);
+            assertEquals(owner, ShardAssignment.shardOf(host, shards));
+            counts[owner]++;
+            for (int s = 0; s < shards; s++) {
+                assertEquals(s == owner, new ShardAssignment(s, shards).owns(host));
+            }
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - 5_000) < 500, "uneven spread: " + count);
+        }
+        assertTrue(ShardAssignment.SINGLE.owns("anything.com"));
+    }
+
+    @Test
+    void testUrlsReachTheOwningShard(@TempDir Path dir) throws Exception {
+        ShardAssignment first = new ShardAssignment(0, 2);
+        ShardAssignment second = new ShardAssignment(1, 2);
+        UrlExchange sender = new UrlExchange(dir, first);
+        UrlExchange receiver = new UrlExchange(dir, second);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; expected.size() < 50; i++) {
+            String host = "host" + i + ".org";
+            if (second.owns(host)) {
+                String url = "https://" + host + "/page";
+                sender.send(url, host, 2, 0.25);
+                expected.add(url);
+            }
+        }
+        assertEquals(0, receiver.receive(batch -> fail("nothing flushed yet")));
+        sender.close();
+
+        List<String> received = new ArrayList<>();
+        assertEquals(50, receiver.receive(batch -> batch.forEach(entry -> {
+            assertEquals(2, entry.getDepth());
+            assertEquals(0.25, entry.getPriority());
+            assertTrue(entry.getUrl().contains(entry.getHost()));
+            received.add(entry.getUrl());
+        })));
+        assertEquals(expected, received);
+        // Imported batches are deleted, and the sender's own inbox got nothing
+        assertEquals(0, receiver.receive(batch -> fail("batch delivered twice")));
+        try (var files = Files.list(dir.resolve("to-shard-1"))) {
+            assertEquals(0, files.count());
+        }
+        assertEquals(0, sender.receive(batch -> fail("wrong shard")));
+    }
+
+    @Test
+    void testCrawlIsOverOnlyOnceEveryShardIsIdleWithNothingInFlight(@TempDir Path dir) throws Exception {
+        ShardAssignment first = new ShardAssignment(0, 3);
+        ShardAssignment second = new ShardAssignment(1, 3);
+        UrlExchange sender = new UrlExchange(dir, first);
+        UrlExchange receiver = new UrlExchange(dir, second);
+        String host = "host0.org";
+        for (int i = 1; !second.owns(host); i++) {
+            host = "host" + i + ".org";
+        }
+        // The third shard has not started
+        sender.send("https://" + host + "/", host, 1, 1.0);
+        assertTrue(sender.markIdle());
+        assertTrue(receiver.markIdle());
+        assertFalse(sender.isCrawlOver());
+        assertFalse(sender.isCrawlOver());
+
+        // It stops without ever closing its exchange; the first shard's batch is still waiting
+        UrlExchange.markStopped(dir, 2);
+        assertFalse(sender.isCrawlOver());
+        assertFalse(sender.isCrawlOver());
+
+        // Taking the batch wakes the receiver, which has to go idle again before anyone can finish
+        assertEquals(1, receiver.receive(batch -> assertFalse(sender.isCrawlOver())));
+        assertFalse(sender.isCrawlOver());
+        assertTrue(receiver.markIdle());
+        // One read to find every shard idle, a second to make sure nothing moved in between
+        assertFalse(sender.isCrawlOver());
+        assertTrue(sender.isCrawlOver());
+        assertFalse(receiver.isCrawlOver());
+        assertTrue(receiver.isCrawlOver());
+        sender.close();
+        receiver.close();
+        assertTrue(receiver.isCrawlOver());
+
+        // States of an earlier crawl do not end the next one
+        UrlExchange.clearStates(dir, 3);
+        UrlExchange restarted = new UrlExchange(dir, first);
+        assertTrue(restarted.markIdle());
+        assertFalse(restarted.isCrawlOver());
+        assertFalse(restarted.isCrawlOver());
+        restarted.close();
+    }
+
+    // Two shards with pages from..to-1 each, as their crawlers leave them
+    private static void crawlShards(Path root, int from, int to) throws Exception {
+        for (int shard = 0; shard < 2; shard++) {
+            Path shardDirectory = ShardAssignment.shardDirectory(root, shard);
+            Files.createDirectories(shardDirectory);
+            String dbUrl = "jdbc:sqlite:" + shardDirectory.resolve("search_index.db");
+            try (Connection conn = DriverManager.getConnection(dbUrl)) {
+                Crawler.initializeSchema(conn);
+            }
+            ContentStore contentStore = new ContentStore(shardDirectory.resolve("content"));
+            CrawlStorageWriter writer = new CrawlStorageWriter(dbUrl, contentStore, 16, 4, 50,
+                    new CrawlStorageWriter.Listener() {
+                        @Override
+                        public void committed(List<CrawlStorageWriter.CrawledPage> pages) {
+                        }
+
+                        @Override
+                        public void failed(List<CrawlStorageWriter.CrawledPage> pages, Exception e) {
+                            fail(e);
+                        }
+                    });
+            RevisitSchedule schedule = RevisitSchedule.initial(null, null, LocalDateTime.now());
+            for (int i = from; i < to; i++) {
+                String url = "https://shard" + shard + ".com/" + i;
+                ParsedPage parsed = new ParsedPage("Title " + shard + "-" + i,
+                        List.of(new ParsedPage.Block(ParsedPage.CONTENT, "body " + shard + "-" + i)), List.of(url + "/link"));
+                writer.submit(new CrawlStorageWriter.CrawledPage(url, "shard" + shard + ".com",
+                        "<html>" + shard + "-" + i + "</html>", parsed, i, "now", schedule));
+            }
+            writer.close();
+            contentStore.close();
+        }
+    }
+
+    // Every page of both shards is in the merged database once, with its links and content
+    private static void assertMerged(Path root, int pages) throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + root.resolve("search_index.db"));
+             ContentStore contentStore = new ContentStore(root.resolve("content"));
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(DISTINCT id), COUNT(DISTINCT url) FROM DocumentMetaData")) {
+                assertTrue(rs.next());
+                assertEquals(pages, rs.getInt(1));
+                assertEquals(pages, rs.getInt(2));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT dm.url, el.extracted_link FROM extracted_links el " +
+                    "JOIN DocumentMetaData dm ON dm.id = el.doc_id")) {
+                int links = 0;
+                while (rs.next()) {
+                    assertEquals(rs.getString("url") + "/link", rs.getString("extracted_link"));
+                    links++;
+                }
+                assertEquals(pages, links);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM DocumentMetaData")) {
+                int rows = 0;
+                while (rs.next()) {
+                    String suffix = rs.getString("url").replace("https://shard", "").replace(".com/", "-");
+                    assertEquals("<html>" + suffix + "</html>", contentStore.readHtml(rs));
+                    ParsedPage parsed = ParsedPage.read(contentStore, rs);
+                    assertEquals("Title " + suffix, parsed.getTitle());
+                    assertEquals("body " + suffix, parsed.getBlocks().get(0).getText());
+                    rows++;
+                }
+                assertEquals(pages, rows);
+            }
+        }
+    }
+
+    @Test
+    void testMergeRemapsIdsAndContentPointers(@TempDir Path root) throws Exception {
+        crawlShards(root, 0, 3);
+        assertEquals(6, ShardMerger.merge(root, 2));
+        assertTrue(Files.exists(root.resolve("shard-0.merged")));
+        assertFalse(Files.exists(ShardAssignment.shardDirectory(root, 1)));
+        // Nothing left to merge a second time
+        assertEquals(0, ShardMerger.merge(root, 2));
+        assertMerged(root, 6);
+    }
+
+    @Test
+    void testSecondCrawlMergesOnlyItsNewPages(@TempDir Path root) throws Exception {
+        crawlShards(root, 0, 3);
+        assertEquals(6, ShardMerger.merge(root, 2));
+        // The next crawl starts fresh shard directories and finds one page of each shard again
+        crawlShards(root, 2, 5);
+        assertEquals(4, ShardMerger.merge(root, 2));
+        for (int shard = 0; shard < 2; shard++) {
+            assertFalse(Files.exists(ShardAssignment.shardDirectory(root, shard)));
+            String merged = ShardAssignment.shardDirectory(root, shard).getFileName() + ".merged";
+            try (var files = Files.list(root)) {
+                assertEquals(2, files.filter(path -> path.getFileName().toString().startsWith(merged)).count());
+            }
+        }
+        assertMerged(root, 10);
+    }
+
+    @Test
+    void testInterruptedMergeCanBeRunAgain(@TempDir Path root) throws Exception {
+        crawlShards(root, 0, 3);
+        long segments = 0;
+        for (int shard = 0; shard < 2; shard++) {
+            try (var files = Files.list(ShardAssignment.shardDirectory(root, shard).resolve("content"))) {
+                segments += files.count();
+            }
+        }
+        // The second shard's rows fail after its content was copied
+        String dbUrl = "jdbc:sqlite:" + root.resolve("search_index.db");
+        try (Connection conn = DriverManager.getConnection(dbUrl); Statement stmt = conn.createStatement()) {
+            Crawler.initializeSchema(conn);
+            stmt.execute("CREATE TRIGGER full BEFORE INSERT ON DocumentMetaData WHEN NEW.url LIKE 'https://shard1%' " +
+                    "BEGIN SELECT RAISE(ABORT, 'disk full'); END");
+        }
+        assertThrows(SQLException.class, () -> ShardMerger.merge(root, 2));
+        assertTrue(Files.exists(ShardAssignment.shardDirectory(root, 1)));
+
+        // Rerun after the failure, and as if the first shard's rename had been lost in a crash
+        try (Connection conn = DriverManager.getConnection(dbUrl); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TRIGGER full");
+        }
+        Files.move(root.resolve("shard-0.merged"), ShardAssignment.shardDirectory(root, 0));
+        assertEquals(3, ShardMerger.merge(root, 2));
+        assertFalse(Files.exists(ShardAssignment.shardDirectory(root, 0)));
+        assertMerged(root, 6);
+        // The content copied by the failed attempt was replaced, not left beside the new copy
+        try (var files = Files.list(root.resolve("content"))) {
+            assertEquals(segments, files.count());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.Search.Engine.Crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSimHash {
+    private static String article(long seed, int words) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append("term").append(random.nextInt(3000)).append(' ');
+        }
+        return text.toString();
+    }
+
+    @Test
+    void testSmallEditsStayClose() {
+        assertEquals(SimHash.fingerprint(article(1, 1000)), SimHash.fingerprint(article(1, 1000).toUpperCase()));
+        // SimHash is probabilistic, so check the detection rate over many pages rather than a single one
+        int pages = 200;
+        int timestampDetected = 0;
+        int adDetected = 0;
+        for (int seed = 0; seed < pages; seed++) {
+            String page = article(seed, 1000);
+            long base = SimHash.fingerprint(page);
+            if (SimHash.hammingDistance(base, SimHash.fingerprint(page + " Last updated 2024-05-01 12:31:07")) <= NearDuplicateIndex.MAX_DISTANCE) {
+                timestampDetected++;
+            }
+            if (SimHash.hammingDistance(base, SimHash.fingerprint("Advertisement: buy now " + page)) <= NearDuplicateIndex.MAX_DISTANCE) {
+                adDetected++;
+            }
+        }
+        assertTrue(timestampDetected >= pages * 0.95, "timestamp variants detected: " + timestampDetected);
+        assertTrue(adDetected >= pages * 0.9, "ad variants detected: " + adDetected);
+    }
+
+    @Test
+    void testDifferentPagesAreFarApart() {
+        for (int seed = 0; seed < 200; seed++) {
+            long a = SimHash.fingerprint(article(seed, 1000));
+            long b = SimHash.fingerprint(article(seed + 1000, 1000));
+            assertTrue(SimHash.hammingDistance(a, b) > NearDuplicateIndex.MAX_DISTANCE);
+        }
+        assertEquals(0, SimHash.fingerprint("  <> -- !! 2024 "));
+    }
+
+    @Test
+    void testIndexFindsEveryFingerprintWithinDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        Random random = new Random(7);
+        long[] stored = new long[2000];
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = random.nextLong();
+            index.add(stored[i]);
+        }
+        for (long fingerprint : stored) {
+            // Flip up to MAX_DISTANCE random bits; the banded lookup must still find the original
+            long probe = fingerprint;
+            int flips = random.nextInt(NearDuplicateIndex.MAX_DISTANCE + 1);
+            for (int f = 0; f < flips; f++) {
+                probe ^= 1L << random.nextInt(64);
+            }
+            assertTrue(index.containsNearDuplicate(probe));
+        }
+        assertTrue(index.addIfUnique(stored[0] ^ 0xFFL));
+        assertFalse(index.addIfUnique(stored[0] ^ 0x7L));
+        assertEquals(stored.length + 1, index.size());
+    }
+
+    @Test
+    void testRemovedFingerprintNoLongerMatches() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        long fingerprint = 0x0123456789ABCDEFL;
+        assertTrue(index.addIfUnique(fingerprint));
+        index.add(fingerprint ^ 0xFFFF0000L);
+        index.remove(fingerprint);
+        assertFalse(index.containsNearDuplicate(fingerprint ^ 0x3L));
+        assertTrue(index.containsNearDuplicate(fingerprint ^ 0xFFFF0001L));
+        assertEquals(1, index.size());
+        // Removing a fingerprint that was never added leaves the index alone
+        index.remove(fingerprint);
+        assertEquals(1, index.size());
+        assertTrue(index.addIfUnique(fingerprint));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.Search.Engine.Crawler;
+
+import java.util.Random;
+
+// Compares the old URI-based normalizeURL + getDomain pair with UrlCanonicalizer on link-like URLs.
+// Reports throughput and allocated bytes per URL for the calling thread.
+// Run with: java -cp target/classes:target/test-classes com.example.Search.Engine.Crawler.UrlCanonicalizerBenchmark [urls]
+public class UrlCanonicalizerBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String[] urls = new String[n];
+        Random random = new Random(1);
+        String[] paths = {"/", "/news/", "/articles/2024/05/story-", "/wiki/Page_", "/search", "/products/item-"};
+        String[] queries = {"", "?id=", "?utm_source=feed&utm_medium=rss&id=", "?page=2&sort=date&session=", "#comments-"};
+        for (int i = 0; i < n; i++) {
+            urls[i] = (random.nextInt(4) == 0 ? "http://" : "https://") + (random.nextBoolean() ? "www." : "")
+                    + "Example" + random.nextInt(2000) + ".com" + paths[random.nextInt(paths.length)] + i
+                    + queries[random.nextInt(queries.length)] + random.nextInt(100);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            run("legacy URI normalizeURL + getDomain", urls, url -> {
+                String normalized = UrlCanonicalizer.legacyNormalize(url);
+                return normalized == null ? 0 : normalized.length() + UrlCanonicalizer.legacyHost(normalized).length();
+            });
+            run("UrlCanonicalizer.canonicalize", urls, url -> {
+                UrlCanonicalizer.CanonicalUrl canonical = UrlCanonicalizer.canonicalize(url);
+                return canonical == null ? 0 : canonical.url().length() + canonical.host().length();
+            });
+        }
+    }
+
+    private interface Normalizer {
+        int apply(String url);
+    }
+
+    private static void run(String name, String[] urls, Normalizer normalizer) {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (String url : urls) {
+            checksum += normalizer.apply(url);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-40s %,12.0f urls/s %8.0f bytes/url (checksum %d)%n",
+                name, urls.length / (elapsed / 1e9), allocated / (double) urls.length, checksum);
+    }
+}
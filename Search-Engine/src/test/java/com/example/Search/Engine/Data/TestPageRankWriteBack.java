@@ -0,0 +1,44 @@
+package com.example.Search.Engine.Data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPageRankWriteBack {
+
+    @Test
+    void testRanksAreWrittenInBatchesAndAutoCommitIsRestored(@TempDir Path dir) throws SQLException {
+        int documents = 25_000;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("ranks.db"))) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE DocumentMetaData (id INTEGER PRIMARY KEY, page_rank REAL DEFAULT 0.0)");
+                stmt.execute("WITH RECURSIVE ids(id) AS (SELECT 1 UNION ALL SELECT id + 1 FROM ids WHERE id < " + documents + ") " +
+                        "INSERT INTO DocumentMetaData (id) SELECT id FROM ids");
+            }
+            // Every document but the last, so a partial batch is flushed too
+            int[] ids = new int[documents - 1];
+            double[] ranks = new double[documents - 1];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = i + 1;
+                ranks[i] = (i + 1) / 1e6;
+            }
+            DataBaseManager.setPageRank(conn, ids, ranks);
+            assertTrue(conn.getAutoCommit());
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, page_rank FROM DocumentMetaData ORDER BY id")) {
+                int rows = 0;
+                while (rs.next()) {
+                    double expected = rs.getInt(1) == documents ? 0.0 : rs.getInt(1) / 1e6;
+                    assertEquals(expected, rs.getDouble(2));
+                    rows++;
+                }
+                assertEquals(documents, rows);
+            }
+        }
+    }
+}
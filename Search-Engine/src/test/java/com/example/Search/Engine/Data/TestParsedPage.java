@@ -0,0 +1,54 @@
+package com.example.Search.Engine.Data;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestParsedPage {
+    private static final String HTML = """
+            <html><head><title> Parsed   Page </title><style>p { color: red }</style></head>
+            <body>
+              <h1>Main <em>heading</em></h1>
+              <div>Intro text <p>First paragraph with a <a href="/relative">link</a>.</p> closing words
+                <h2>Sub heading</h2>
+                <ul><li>item one</li><li>item two</li></ul>
+              </div>
+              <span>loose span</span>
+              <table><tr><td>cell</td><td>text</td></tr></table>
+              <script>var ignored = 1;</script>
+              <a href="https://other.org/x#frag">other</a><a href="mailto:someone@example.com">mail</a>
+            </body></html>
+            """;
+
+    @Test
+    void testBlocksAreExtractedInOnePass() {
+        Document doc = Jsoup.parse(HTML, "https://example.com/dir/page");
+        ParsedPage page = ParsedPage.fromDocument(doc, 10);
+
+        assertEquals("Parsed Page", page.getTitle());
+        List<String> blocks = page.getBlocks().stream().map(b -> b.getKind() + ":" + b.getText()).toList();
+        assertEquals(List.of("1:Main heading", "0:Intro text", "0:First paragraph with a link.", "0:closing words",
+                "2:Sub heading", "0:item one", "0:item two", "0:loose span"), blocks);
+        assertEquals(List.of("https://example.com/relative", "https://other.org/x#frag"), page.getLinks());
+        // Same words as jsoup's own text(), so SimHash fingerprints of stored pages stay comparable
+        assertEquals(doc.text().replaceAll("\\s+", " "), page.getVisibleText());
+        assertEquals(1, ParsedPage.fromDocument(doc, 1).getLinks().size());
+    }
+
+    @Test
+    void testRoundTripThroughBytes() throws Exception {
+        ParsedPage page = ParsedPage.parse(HTML + "<p>" + "long ".repeat(20_000) + "</p>", "https://example.com/");
+        ParsedPage copy = ParsedPage.fromBytes(page.toBytes());
+        assertEquals(page.getTitle(), copy.getTitle());
+        assertEquals(page.getLinks(), copy.getLinks());
+        assertEquals(page.getBlocks().size(), copy.getBlocks().size());
+        for (int i = 0; i < page.getBlocks().size(); i++) {
+            assertEquals(page.getBlocks().get(i).getKind(), copy.getBlocks().get(i).getKind());
+            assertEquals(page.getBlocks().get(i).getText(), copy.getBlocks().get(i).getText());
+        }
+    }
+}
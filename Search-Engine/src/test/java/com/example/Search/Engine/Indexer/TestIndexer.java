@@ -0,0 +1,125 @@
+package com.example.Search.Engine.Indexer;
+
+import com.example.Search.Engine.Data.ContentStore;
+import com.example.Search.Engine.Data.ParsedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIndexer {
+
+    // Rows as crawled before the content store, so the indexer parses their inline HTML
+    private static SQLiteSearcher openSearcher(Path dir, int documents) throws SQLException {
+        String dbUrl = "jdbc:sqlite:" + dir.resolve("search_index.db");
+        SQLiteSearcher searcher = new SQLiteSearcher(dbUrl, new ContentStore(dir.resolve("content")));
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO DocumentMetaData (url, title, html, last_crawled_date) VALUES (?, ?, ?, 'now')")) {
+            for (int i = 0; i < documents; i++) {
+                insert.setString(1, "https://example.com/" + i);
+                insert.setString(2, "Page " + i);
+                insert.setString(3, "<html><head><title>Page " + i + "</title></head><body><p>common words and document"
+                        + i + "</p></body></html>");
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        return searcher;
+    }
+
+    private static int count(SQLiteSearcher searcher, String sql) throws SQLException {
+        try (Statement stmt = searcher.getConnection().createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Test
+    void testDocumentsOfAFailedSegmentWriteAreIndexedByTheNextRun(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 30);
+        Path segments = dir.resolve("index");
+        // A file where the segment directory should be makes every segment write fail
+        Files.writeString(segments, "not a directory");
+        new Indexer(searcher, new Tokenizer(), segments, 2).index();
+        assertEquals(0, count(searcher, "SELECT COUNT(*) FROM DocumentMetaData WHERE indexed = 1"));
+
+        Files.delete(segments);
+        Indexer indexer = new Indexer(searcher, new Tokenizer(), segments, 2);
+        indexer.index();
+        assertEquals(30, count(searcher, "SELECT COUNT(*) FROM DocumentMetaData WHERE indexed = 1"));
+        // The first run's postings were replaced, not added to
+        assertEquals(30, count(searcher, "SELECT doc_count FROM TermStats WHERE word = 'common'"));
+        try (SegmentIndex index = SegmentIndex.open(segments)) {
+            assertEquals(30, index.documentCount());
+            assertEquals(30, index.postings("common", false).documentFrequency());
+        }
+        indexer.close();
+    }
+
+    @Test
+    void testRowsWithoutContentAreNotReadAgain(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 3);
+        try (Statement stmt = searcher.getConnection().createStatement()) {
+            stmt.execute("UPDATE DocumentMetaData SET html = NULL WHERE id = 2");
+        }
+        searcher.getConnection().commit();
+        Path segments = dir.resolve("index");
+        Indexer indexer = new Indexer(searcher, new Tokenizer(), segments, 2);
+        indexer.index();
+        assertEquals(3, count(searcher, "SELECT COUNT(*) FROM DocumentMetaData WHERE indexed = 1"));
+        assertEquals(0, count(searcher, "SELECT COUNT(*) FROM InvertedIndex WHERE doc_id = 2"));
+        List<Long> pending = new ArrayList<>();
+        searcher.forEachDocument(document -> pending.add(document.getId()));
+        assertEquals(List.of(), pending);
+        indexer.close();
+    }
+
+    @Test
+    void testWorkersWriteEveryDocumentOnceAndFailuresEndTheRun(@TempDir Path dir) throws Exception {
+        // More documents than one write batch, so batches interleave the workers' output
+        SQLiteSearcher opened = openSearcher(dir, 2_500);
+        Map<Long, Integer> written = new ConcurrentHashMap<>();
+        SQLiteSearcher searcher = new SQLiteSearcher("jdbc:sqlite:" + dir.resolve("search_index.db"),
+                new ContentStore(dir.resolve("content"))) {
+            @Override
+            public Set<String> addBatch(List<TokenizedDocument> batch) throws SQLException {
+                batch.forEach(document -> written.merge(document.getDocument().getId(), 1, Integer::sum));
+                return super.addBatch(batch);
+            }
+        };
+        opened.close();
+        // Document 7 fails on its own; document 9 takes its worker down, which the run must survive
+        Tokenizer tokenizer = new Tokenizer() {
+            @Override
+            public Map<String, Token> tokenizeParsedPage(ParsedPage page) {
+                if (page.getTitle().equals("Page 6")) {
+                    throw new IllegalStateException("unreadable page");
+                }
+                if (page.getTitle().equals("Page 8")) {
+                    throw new AssertionError("worker failure");
+                }
+                return super.tokenizeParsedPage(page);
+            }
+        };
+        Path segments = dir.resolve("index");
+        Indexer indexer = new Indexer(searcher, tokenizer, segments, 4);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), indexer::index);
+
+        assertEquals(2_498, written.size());
+        assertTrue(written.values().stream().allMatch(times -> times == 1));
+        assertFalse(written.containsKey(7L));
+        assertFalse(written.containsKey(9L));
+        assertEquals(2_498, count(searcher, "SELECT COUNT(*) FROM DocumentMetaData WHERE indexed = 1"));
+        try (SegmentIndex index = SegmentIndex.open(segments)) {
+            assertEquals(2_498, index.documentCount());
+        }
+        indexer.close();
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.Search.Engine.Indexer;
+
+import com.example.Search.Engine.Data.ContentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSQLiteSearcher {
+
+    private static SQLiteSearcher openSearcher(Path dir, int documents) throws SQLException {
+        SQLiteSearcher searcher = new SQLiteSearcher("jdbc:sqlite:" + dir.resolve("search_index.db"),
+                new ContentStore(dir.resolve("content")));
+        for (int i = 1; i <= documents; i++) {
+            execute(searcher, "INSERT INTO DocumentMetaData (url, html, last_crawled_date) VALUES ('https://example.com/" + i
+                    + "', '<html></html>', 'first')");
+        }
+        return searcher;
+    }
+
+    private static void execute(SQLiteSearcher searcher, String sql) throws SQLException {
+        try (Statement stmt = searcher.getConnection().createStatement()) {
+            stmt.execute(sql);
+        }
+        searcher.getConnection().commit();
+    }
+
+    private static Map<String, Tokenizer.Token> tokens(String... words) {
+        Map<String, Tokenizer.Token> tokens = new HashMap<>();
+        for (int i = 0; i < words.length; i++) {
+            Tokenizer.Token token = new Tokenizer.Token(words[i], 1.0, "content");
+            token.addPosition(i);
+            tokens.put(words[i], token);
+        }
+        return tokens;
+    }
+
+    private static List<SQLiteSearcher.StoredDocument> pending(SQLiteSearcher searcher) throws Exception {
+        List<SQLiteSearcher.StoredDocument> documents = new ArrayList<>();
+        searcher.forEachDocument(documents::add);
+        return documents;
+    }
+
+    // Indexes the pending documents with the given words per document id, as one index run would
+    private static void index(SQLiteSearcher searcher, List<SQLiteSearcher.StoredDocument> documents,
+                              Map<Long, String[]> words) throws SQLException {
+        List<SQLiteSearcher.TokenizedDocument> batch = new ArrayList<>();
+        for (SQLiteSearcher.StoredDocument document : documents) {
+            batch.add(new SQLiteSearcher.TokenizedDocument(document, tokens(words.get(document.getId()))));
+        }
+        Set<String> changed = searcher.addBatch(batch);
+        searcher.markIndexed(documents);
+        searcher.updateIDF(changed);
+    }
+
+    private static Map<String, Integer> documentCounts(SQLiteSearcher searcher) throws SQLException {
+        Map<String, Integer> counts = new TreeMap<>();
+        try (Statement stmt = searcher.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT word, doc_count FROM TermStats")) {
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    // Word -> doc ids of its postings, with every posting's IDF checked against its document frequency
+    private static Map<String, Set<Long>> postings(SQLiteSearcher searcher, int totalDocuments) throws SQLException {
+        Map<String, Set<Long>> postings = new TreeMap<>();
+        try (Statement stmt = searcher.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT word, doc_id, IDF, " +
+                     "(SELECT COUNT(*) FROM InvertedIndex other WHERE other.word = InvertedIndex.word) FROM InvertedIndex")) {
+            while (rs.next()) {
+                postings.computeIfAbsent(rs.getString(1), word -> new TreeSet<>()).add(rs.getLong(2));
+                assertEquals(-Math.log10(rs.getInt(4) * 1.0 / totalDocuments), rs.getDouble(3), 1e-9, rs.getString(1));
+            }
+        }
+        return postings;
+    }
+
+    @Test
+    void testReindexingAChangedDocumentReplacesItsPostings(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 3);
+        List<SQLiteSearcher.StoredDocument> documents = pending(searcher);
+        assertEquals(3, documents.size());
+        index(searcher, documents, Map.of(1L, new String[]{"apple", "banana"}, 2L, new String[]{"apple"},
+                3L, new String[]{"apple", "cherry"}));
+        assertEquals(List.of(), pending(searcher));
+        assertEquals(Map.of("apple", 3, "banana", 1, "cherry", 1), documentCounts(searcher));
+        postings(searcher, 3);
+
+        // The crawler stores a new version of document 1
+        execute(searcher, "UPDATE DocumentMetaData SET needs_reindex = 1, last_crawled_date = 'second' WHERE id = 1");
+        documents = pending(searcher);
+        assertEquals(1, documents.size());
+        index(searcher, documents, Map.of(1L, new String[]{"cherry"}));
+
+        assertEquals(Map.of("apple", 2, "cherry", 2), documentCounts(searcher));
+        assertEquals(Map.of("apple", Set.of(2L, 3L), "cherry", Set.of(1L, 3L)), postings(searcher, 3));
+        try (Statement stmt = searcher.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM WordPositions WHERE index_id NOT IN (SELECT id FROM InvertedIndex)")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        assertEquals(List.of(), pending(searcher));
+        searcher.close();
+    }
+
+    @Test
+    void testDocumentRewrittenDuringIndexingStaysPending(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 2);
+        List<SQLiteSearcher.StoredDocument> documents = pending(searcher);
+        // The crawler stores a new version of document 2 after the indexer read it
+        execute(searcher, "UPDATE DocumentMetaData SET needs_reindex = 1, last_crawled_date = 'second', html = NULL, " +
+                "parsed_segment = 0, parsed_offset = 40, parsed_length = 10 WHERE id = 2");
+        index(searcher, documents, Map.of(1L, new String[]{"apple"}, 2L, new String[]{"apple"}));
+
+        documents = pending(searcher);
+        assertEquals(1, documents.size());
+        assertEquals(2, documents.get(0).getId());
+        assertEquals(40, documents.get(0).getParsed().getOffset());
+        searcher.close();
+    }
+
+    @Test
+    void testUnchangedRevisitDuringIndexingDoesNotKeepTheDocumentPending(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 2);
+        execute(searcher, "UPDATE DocumentMetaData SET html = NULL, parsed_segment = 0, parsed_offset = id * 10, parsed_length = 10");
+        List<SQLiteSearcher.StoredDocument> documents = pending(searcher);
+        // A 304 answer and a failed fetch only move the crawl date and the schedule, not the content
+        execute(searcher, "UPDATE DocumentMetaData SET last_crawled_date = 'second' WHERE id = 2");
+        index(searcher, documents, Map.of(1L, new String[]{"apple"}, 2L, new String[]{"apple"}));
+
+        assertEquals(List.of(), pending(searcher));
+        searcher.close();
+    }
+
+    @Test
+    void testIdfIsRecomputedForEveryWordOnceTheCorpusGrows(@TempDir Path dir) throws Exception {
+        SQLiteSearcher searcher = openSearcher(dir, 10);
+        Map<Long, String[]> words = new HashMap<>();
+        for (long id = 1; id <= 10; id++) {
+            words.put(id, id <= 5 ? new String[]{"apple", "banana"} : new String[]{"apple"});
+        }
+        index(searcher, pending(searcher), words);
+        postings(searcher, 10);
+
+        // One more document stays within the refresh ratio: only its words are updated
+        execute(searcher, "INSERT INTO DocumentMetaData (url, html, last_crawled_date) VALUES ('https://example.com/11', '<html></html>', 'first')");
+        index(searcher, pending(searcher), Map.of(11L, new String[]{"apple"}));
+        try (Statement stmt = searcher.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT IDF FROM InvertedIndex WHERE word = 'banana'")) {
+            assertTrue(rs.next());
+            assertEquals(-Math.log10(5.0 / 10), rs.getDouble(1), 1e-9);
+        }
+
+        // A second one takes it past the ratio, so every posting is brought up to date
+        execute(searcher, "INSERT INTO DocumentMetaData (url, html, last_crawled_date) VALUES ('https://example.com/12', '<html></html>', 'first')");
+        index(searcher, pending(searcher), Map.of(12L, new String[]{"apple"}));
+        postings(searcher, 12);
+        searcher.close();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.Search.Engine.Indexer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSegment {
+    private static final String[] POSITIONS = {"content", "title", "h1", "h2", "content", "content"};
+
+    // word -> doc id -> token, as the tokenizer would have produced them
+    private static Map<Integer, Map<String, Tokenizer.Token>> randomDocuments(Random random, int documents) {
+        Map<Integer, Map<String, Tokenizer.Token>> corpus = new TreeMap<>();
+        for (int d = 0; d < documents; d++) {
+            // Sparse, unordered ids, like rows picked up by an incremental run
+            int docId = 1 + random.nextInt(1_000_000);
+            Map<String, Tokenizer.Token> tokens = new HashMap<>();
+            int words = random.nextInt(40);
+            for (int w = 0; w < words; w++) {
+                String word = "w" + (int) (500 * Math.pow(random.nextDouble(), 2));
+                Tokenizer.Token token = tokens.computeIfAbsent(word,
+                        k -> new Tokenizer.Token(k, random.nextDouble(), POSITIONS[random.nextInt(POSITIONS.length)]));
+                token.addPosition(random.nextInt(2_000));
+            }
+            corpus.put(docId, tokens);
+        }
+        return corpus;
+    }
+
+    @Test
+    void testPostingsAndPositionsRoundTrip(@TempDir Path dir) throws Exception {
+        Map<Integer, Map<String, Tokenizer.Token>> corpus = randomDocuments(new Random(5), 2_000);
+        SegmentWriter writer = new SegmentWriter();
+        List<Integer> insertionOrder = new ArrayList<>(corpus.keySet());
+        Collections.shuffle(insertionOrder, new Random(1));
+        for (int docId : insertionOrder) {
+            writer.addDocument(docId, corpus.get(docId));
+        }
+        assertEquals(1, SegmentFormat.nextGeneration(dir));
+        writer.write(dir, SegmentFormat.segmentName(1));
+        assertTrue(writer.isEmpty());
+        assertEquals(2, SegmentFormat.nextGeneration(dir));
+
+        Map<String, List<Integer>> expectedPostings = new TreeMap<>();
+        corpus.forEach((docId, tokens) -> tokens.keySet()
+                .forEach(word -> expectedPostings.computeIfAbsent(word, k -> new ArrayList<>()).add(docId)));
+
+        try (SegmentReader reader = SegmentReader.open(dir, SegmentFormat.segmentName(1))) {
+            assertEquals(corpus.size(), reader.documentCount());
+            assertEquals(expectedPostings.size(), reader.termCount());
+            assertArrayEquals(corpus.keySet().stream().mapToInt(Integer::intValue).toArray(), reader.documentIds());
+            for (Map.Entry<String, List<Integer>> entry : expectedPostings.entrySet()) {
+                String word = entry.getKey();
+                SegmentReader.Postings postings = reader.postings(word);
+                assertEquals(entry.getValue().size(), postings.documentFrequency());
+                assertEquals(entry.getValue().size(), reader.documentFrequency(word));
+                for (int i = 0; postings.next(); i++) {
+                    int docId = entry.getValue().get(i);
+                    Tokenizer.Token token = corpus.get(docId).get(word);
+                    assertEquals(docId, postings.docId());
+                    assertEquals((float) token.getCount(), postings.frequency());
+                    assertEquals(token.getPosition(), postings.position());
+                    // Positions are only read for every other posting; skipped ones must not shift the stream
+                    if (i % 2 == 0) {
+                        assertArrayEquals(token.getPositions().stream().mapToInt(Integer::intValue).sorted().distinct().toArray(),
+                                postings.positions());
+                    }
+                }
+            }
+            assertNull(reader.postings("absent"));
+            assertNull(reader.postings("a"));
+            assertNull(reader.postings("zzz"));
+            assertEquals(0, reader.documentFrequency("absent"));
+        }
+    }
+
+    @Test
+    void testSegmentIsSmallerThanOneRowPerPostingAndPosition(@TempDir Path dir) throws Exception {
+        Map<Integer, Map<String, Tokenizer.Token>> corpus = randomDocuments(new Random(9), 5_000);
+        SegmentWriter writer = new SegmentWriter();
+        corpus.forEach(writer::addDocument);
+        long postings = writer.postingCount();
+        long positions = corpus.values().stream().flatMap(tokens -> tokens.values().stream())
+                .mapToLong(token -> token.getPositions().stream().distinct().count()).sum();
+        writer.write(dir, SegmentFormat.segmentName(1));
+
+        long bytes = 0;
+        for (String extension : List.of(SegmentFormat.TERMS, SegmentFormat.POSTINGS, SegmentFormat.POSITIONS)) {
+            bytes += Files.size(dir.resolve(SegmentFormat.segmentName(1) + extension));
+        }
+        // The payload alone of the table rows: id, word, doc id, two reals per posting; id, index id, position per position
+        long rowPayload = postings * (8 + 4 + 8 + 8 + 8) + positions * (8 + 8 + 4);
+        assertTrue(bytes * 3 < rowPayload, bytes + " bytes against " + rowPayload);
+    }
+
+    private static Map<String, Tokenizer.Token> document(String... words) {
+        Map<String, Tokenizer.Token> tokens = new HashMap<>();
+        for (int i = 0; i < words.length; i++) {
+            Tokenizer.Token token = tokens.computeIfAbsent(words[i], k -> new Tokenizer.Token(k, 0.5, "content"));
+            token.addPosition(i);
+        }
+        return tokens;
+    }
+
+    @Test
+    void testNewerSegmentMasksReindexedDocuments(@TempDir Path dir) throws Exception {
+        SegmentWriter writer = new SegmentWriter();
+        writer.addDocument(1, document("search", "engine"));
+        writer.addDocument(2, document("search", "index"));
+        writer.addDocument(3, document("engine"));
+        writer.write(dir, SegmentFormat.segmentName(SegmentFormat.nextGeneration(dir)));
+        // Document 2 is rewritten without "search", document 3 loses every word, document 4 is new
+        writer.addDocument(2, document("index", "engine"));
+        writer.addDocument(3, Map.of());
+        writer.addDocument(4, document("search"));
+        writer.write(dir, SegmentFormat.segmentName(SegmentFormat.nextGeneration(dir)));
+
+        try (SegmentIndex index = SegmentIndex.open(dir)) {
+            assertEquals(2, index.segmentCount());
+            assertEquals(4, index.documentCount());
+
+            SegmentIndex.TermPostings search = index.postings("search", true);
+            assertEquals(Set.of(1, 4), Arrays.stream(search.docIds).boxed().collect(Collectors.toSet()));
+            SegmentIndex.TermPostings engine = index.postings("engine", true);
+            assertEquals(Set.of(1, 2), Arrays.stream(engine.docIds).boxed().collect(Collectors.toSet()));
+            for (int i = 0; i < engine.docIds.length; i++) {
+                assertArrayEquals(new int[]{1}, engine.positions[i]);
+            }
+            assertEquals(1, index.postings("index", false).documentFrequency());
+            assertNull(index.postings("index", false).positions);
+            assertEquals(0, index.postings("absent", true).documentFrequency());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.Search.Engine.Indexer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSegmentManifest {
+
+    @Test
+    void testEveryRewriteChangesTheVersion(@TempDir Path dir) throws Exception {
+        // Rewrites well within one file timestamp tick still tell apart
+        Set<Long> versions = new HashSet<>();
+        versions.add(SegmentManifest.version(dir));
+        SegmentManifest.add(dir, "segment-1");
+        versions.add(SegmentManifest.version(dir));
+        SegmentManifest.add(dir, "segment-2");
+        versions.add(SegmentManifest.version(dir));
+        assertTrue(SegmentManifest.replace(dir, List.of("segment-1", "segment-2"), "segment-3"));
+        versions.add(SegmentManifest.version(dir));
+        assertTrue(SegmentManifest.replace(dir, List.of("segment-3"), null));
+        versions.add(SegmentManifest.version(dir));
+        assertEquals(5, versions.size());
+        assertEquals(List.of(), SegmentManifest.read(dir));
+    }
+
+    @Test
+    void testOlderDirectoriesKeepTheirSegments(@TempDir Path dir) throws Exception {
+        // Before there was a manifest: the segments on disk in generation order
+        for (long generation : new long[]{2, 7}) {
+            Files.createFile(dir.resolve(SegmentFormat.segmentName(generation) + SegmentFormat.TERMS));
+        }
+        assertEquals(List.of(SegmentFormat.segmentName(2), SegmentFormat.segmentName(7)), SegmentManifest.read(dir));
+        long before = SegmentManifest.version(dir);
+        SegmentManifest.add(dir, SegmentFormat.segmentName(8));
+        assertTrue(SegmentManifest.version(dir) > before);
+
+        // A manifest without a version line
+        Files.write(dir.resolve(SegmentManifest.FILE_NAME), List.of("segment-a", "segment-b"));
+        assertEquals(List.of("segment-a", "segment-b"), SegmentManifest.read(dir));
+        assertEquals(0, SegmentManifest.version(dir));
+        SegmentManifest.add(dir, "segment-c");
+        assertEquals(1, SegmentManifest.version(dir));
+        assertEquals(List.of("segment-a", "segment-b", "segment-c"), SegmentManifest.read(dir));
+    }
+}
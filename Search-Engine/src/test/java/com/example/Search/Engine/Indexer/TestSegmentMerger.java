@@ -0,0 +1,156 @@
+package com.example.Search.Engine.Indexer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSegmentMerger {
+    private static int[] sizes(int size, int count) {
+        int[] sizes = new int[count];
+        Arrays.fill(sizes, size);
+        return sizes;
+    }
+
+    private static int[] concat(int[]... parts) {
+        return Arrays.stream(parts).flatMapToInt(Arrays::stream).toArray();
+    }
+
+    @Test
+    void testPolicyMergesFullLevelsOnly() {
+        int[] nine = sizes(10_000, 9);
+        assertNull(SegmentMerger.findMerge(nine, nine));
+        int[] ten = sizes(10_000, 10);
+        assertArrayEquals(new int[]{0, 10}, SegmentMerger.findMerge(ten, ten));
+
+        // A merged segment a level up is left alone while the newer ones fill their level
+        int[] tiered = concat(new int[]{100_000}, sizes(10_000, 9));
+        assertNull(SegmentMerger.findMerge(tiered, tiered));
+        tiered = concat(new int[]{100_000}, sizes(10_000, 10));
+        assertArrayEquals(new int[]{1, 11}, SegmentMerger.findMerge(tiered, tiered));
+
+        // A small final flush between full segments counts at their level
+        int[] withSmall = concat(sizes(10_000, 5), new int[]{50}, sizes(10_000, 5));
+        assertArrayEquals(new int[]{0, 10}, SegmentMerger.findMerge(withSmall, withSmall));
+
+        int[] tooLarge = sizes(300_000, 10);
+        assertNull(SegmentMerger.findMerge(tooLarge, tooLarge));
+    }
+
+    @Test
+    void testPolicyRewritesMostlySupersededSegment() {
+        assertArrayEquals(new int[]{1, 2}, SegmentMerger.findMerge(new int[]{10_000, 10_000, 10_000}, new int[]{10_000, 4_000, 10_000}));
+        assertNull(SegmentMerger.findMerge(new int[]{10_000, 10_000}, new int[]{10_000, 6_000}));
+    }
+
+    private static Map<String, Tokenizer.Token> document(Random random) {
+        Map<String, Tokenizer.Token> tokens = new HashMap<>();
+        int words = 1 + random.nextInt(20);
+        for (int w = 0; w < words; w++) {
+            String word = "w" + random.nextInt(60);
+            tokens.computeIfAbsent(word, k -> new Tokenizer.Token(k, random.nextDouble(), "content"))
+                    .addPosition(random.nextInt(500));
+        }
+        return tokens;
+    }
+
+    // term -> doc id -> frequency and positions, as queries see them
+    private static Map<String, Map<Integer, String>> snapshot(SegmentIndex index) throws Exception {
+        Map<String, Map<Integer, String>> postings = new TreeMap<>();
+        for (int w = 0; w < 60; w++) {
+            SegmentIndex.TermPostings term = index.postings("w" + w, true);
+            Map<Integer, String> documents = new TreeMap<>();
+            for (int i = 0; i < term.docIds.length; i++) {
+                assertNull(documents.put(term.docIds[i], term.frequencies[i] + " " + Arrays.toString(term.positions[i])),
+                        "document " + term.docIds[i] + " read twice");
+            }
+            postings.put("w" + w, documents);
+        }
+        return postings;
+    }
+
+    @Test
+    void testMergeKeepsLivePostingsAndDropsSuperseded(@TempDir Path dir) throws Exception {
+        Random random = new Random(3);
+        SegmentWriter writer = new SegmentWriter();
+        for (int s = 0; s < 12; s++) {
+            // New documents plus some reindexed from earlier segments; an index run reads each document once
+            Set<Integer> docIds = new TreeSet<>();
+            for (int d = 0; d < 30; d++) {
+                docIds.add(s > 0 && d % 3 == 0 ? 1 + random.nextInt(s * 30) : 1 + s * 30 + d);
+            }
+            for (int docId : docIds) {
+                writer.addDocument(docId, document(random));
+            }
+            String name = SegmentManifest.newSegmentName(dir);
+            writer.write(dir, name);
+            SegmentManifest.add(dir, name);
+        }
+
+        try (SegmentIndex before = SegmentIndex.open(dir);
+             SegmentMerger merger = new SegmentMerger(dir)) {
+            Map<String, Map<Integer, String>> expected = snapshot(before);
+            while (merger.mergeOnce()) {
+                // Merge until the policy is satisfied
+            }
+            assertTrue(merger.mergeCount() > 0);
+
+            SegmentIndex after = SegmentIndex.open(dir);
+            assertTrue(after.segmentCount() < before.segmentCount());
+            assertEquals(before.documentCount(), after.documentCount());
+            assertEquals(expected, snapshot(after));
+            // No superseded copy survives the merge of the oldest run
+            assertNull(after.superseded(after.segmentCount() - 1));
+            // An index opened before the merge still reads its own snapshot
+            assertEquals(expected, snapshot(before));
+
+            List<String> live = SegmentManifest.read(dir);
+            try (var files = Files.list(dir)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.startsWith("segment-"))
+                        .forEach(name -> assertTrue(live.contains(name.substring(0, name.indexOf('.'))), name));
+            }
+        }
+    }
+
+    @Test
+    void testFullySupersededSegmentIsDropped(@TempDir Path dir) throws Exception {
+        Random random = new Random(4);
+        SegmentWriter writer = new SegmentWriter();
+        for (int s = 0; s < 2; s++) {
+            writer.addDocument(1, document(random));
+            writer.addDocument(2, document(random));
+            String name = SegmentManifest.newSegmentName(dir);
+            writer.write(dir, name);
+            SegmentManifest.add(dir, name);
+        }
+        String newest = SegmentManifest.read(dir).get(1);
+
+        try (SegmentMerger merger = new SegmentMerger(dir)) {
+            assertTrue(merger.mergeOnce());
+            assertFalse(merger.mergeOnce());
+        }
+        assertEquals(List.of(newest), SegmentManifest.read(dir));
+        assertEquals(2, SegmentIndex.open(dir).documentCount());
+    }
+
+    @Test
+    void testUnreferencedFilesAreDeleted(@TempDir Path dir) throws Exception {
+        SegmentWriter writer = new SegmentWriter();
+        writer.addDocument(1, document(new Random(5)));
+        String name = SegmentManifest.newSegmentName(dir);
+        writer.write(dir, name);
+        SegmentManifest.add(dir, name);
+        Files.writeString(dir.resolve("segment-999.terms"), "left by a crash");
+        Files.writeString(dir.resolve(name + ".terms.tmp"), "left by a crash");
+
+        SegmentMerger.deleteUnreferenced(dir);
+        assertFalse(Files.exists(dir.resolve("segment-999.terms")));
+        assertFalse(Files.exists(dir.resolve(name + ".terms.tmp")));
+        assertTrue(Files.exists(dir.resolve(name + SegmentFormat.TERMS)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.Search.Engine.Ranker;
+
+import java.util.*;
+
+// Times the CSR PageRank engine on synthetic power-law graphs, and the original map-based implementation
+// on the graph sizes it can still finish.
+// Graphs of 100k nodes and more are also ranked with 2, 4, ... threads up to the number of cores.
+// Run with: java -cp target/classes:target/test-classes com.example.Search.Engine.Ranker.PageRankBenchmark [nodes...]
+public class PageRankBenchmark {
+    private static final int AVERAGE_OUT_DEGREE = 10;
+    private static final int LEGACY_MAX_NODES = 2_000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1_000, 2_000, 100_000, 1_000_000};
+        for (int n : sizes) {
+            LinkGraph.Builder builder = new LinkGraph.Builder();
+            Map<Integer, List<Integer>> adjacency = n <= LEGACY_MAX_NODES ? new HashMap<>() : null;
+            generate(n, new Random(42), (from, to) -> {
+                builder.addEdge(from, to);
+                if (adjacency != null) {
+                    adjacency.computeIfAbsent(from, k -> new ArrayList<>());
+                    adjacency.computeIfAbsent(to, k -> new ArrayList<>());
+                    if (!adjacency.get(from).contains(to)) {
+                        adjacency.get(from).add(to);
+                    }
+                }
+            });
+            long buildStart = System.nanoTime();
+            LinkGraph graph = builder.build();
+            long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                double[] rank = new double[graph.nodeCount()];
+                int iterations = PageRank.iterate(graph, rank);
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("CSR     %,10d nodes %,12d edges  build %6d ms  rank %7d ms  (%d iterations)%n",
+                        graph.nodeCount(), graph.edgeCount(), buildMs, elapsedMs, iterations);
+            }
+            for (int threads = 2; n >= 100_000 && threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    PageRank.iterate(graph, new double[graph.nodeCount()], threads);
+                    best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+                }
+                System.out.printf("CSR     %,10d nodes %,12d edges  %2d threads        rank %7d ms%n",
+                        graph.nodeCount(), graph.edgeCount(), threads, best);
+            }
+            if (adjacency != null) {
+                Map<Integer, Double> probability = new HashMap<>();
+                for (Integer node : adjacency.keySet()) {
+                    probability.put(node, 1.0 / adjacency.size());
+                }
+                long start = System.nanoTime();
+                LegacyPageRank.rank(adjacency, probability);
+                System.out.printf("legacy  %,10d nodes                                 rank %7d ms%n",
+                        adjacency.size(), (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    private interface EdgeSink {
+        void accept(int from, int to);
+    }
+
+    // Preferential attachment: half of the links of each new page go to a random earlier link target,
+    // so in-degrees follow a power law; out-degrees are geometric with mean AVERAGE_OUT_DEGREE
+    private static void generate(int n, Random random, EdgeSink sink) {
+        int[] targets = new int[n * AVERAGE_OUT_DEGREE * 2];
+        int targetCount = 0;
+        for (int page = 1; page <= n; page++) {
+            int degree = (int) (-AVERAGE_OUT_DEGREE * Math.log(1 - random.nextDouble()));
+            for (int d = 0; d < degree && page > 1; d++) {
+                int target = targetCount > 0 && random.nextBoolean()
+                        ? targets[random.nextInt(targetCount)]
+                        : 1 + random.nextInt(page - 1);
+                sink.accept(page, target);
+                if (targetCount < targets.length) {
+                    targets[targetCount++] = target;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.Search.Engine.Ranker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLinkGraph {
+
+    @Test
+    void testReverseAdjacencyIsBuiltByTarget() {
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        builder.addEdge(10, 20);
+        builder.addEdge(30, 20);
+        builder.addEdge(20, 10);
+        builder.addEdge(10, 40);
+        LinkGraph graph = builder.build();
+
+        assertEquals(4, graph.nodeCount());
+        assertEquals(4, graph.edgeCount());
+        Map<Integer, Set<Integer>> inLinks = new HashMap<>();
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            Set<Integer> sources = new HashSet<>();
+            for (int k = graph.inOffsets()[v]; k < graph.inOffsets()[v + 1]; k++) {
+                sources.add(graph.nodeId(graph.inSources()[k]));
+            }
+            inLinks.put(graph.nodeId(v), sources);
+        }
+        assertEquals(Map.of(10, Set.of(20), 20, Set.of(10, 30), 30, Set.of(), 40, Set.of(10)), inLinks);
+        int[] outDegree = graph.outDegree();
+        Map<Integer, Integer> degrees = new HashMap<>();
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            degrees.put(graph.nodeId(v), outDegree[v]);
+        }
+        assertEquals(Map.of(10, 2, 20, 1, 30, 1, 40, 0), degrees);
+    }
+
+    @Test
+    void testRanksMatchTheOriginalImplementation() {
+        Random random = new Random(7);
+        Map<Integer, List<Integer>> adjacency = new HashMap<>();
+        int n = 300;
+        for (int i = 1; i <= n; i++) {
+            List<Integer> targets = new ArrayList<>();
+            // Every fifth page is dangling
+            int degree = i % 5 == 0 ? 0 : 1 + random.nextInt(6);
+            for (int d = 0; d < degree; d++) {
+                int target = 1 + (int) (n * Math.pow(random.nextDouble(), 3)); // skewed toward low ids
+                if (!targets.contains(target)) {
+                    targets.add(target);
+                }
+            }
+            adjacency.put(i, targets);
+        }
+
+        LinkGraph graph = LinkGraph.fromAdjacency(adjacency);
+        double[] rank = PageRank.rank(graph);
+        Map<Integer, Double> legacy = new HashMap<>();
+        for (Integer node : adjacency.keySet()) {
+            legacy.put(node, 1.0 / n);
+        }
+        LegacyPageRank.rank(adjacency, legacy);
+
+        double sum = 0;
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            assertEquals(legacy.get(graph.nodeId(v)), rank[v], 1e-5);
+            sum += rank[v];
+        }
+        // Dangling rank is redistributed, not lost
+        assertEquals(1.0, sum, 1e-9);
+        assertEquals(0, PageRank.iterate(new LinkGraph.Builder().build(), new double[0]));
+    }
+
+    @Test
+    void testParallelRanksMatchSerial() {
+        Random random = new Random(11);
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        int n = 5_000;
+        for (int i = 1; i <= n; i++) {
+            int degree = i % 7 == 0 ? 0 : random.nextInt(12);
+            for (int d = 0; d < degree; d++) {
+                builder.addEdge(i, 1 + (int) (n * Math.pow(random.nextDouble(), 4)));
+            }
+        }
+        LinkGraph graph = builder.build();
+
+        int[] bounds = PageRank.partition(graph, 16);
+        assertEquals(17, bounds.length);
+        assertEquals(0, bounds[0]);
+        assertEquals(graph.nodeCount(), bounds[16]);
+        for (int p = 0; p < 16; p++) {
+            assertTrue(bounds[p] <= bounds[p + 1]);
+        }
+
+        double[] serial = new double[graph.nodeCount()];
+        int serialIterations = PageRank.iterate(graph, serial, 1);
+        double[] parallel = new double[graph.nodeCount()];
+        int parallelIterations = PageRank.iterate(graph, parallel, 4);
+        assertEquals(serialIterations, parallelIterations);
+        for (int v = 0; v < serial.length; v++) {
+            assertEquals(serial[v], parallel[v], 1e-12);
+        }
+        // Same threads, same slices, same result
+        double[] again = new double[graph.nodeCount()];
+        PageRank.iterate(graph, again, 4);
+        assertArrayEquals(parallel, again);
+    }
+
+    @Test
+    void testRefreshAfterNewPagesMatchesFullRecompute() {
+        Random random = new Random(3);
+        int n = 4_000;
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            int degree = i % 9 == 0 ? 0 : 1 + random.nextInt(8);
+            for (int d = 0; d < degree; d++) {
+                edges.add(new int[]{i, 1 + (int) (n * Math.pow(random.nextDouble(), 3))});
+            }
+        }
+        LinkGraph.Builder before = new LinkGraph.Builder();
+        LinkGraph.Builder after = new LinkGraph.Builder();
+        for (int[] edge : edges) {
+            before.addEdge(edge[0], edge[1]);
+            after.addEdge(edge[0], edge[1]);
+        }
+        // A crawl batch: a few new pages linking into the old graph, and one old page linking to a new one
+        for (int i = n + 1; i <= n + 5; i++) {
+            after.addEdge(i, 1 + random.nextInt(n));
+            after.addEdge(i, 1 + random.nextInt(n));
+        }
+        after.addEdge(n / 2 + 1, n + 1);
+        LinkGraph oldGraph = before.build();
+        LinkGraph graph = after.build();
+
+        double[] previous = Arrays.copyOf(PageRank.rank(oldGraph), graph.nodeCount());
+        PageRank.Refresh refresh = PageRank.refresh(graph, previous, 1);
+        assertFalse(refresh.full());
+        assertTrue(refresh.staleNodes() < graph.nodeCount() / 10, "stale: " + refresh.staleNodes());
+
+        double[] expected = PageRank.rank(graph);
+        double sum = 0;
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            assertEquals(expected[v], refresh.rank()[v], 1e-7);
+            sum += refresh.rank()[v];
+        }
+        assertEquals(1.0, sum, 1e-9);
+
+        // Nothing stored yet: a plain full computation
+        PageRank.Refresh cold = PageRank.refresh(graph, new double[graph.nodeCount()], 1);
+        assertTrue(cold.full());
+        assertArrayEquals(expected, cold.rank(), 1e-12);
+    }
+}